@@ -3,6 +3,7 @@ package infradev.lumis.lumisportalinstaller;
 import infradev.lumis.lumisportalinstaller.common.PathEnum;
 import infradev.lumis.lumisportalinstaller.common.ResourceEnum;
 import infradev.lumis.lumisportalinstaller.common.tools.Log;
+import infradev.lumis.lumisportalinstaller.common.tools.TaskGraph;
 import infradev.lumis.lumisportalinstaller.database.AbstractDatabase;
 import infradev.lumis.lumisportalinstaller.javaserver.AbstractJavaServer;
 import infradev.lumis.lumisportalinstaller.lumisportal.AbstractLumisPortal;
@@ -47,15 +48,19 @@ public final class Installer {
 	private final AbstractLumisPortal lumisportal;
 	private final String databaseType;
 	private final String javaserverType;
+	private final TaskGraph taskGraph;
 
 	@Inject
 	public Installer(Map<String, AbstractDatabase> databases, Map<String, AbstractJavaServer> javaservers, AbstractLumisPortal lumisportal,
-			@Named("${database.type:-MYSQL}") String databaseType, @Named("${javaserver.type:-TOMCAT7}") String javaserverType) {
+			@Named("${database.type:-MYSQL}") String databaseType, @Named("${javaserver.type:-TOMCAT7}") String javaserverType,
+			@Named("${installer.threads:-0}") Integer threads, TaskGraph taskGraph) {
 		this.databases = databases;
 		this.javaservers = javaservers;
 		this.lumisportal = lumisportal;
 		this.databaseType = databaseType;
 		this.javaserverType = javaserverType;
+		this.taskGraph = taskGraph;
+		taskGraph.setThreads(threads);
 
 		run();
 	}
@@ -103,10 +108,15 @@ public final class Installer {
 		}
 	}
 
+	/**
+	 * Execute the phases of the Lumis Portal and the JavaServer installation, running the phases that do not depend on each other at the
+	 * same time.
+	 */
 	private void executeInstall() {
 		try {
-			lumisportal.install();
-			javaservers.get(javaserverType).install();
+			lumisportal.schedule(taskGraph);
+			javaservers.get(javaserverType).schedule(taskGraph);
+			taskGraph.execute();
 		} catch (IOException e) {
 			Log.error(e.getLocalizedMessage());
 		}
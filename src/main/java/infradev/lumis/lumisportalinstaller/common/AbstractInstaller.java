@@ -1,35 +1,41 @@
 package infradev.lumis.lumisportalinstaller.common;
 
 import infradev.lumis.lumisportalinstaller.common.inject.annotation.Logged;
+import infradev.lumis.lumisportalinstaller.common.tools.ArtifactCache;
+import infradev.lumis.lumisportalinstaller.common.tools.DirectoryCopier;
+import infradev.lumis.lumisportalinstaller.common.tools.DirectoryDeleter;
 import infradev.lumis.lumisportalinstaller.common.tools.DownloadCountingOutputStream;
+import infradev.lumis.lumisportalinstaller.common.tools.EntryTransformer;
 import infradev.lumis.lumisportalinstaller.common.tools.Log;
-import infradev.lumis.lumisportalinstaller.common.tools.ProgressMeter;
+import infradev.lumis.lumisportalinstaller.common.tools.PathFilter;
+import infradev.lumis.lumisportalinstaller.common.tools.ProcessRunner;
+import infradev.lumis.lumisportalinstaller.common.tools.SegmentedDownloader;
+import infradev.lumis.lumisportalinstaller.common.tools.TaskGraph;
+import infradev.lumis.lumisportalinstaller.common.tools.TemplateRegistry;
+import infradev.lumis.lumisportalinstaller.common.tools.XmlPatch;
+import infradev.lumis.lumisportalinstaller.common.tools.ZipExtractor;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.StringReader;
-import java.io.StringWriter;
-import java.io.Writer;
 import java.net.URL;
 import java.net.URLConnection;
-import java.util.Enumeration;
 import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipException;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 
-import com.github.mustachejava.DefaultMustacheFactory;
 import com.github.mustachejava.Mustache;
-import com.github.mustachejava.MustacheFactory;
 import com.google.common.base.Ascii;
 import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
 import com.google.common.io.ByteStreams;
 import com.google.common.io.Files;
 import com.google.inject.Injector;
@@ -41,6 +47,20 @@ import com.google.inject.Injector;
  */
 public abstract class AbstractInstaller implements IInstaller {
 
+	/**
+	 * Resources consumed and produced by the tasks of {@link #schedule(TaskGraph)}.
+	 */
+	protected static final String LUMISPORTAL_EXTRACTED = "lumisportal extracted";
+	protected static final String LUMISPORTAL_DRIVER = "lumisportal driver";
+	protected static final String LUMISPORTAL_HIBERNATE = "lumishibernate.cfg.xml";
+	protected static final String LUMISPORTAL_INITIALIZED = "lumisportal initialized";
+	protected static final String LUMISPORTAL_WAR = "lumisportal.war";
+	protected static final String HTDOCS = "htdocs";
+	protected static final String DATABASE = "database";
+	protected static final String JAVASERVER_EXTRACTED = "javaserver extracted";
+	protected static final String JAVASERVER_LIBS = "javaserver libs";
+	protected static final String JAVASERVER_CONFIGURED = "javaserver configured";
+
 	@Inject
 	protected Injector injector;
 
@@ -50,6 +70,33 @@ public abstract class AbstractInstaller implements IInstaller {
 	@Inject
 	@Named("${isWindows:-false}")
 	protected Boolean isWindows;
+	@Inject
+	@Named("${installer.threads:-0}")
+	protected Integer threads;
+	@Inject
+	@Named("${installer.streamExtract:-true}")
+	protected Boolean streamExtract;
+	@Inject
+	@Named("${installer.cacheDir}")
+	protected String cacheDir;
+	@Inject
+	@Named("${installer.cacheSize:-4096}")
+	protected Integer cacheSize;
+	@Inject
+	@Named("${installer.downloadSegments:-4}")
+	protected Integer downloadSegments;
+	@Inject
+	@Named("${installer.copyMode:-COPY}")
+	protected String copyMode;
+	@Inject
+	@Named("${installer.compressionLevel:-6}")
+	protected Integer compressionLevel;
+	@Inject
+	@Named("${installer.repackWar:-true}")
+	protected Boolean repackWar;
+	@Inject
+	@Named("${installer.commandTimeout:-1800}")
+	protected Integer commandTimeout;
 
 	@Inject
 	@Named("${lumisportal.extractDoc:-false}")
@@ -90,6 +137,8 @@ public abstract class AbstractInstaller implements IInstaller {
 	@Named("${javaserver.deployAsWar:-false}")
 	protected Boolean deployAsWar;
 
+	private final Map<String, EntryTransformer> entryTransformers = Maps.newLinkedHashMap();
+
 	protected String getPath(File file) throws IOException {
 		return getFormatedPath(file.getCanonicalPath());
 	}
@@ -98,6 +147,15 @@ public abstract class AbstractInstaller implements IInstaller {
 		return filePath.replace('\\', '/');
 	}
 
+	/**
+	 * Get the paths of the Lumis Portal installation file that are not extracted.
+	 *
+	 * @return Regex of the ignored paths.
+	 */
+	protected String getLumisportalIgnoreMatch() {
+		return extractDoc ? "" : "www/lumis/doc.*";
+	}
+
 	protected String getContextPath() {
 		String contextPath = frameworkUrl.getPath();
 		if (!contextPath.isEmpty()) {
@@ -136,54 +194,93 @@ public abstract class AbstractInstaller implements IInstaller {
 	 */
 	protected abstract void configure() throws IOException;
 
+	/**
+	 * Add the phases of {@link #install()} to a task graph, with the resources each phase consumes and produces, so they run together with
+	 * the phases of the other installers. By default the whole installation is one task.
+	 *
+	 * @param taskGraph
+	 *            The task graph.
+	 */
+	public void schedule(TaskGraph taskGraph) {
+		taskGraph.add(String.format("install %s", getClass().getSimpleName()), new TaskGraph.Task() {
+			@Override
+			public void run() throws IOException {
+				install();
+			}
+		});
+	}
+
 	/**
 	 * Executes a command.
 	 *
 	 * @param command
-	 *            Command to be executed on homeDir.
+	 *            Command to be executed on homeDir, with its arguments.
+	 * @return The result of the command.
 	 * @throws IOException
 	 *             Throws IOException.
 	 */
-	public void executeCommand(String command) throws IOException {
-		executeCommand(command, new File(System.getProperty("user.dir")));
+	public ProcessRunner.Result executeCommand(List<String> command) throws IOException {
+		return executeCommand(command, new File(System.getProperty("user.dir")));
 	}
 
 	/**
 	 * Executes a command.
 	 *
 	 * @param command
-	 *            Command to be executed.
+	 *            Command to be executed, with its arguments.
 	 * @param dir
 	 *            Directory where the command will be executed.
+	 * @return The result of the command.
 	 * @throws IOException
 	 *             Throws IOException.
 	 */
-	public void executeCommand(String command, File dir) throws IOException {
-		ProcessBuilder processBuilder = new ProcessBuilder(command.split(" "));
-		processBuilder.directory(dir);
-		Process process = processBuilder.start();
-
-		try {
-			loadStream(process.getInputStream());
-			loadStream(process.getErrorStream());
-			process.waitFor();
-		} catch (Exception e) {
-			Log.error(e.getLocalizedMessage());
-		}
+	public ProcessRunner.Result executeCommand(List<String> command, File dir) throws IOException {
+		return awaitCommand(submitCommand(command, dir));
 	}
 
-	private void loadStream(final InputStream stream) throws Exception {
-		new Thread(new Runnable() {
+	/**
+	 * Start a command on the shared process pool, to run it while the installer goes on or together with other commands.
+	 *
+	 * @param command
+	 *            Command to be executed on homeDir, with its arguments.
+	 * @return The future result of the command, to be given to {@link #awaitCommand(Future)}.
+	 */
+	protected Future<ProcessRunner.Result> submitCommand(List<String> command) {
+		return submitCommand(command, new File(System.getProperty("user.dir")));
+	}
 
-			@Override
-			public void run() {
-				Scanner sc = new Scanner(stream);
-				while (sc.hasNextLine()) {
-					System.out.println(sc.nextLine());
-				}
-				sc.close();
-			}
-		}).start();
+	/**
+	 * Start a command on the shared process pool, to run it while the installer goes on or together with other commands.
+	 *
+	 * @param command
+	 *            Command to be executed, with its arguments.
+	 * @param dir
+	 *            Directory where the command will be executed.
+	 * @return The future result of the command, to be given to {@link #awaitCommand(Future)}.
+	 */
+	protected Future<ProcessRunner.Result> submitCommand(List<String> command, File dir) {
+		return injector.getInstance(ProcessRunner.class).submit(command, dir, commandTimeout, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Wait for a command started by {@link #submitCommand(List, File)}. A command that fails is reported with the last lines of its output.
+	 *
+	 * @param future
+	 *            The future result of the command.
+	 * @return The result of the command.
+	 * @throws IOException
+	 *             When the command can not be started or times out.
+	 */
+	protected ProcessRunner.Result awaitCommand(Future<ProcessRunner.Result> future) throws IOException {
+		ProcessRunner.Result result = injector.getInstance(ProcessRunner.class).get(future);
+
+		if (result.isTimedOut()) {
+			throw new IOException(result.getReport());
+		} else if (!result.isSuccessful()) {
+			Log.warn(String.format("  |- %s", result.getReport()));
+		}
+
+		return result;
 	}
 
 	/**
@@ -201,8 +298,62 @@ public abstract class AbstractInstaller implements IInstaller {
 	 *             Throws IOException.
 	 */
 	public void unpackZipFile(String archivePath, File targetDirectory, String ignoreMatch, boolean ignoreRootDir) throws IOException {
-		File compressedFile = (archivePath.startsWith("http") || archivePath.startsWith("ftp")) ? downloadFile(new URL(archivePath)) : new File(archivePath);
-		unpackZipFile(compressedFile, targetDirectory, ignoreMatch, ignoreRootDir);
+		boolean isRemote = archivePath.startsWith("http") || archivePath.startsWith("ftp");
+
+		if (isRemote && streamExtract) {
+			streamZipFile(new URL(archivePath), targetDirectory, ignoreMatch, ignoreRootDir);
+		} else {
+			unpackZipFile(getLocalFile(archivePath), targetDirectory, ignoreMatch, ignoreRootDir);
+		}
+	}
+
+	/**
+	 * Downloads a zip archive and extracts it to a target directory while the bytes are still arriving. The download is kept on the same
+	 * artifact cache used by {@link #downloadFile(URL)}; when the archive is already cached it is extracted from there.
+	 *
+	 * @param url
+	 *            The url from where the file will be downloaded.
+	 * @param targetDirectory
+	 *            The directory where the file will be decompressed.
+	 * @param ignoreMatch
+	 *            Regex of ignore pattern.
+	 * @param ignoreRootDir
+	 *            If will ignore Root directory.
+	 * @return The number of files unpacked.
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	@Logged
+	public int streamZipFile(URL url, File targetDirectory, String ignoreMatch, boolean ignoreRootDir) throws IOException {
+		ArtifactCache artifactCache = getArtifactCache();
+		File cachedFile = artifactCache.get(url);
+		if (cachedFile != null) {
+			return unpackZipFile(cachedFile, targetDirectory, ignoreMatch, ignoreRootDir);
+		}
+
+		URLConnection connection = url.openConnection();
+		File destinationFile = artifactCache.createDownloadFile(url, getDownloadFileName(url, connection));
+		File tempDestinationFile = new File(destinationFile.getAbsolutePath() + ".tmp");
+
+		ZipExtractor zipExtractor = createZipExtractor();
+		OutputStream os = Files.asByteSink(tempDestinationFile).openBufferedStream();
+		int totalFiles = -1;
+
+		try (InputStream is = url.openStream();
+				OutputStream out = injector.getInstance(DownloadCountingOutputStream.class).create(os, connection.getContentLength())) {
+			totalFiles = zipExtractor.extract(is, out, targetDirectory, new PathFilter().exclude(ignoreMatch), ignoreRootDir);
+		} catch (ZipException e) {
+			Log.warn(String.format("  |- %s can not be extracted while downloading: %s", destinationFile.getName(), e.getLocalizedMessage()));
+		}
+
+		Files.move(tempDestinationFile, destinationFile);
+		cachedFile = artifactCache.put(url, destinationFile);
+
+		if (totalFiles < 0) {
+			totalFiles = unpackZipFile(cachedFile, targetDirectory, ignoreMatch, ignoreRootDir);
+		}
+
+		return totalFiles;
 	}
 
 	/**
@@ -222,37 +373,60 @@ public abstract class AbstractInstaller implements IInstaller {
 	 */
 	@Logged
 	public int unpackZipFile(File archive, File targetDirectory, String ignoreMatch, boolean ignoreRootDir) throws IOException {
-		ProgressMeter progressMeter = injector.getInstance(ProgressMeter.class);
-		int totalFiles = 0;
-
-		try (ZipFile zipFile = new ZipFile(archive)) {
-			for (final Enumeration<? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements();) {
-				final ZipEntry entry = entries.nextElement();
-				String name = entry.getName();
-				totalFiles++;
-
-				if (name.matches(ignoreMatch)) {
-					continue;
-				}
-				if (ignoreRootDir) {
-					name = name.substring(name.indexOf("/") + 1);
-				}
-
-				File path = new File(targetDirectory, name);
-
-				if (entry.isDirectory()) {
-					path.mkdirs();
-				} else {
-					Files.createParentDirs(path);
-					Files.asByteSink(path).writeFrom(zipFile.getInputStream(entry));
-				}
-
-				String msg = String.format("  |- %d files extracted", totalFiles);
-				progressMeter.tick(msg);
-			}
+		return createZipExtractor().extract(archive, targetDirectory, new PathFilter().exclude(ignoreMatch), ignoreRootDir);
+	}
+
+	/**
+	 * Rewrite the files that match a pattern while they are extracted by {@link #unpackZipFile(String, File, String, boolean)}, instead of
+	 * reading and writing them again after the extraction.
+	 *
+	 * @param pattern
+	 *            A glob or regex pattern of the path of the files on the target directory.
+	 * @param transformer
+	 *            The rewrite.
+	 */
+	protected void transformOnExtract(String pattern, EntryTransformer transformer) {
+		entryTransformers.put(pattern, transformer);
+	}
+
+	private ZipExtractor createZipExtractor() {
+		ZipExtractor zipExtractor = injector.getInstance(ZipExtractor.class);
+		zipExtractor.setThreads(threads);
+		for (Map.Entry<String, EntryTransformer> entryTransformer : entryTransformers.entrySet()) {
+			zipExtractor.addTransformer(entryTransformer.getKey(), entryTransformer.getValue());
 		}
 
-		return totalFiles;
+		return zipExtractor;
+	}
+
+	/**
+	 * Get a local file, downloading it when the path is an url.
+	 *
+	 * @param path
+	 *            A file path or an url.
+	 * @return The local file.
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	public File getLocalFile(String path) throws IOException {
+		return (path.startsWith("http") || path.startsWith("ftp")) ? downloadFile(new URL(path)) : new File(path);
+	}
+
+	/**
+	 * Get the SHA-256 digest of a local file, downloading it when the path is an url. The digest of a downloaded file is the one kept by the
+	 * artifact cache, so the file is not read again.
+	 *
+	 * @param path
+	 *            A file path or an url.
+	 * @return The digest.
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	public String getLocalFileDigest(String path) throws IOException {
+		File file = getLocalFile(path);
+		String digest = getArtifactCache().getDigest(file);
+
+		return digest != null ? digest : Files.hash(file, Hashing.sha256()).toString();
 	}
 
 	/**
@@ -270,6 +444,28 @@ public abstract class AbstractInstaller implements IInstaller {
 			return null;
 		}
 
+		ArtifactCache artifactCache = getArtifactCache();
+		File cachedFile = artifactCache.get(url);
+		if (cachedFile == null) {
+			URLConnection connection = url.openConnection();
+			File destinationFile = artifactCache.createDownloadFile(url, getDownloadFileName(url, connection));
+			downloadToFile(url, destinationFile, connection.getContentLength());
+			cachedFile = artifactCache.put(url, destinationFile);
+		}
+
+		return cachedFile;
+	}
+
+	/**
+	 * Get the file name of a download.
+	 *
+	 * @param url
+	 *            The url from where the file will be downloaded.
+	 * @param connection
+	 *            An open connection to the url.
+	 * @return The name of the downloaded file.
+	 */
+	protected String getDownloadFileName(URL url, URLConnection connection) {
 		String urlStr = url.toString();
 		String fileNameNoExt = Files.getNameWithoutExtension(urlStr);
 		String fileExt = Files.getFileExtension(urlStr).split("\\?")[0];
@@ -278,19 +474,21 @@ public abstract class AbstractInstaller implements IInstaller {
 		}
 		String fileName = fileNameNoExt + fileExt;
 
-		URLConnection connection = url.openConnection();
-		int length = connection.getContentLength();
 		String raw = connection.getHeaderField("Content-Disposition");
 		if (raw != null && raw.contains("=")) {
 			fileName = raw.split("=")[1];
 		}
 
-		File destinationFile = new File(new File(System.getProperty("java.io.tmpdir"), "lpi"), fileName);
-		if (!destinationFile.exists()) {
-			downloadToFile(url, destinationFile, length);
-		}
+		return fileName;
+	}
 
-		return destinationFile;
+	/**
+	 * Get the cache of downloaded artifacts.
+	 *
+	 * @return The artifact cache.
+	 */
+	protected ArtifactCache getArtifactCache() {
+		return new ArtifactCache(new File(cacheDir), cacheSize * 1024L * 1024L);
 	}
 
 	/**
@@ -311,10 +509,15 @@ public abstract class AbstractInstaller implements IInstaller {
 		Files.createParentDirs(destinationFile);
 		Files.createParentDirs(tempDestinationFile);
 
-		OutputStream os = Files.asByteSink(tempDestinationFile).openBufferedStream();
+		SegmentedDownloader segmentedDownloader = injector.getInstance(SegmentedDownloader.class);
+		segmentedDownloader.setSegments(downloadSegments);
+
+		if (!segmentedDownloader.download(url, tempDestinationFile)) {
+			OutputStream os = Files.asByteSink(tempDestinationFile).openBufferedStream();
 
-		try (InputStream is = url.openStream(); OutputStream out = injector.getInstance(DownloadCountingOutputStream.class).create(os, length)) {
-			ByteStreams.copy(is, out);
+			try (InputStream is = url.openStream(); OutputStream out = injector.getInstance(DownloadCountingOutputStream.class).create(os, length)) {
+				ByteStreams.copy(is, out);
+			}
 		}
 
 		Files.move(tempDestinationFile, destinationFile);
@@ -345,13 +548,43 @@ public abstract class AbstractInstaller implements IInstaller {
 	 *             Throws IOException.
 	 */
 	protected void saveToFile(String str, File file) throws IOException {
+		backupFile(file);
+
+		Files.write(str, file, Charsets.UTF_8);
+	}
+
+	/**
+	 * Move a file that is going to be replaced to a .original file, or create its parent directories when it does not exist.
+	 *
+	 * @param file
+	 *            file that will be replaced.
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	protected void backupFile(File file) throws IOException {
 		if (file.exists()) {
 			Files.move(file, new File(file.getAbsolutePath() + ".original"));
 		} else if (!file.getParentFile().exists()) {
 			Files.createParentDirs(file);
 		}
+	}
 
-		Files.write(str, file, Charsets.UTF_8);
+	/**
+	 * Patch a XML file in a single pass. The original file is kept as a .original file.
+	 *
+	 * @param xmlPatch
+	 *            edits to be applied.
+	 * @param file
+	 *            file to be patched.
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	protected void patchXmlFile(XmlPatch xmlPatch, File file) throws IOException {
+		File patchedFile = new File(file.getAbsolutePath() + ".patched");
+		xmlPatch.apply(file, patchedFile);
+
+		backupFile(file);
+		Files.move(patchedFile, file);
 	}
 
 	/**
@@ -366,33 +599,81 @@ public abstract class AbstractInstaller implements IInstaller {
 	 *             Throws IOException.
 	 */
 	protected String applyTemplateModel(String template, Map<String, Object> scope) throws IOException {
-		Writer writer = new StringWriter();
-		MustacheFactory mf = new DefaultMustacheFactory();
-		Mustache mustache = mf.compile(new StringReader(template), "");
-		mustache.execute(writer, scope).flush();
+		TemplateRegistry templateRegistry = injector.getInstance(TemplateRegistry.class);
 
-		return writer.toString();
+		return templateRegistry.render(templateRegistry.compile(template, ""), scope);
 	}
 
 	/**
-	 * Delete a directory recursively.
+	 * Apply a model on a template resource. The template is compiled once and reused.
+	 *
+	 * @param resource
+	 *            template resource where the model will be applied.
+	 * @param scope
+	 *            scope that will be applied.
+	 * @return Result string of the template.
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	protected String applyTemplateModel(ResourceEnum resource, Map<String, Object> scope) throws IOException {
+		TemplateRegistry templateRegistry = injector.getInstance(TemplateRegistry.class);
+
+		return templateRegistry.render(templateRegistry.get(resource.getResource()), scope);
+	}
+
+	/**
+	 * Apply a model on a string and save the result in a file.
+	 *
+	 * @param template
+	 *            string where the model will be applied.
+	 * @param scope
+	 *            scope that will be applied.
+	 * @param file
+	 *            file where the result will be saved.
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	protected void applyTemplateModel(String template, Map<String, Object> scope, File file) throws IOException {
+		TemplateRegistry templateRegistry = injector.getInstance(TemplateRegistry.class);
+		Mustache mustache = templateRegistry.compile(template, file.getName());
+
+		backupFile(file);
+		templateRegistry.render(mustache, scope, file);
+	}
+
+	/**
+	 * Apply a model on a template resource and save the result in a file. The template is compiled once and reused.
+	 *
+	 * @param resource
+	 *            template resource where the model will be applied.
+	 * @param scope
+	 *            scope that will be applied.
+	 * @param file
+	 *            file where the result will be saved.
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	protected void applyTemplateModel(ResourceEnum resource, Map<String, Object> scope, File file) throws IOException {
+		TemplateRegistry templateRegistry = injector.getInstance(TemplateRegistry.class);
+		Mustache mustache = templateRegistry.get(resource.getResource());
+
+		backupFile(file);
+		templateRegistry.render(mustache, scope, file);
+	}
+
+	/**
+	 * Delete a directory recursively. The directory is moved out of the way at once and its content is deleted in background.
 	 *
 	 * @param dir
 	 *            directory to be deleted.
+	 * @throws IOException
+	 *             Throws IOException.
 	 */
-	protected void deleteDirectory(File dir) {
-		if (!dir.exists() || !dir.isDirectory()) {
-			return;
-		}
-
-		for (File file : dir.listFiles()) {
-			if (file.isDirectory()) {
-				deleteDirectory(file);
-			}
-			file.delete();
-		}
+	protected void deleteDirectory(File dir) throws IOException {
+		DirectoryDeleter directoryDeleter = injector.getInstance(DirectoryDeleter.class);
+		directoryDeleter.setThreads(threads);
 
-		dir.delete();
+		directoryDeleter.delete(dir);
 	}
 
 	/**
@@ -406,40 +687,26 @@ public abstract class AbstractInstaller implements IInstaller {
 	 *             Throws IOException.
 	 */
 	protected void copyDir(File from, File to) throws IOException {
-		if (!from.exists()) {
-			return;
-		}
-
-		for (File file : from.listFiles()) {
-			File newFile = new File(to, file.getName());
-
-			if (file.isDirectory()) {
-				copyDir(file, newFile);
-			} else {
-				if (!newFile.getParentFile().exists()) {
-					Files.createParentDirs(newFile);
-				}
-				Files.copy(file, newFile);
-			}
-		}
+		copyDir(from, to, new PathFilter());
 	}
 
 	/**
-	 * Remove lines from the informed index till the match.
+	 * Copy the files of a directory accepted by a filter to another diretory.
 	 *
-	 * @param lines
-	 *            Lines to be processed.
-	 * @param index
-	 *            Start index.
-	 * @param match
-	 *            Matcher to run.
+	 * @param from
+	 *            directory that will have it's content copied.
+	 * @param to
+	 *            directory where the files will be copied.
+	 * @param pathFilter
+	 *            filter of the paths, relative to the from directory, that will be copied.
+	 * @throws IOException
+	 *             Throws IOException.
 	 */
-	protected void removeIndexUntilMatch(List<String> lines, int index, String match) {
-		String line;
+	protected void copyDir(File from, File to, PathFilter pathFilter) throws IOException {
+		DirectoryCopier directoryCopier = injector.getInstance(DirectoryCopier.class);
+		directoryCopier.setThreads(threads);
+		directoryCopier.setMode(DirectoryCopier.Mode.valueOf(copyMode.toUpperCase()));
 
-		do {
-			line = lines.get(index);
-			lines.remove(index);
-		} while (!line.contains(match));
+		directoryCopier.copy(from, to, pathFilter);
 	}
 }
@@ -47,6 +47,9 @@ public class LoggingMethodInterceptor implements MethodInterceptor {
 			case "unpackZipFile":
 				Log.info(String.format("- Extracting %s", ((File) arguments[0]).getName()));
 				break;
+			case "streamZipFile":
+				Log.info(String.format("- Downloading and extracting %s", arguments[0]));
+				break;
 			case "downloadFile":
 				Log.info(String.format("- Verifying %s metadata", arguments[0]));
 				break;
@@ -71,6 +74,7 @@ public class LoggingMethodInterceptor implements MethodInterceptor {
 		if (null != methodName) {
 			switch (methodName) {
 			case "unpackZipFile":
+			case "streamZipFile":
 				Log.info(String.format("  +- Finished extraction of %d files", returnValue));
 				break;
 			case "downloadToFile":
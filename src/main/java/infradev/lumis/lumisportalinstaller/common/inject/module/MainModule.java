@@ -4,6 +4,7 @@ import infradev.lumis.lumisportalinstaller.Installer;
 import infradev.lumis.lumisportalinstaller.common.inject.annotation.Logged;
 import infradev.lumis.lumisportalinstaller.common.inject.interceptor.LoggingMethodInterceptor;
 
+import java.io.File;
 import java.util.Properties;
 
 import javax.inject.Named;
@@ -26,13 +27,20 @@ public class MainModule extends AbstractModule {
 		Properties properties = Installer.properties;
 
 		String defaultDatabaseUrl = "jdbc:mysql://localhost/lumisportal?characterEncoding=UTF-8&zeroDateTimeBehavior=convertToNull";
-		String databaseType = properties.getProperty("database.url", defaultDatabaseUrl).split(":")[1].toUpperCase();
+		String databaseUrl = properties.getProperty("database.url", defaultDatabaseUrl);
+		String databaseType = databaseUrl.split(":")[1].toUpperCase();
 		if (databaseType.equals("JTDS")) {
 			databaseType = "SQLSERVER";
 		}
+		if (databaseType.equals("H2") && !databaseUrl.toUpperCase().contains(";MODE=")) {
+			properties.setProperty("database.url", databaseUrl + ";MODE=MySQL");
+		}
 
 		properties.setProperty("database.type", databaseType);
 		properties.setProperty("isWindows", String.valueOf(System.getProperty("os.name").toLowerCase().contains("win")));
+		if (!properties.containsKey("installer.cacheDir")) {
+			properties.setProperty("installer.cacheDir", new File(System.getProperty("java.io.tmpdir"), "lpi").getPath());
+		}
 
 		bind(ParameterKeys.PROPERTIES).toInstance(properties);
 		bindInterceptor(Matchers.any(), Matchers.annotatedWith(Logged.class), new LoggingMethodInterceptor());
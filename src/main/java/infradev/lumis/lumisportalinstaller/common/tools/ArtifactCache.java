@@ -0,0 +1,294 @@
+package infradev.lumis.lumisportalinstaller.common.tools;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+/**
+ * A content-addressed cache of downloaded artifacts.
+ *
+ * Artifacts are stored by SHA-256 under {@code objects/<digest>/<file name>}. Each url has its own index file under
+ * {@code index/<sha256 of url>} with the digest, size and modification time of the artifact, so a lookup reads a single small file however
+ * many artifacts are cached. The artifact is hashed when it is added, and again on a lookup only when its size or modification time no
+ * longer match the index. The last-used time of an url is the modification time of its index file, touched on each lookup. Index files are
+ * replaced with an atomic rename, which keeps the cache safe to share between nodes over NFS.
+ *
+ * @author Alexandre Ribeiro de Souza
+ */
+public class ArtifactCache {
+
+	private static final long STALE_DOWNLOAD_MILLIS = 24 * 60 * 60 * 1000L;
+
+	private final File directory;
+	private final File indexDir;
+	private final File objectsDir;
+	private final File downloadsDir;
+	private final long maxSize;
+
+	/**
+	 * Creates a cache.
+	 *
+	 * @param directory
+	 *            Root directory of the cache.
+	 * @param maxSize
+	 *            Size budget in bytes, enforced by evicting the least recently used artifacts.
+	 */
+	public ArtifactCache(File directory, long maxSize) {
+		this.directory = directory;
+		this.indexDir = new File(directory, "index");
+		this.objectsDir = new File(directory, "objects");
+		this.downloadsDir = new File(directory, "downloads");
+		this.maxSize = maxSize;
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Get a verified artifact of an url.
+	 *
+	 * @param url
+	 *            Url of the artifact.
+	 * @return The cached artifact, or null if it is not cached or fails verification.
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	public File get(URL url) throws IOException {
+		File indexFile = getIndexFile(url);
+		if (!indexFile.isFile()) {
+			return null;
+		}
+
+		Properties entry = load(indexFile);
+		String digest = entry.getProperty("digest", "");
+		File artifact = new File(new File(objectsDir, digest), entry.getProperty("name", ""));
+		boolean verified = artifact.isFile() && artifact.length() == Long.parseLong(entry.getProperty("size", "-1"));
+
+		if (verified && artifact.lastModified() != Long.parseLong(entry.getProperty("modified", "-1"))) {
+			verified = digest.equals(hash(artifact));
+			if (verified) {
+				entry.setProperty("modified", String.valueOf(artifact.lastModified()));
+				store(entry, indexFile);
+			}
+		}
+		if (!verified) {
+			Log.warn(String.format("  |- Cached %s is corrupted and will be downloaded again", artifact.getName()));
+			indexFile.delete();
+			deleteObject(digest);
+			return null;
+		}
+
+		indexFile.setLastModified(System.currentTimeMillis());
+
+		return artifact;
+	}
+
+	/**
+	 * Get the SHA-256 digest of a cached artifact, from its place on the cache, without reading it.
+	 *
+	 * @param artifact
+	 *            An artifact returned by {@link #get(URL)} or {@link #put(URL, File)}.
+	 * @return The digest, or null if the file is not on the cache.
+	 */
+	public String getDigest(File artifact) {
+		File objectDir = artifact.getAbsoluteFile().getParentFile();
+
+		return objectDir != null && objectsDir.getAbsoluteFile().equals(objectDir.getParentFile()) ? objectDir.getName() : null;
+	}
+
+	/**
+	 * Get the file where an artifact is downloaded before being added to the cache. The file is always the same for an url on a host, so an
+	 * interrupted download can be resumed.
+	 *
+	 * @param url
+	 *            Url of the artifact.
+	 * @param fileName
+	 *            Name of the artifact.
+	 * @return A file on the download directory of the url.
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	public File createDownloadFile(URL url, String fileName) throws IOException {
+		String key = String.format("%s %s", InetAddress.getLocalHost().getHostName(), url);
+		File downloadFile = new File(new File(downloadsDir, Hashing.sha256().hashString(key, Charsets.UTF_8).toString()), fileName);
+		Files.createParentDirs(downloadFile);
+
+		return downloadFile;
+	}
+
+	/**
+	 * Add a downloaded artifact to the cache and evict the least recently used artifacts over the size budget.
+	 *
+	 * @param url
+	 *            Url of the artifact.
+	 * @param file
+	 *            Downloaded file, usually created with {@link #createDownloadFile(URL, String)}. It is moved into the cache.
+	 * @return The cached artifact.
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	public File put(URL url, File file) throws IOException {
+		String digest = hash(file);
+		File artifact = new File(new File(objectsDir, digest), file.getName());
+
+		if (artifact.isFile() && artifact.length() == file.length()) {
+			file.delete();
+		} else {
+			Files.createParentDirs(artifact);
+			Files.move(file, artifact);
+		}
+		if (file.getParentFile().getParentFile().equals(downloadsDir)) {
+			file.getParentFile().delete();
+		}
+
+		Properties entry = new Properties();
+		entry.setProperty("url", url.toString());
+		entry.setProperty("name", artifact.getName());
+		entry.setProperty("digest", digest);
+		entry.setProperty("size", String.valueOf(artifact.length()));
+		entry.setProperty("modified", String.valueOf(artifact.lastModified()));
+		store(entry, getIndexFile(url));
+
+		evict(digest);
+
+		return artifact;
+	}
+
+	/**
+	 * Evict the least recently used artifacts until the cache fits on its size budget.
+	 *
+	 * @param keepDigest
+	 *            Digest that must not be evicted.
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	private void evict(String keepDigest) throws IOException {
+		final Map<String, Long> lastUsed = Maps.newHashMap();
+		Map<String, Long> sizes = Maps.newHashMap();
+		Map<String, List<File>> indexFiles = Maps.newHashMap();
+
+		for (File indexFile : listFiles(indexDir)) {
+			if (indexFile.getName().endsWith(".tmp")) {
+				continue;
+			}
+			Properties entry = load(indexFile);
+			String digest = entry.getProperty("digest", "");
+			long used = indexFile.lastModified();
+
+			if (!lastUsed.containsKey(digest) || lastUsed.get(digest) < used) {
+				lastUsed.put(digest, used);
+			}
+			sizes.put(digest, Long.parseLong(entry.getProperty("size", "0")));
+			if (!indexFiles.containsKey(digest)) {
+				indexFiles.put(digest, Lists.<File> newArrayList());
+			}
+			indexFiles.get(digest).add(indexFile);
+		}
+
+		long totalSize = 0;
+		for (long size : sizes.values()) {
+			totalSize += size;
+		}
+
+		List<String> digests = Lists.newArrayList(lastUsed.keySet());
+		Collections.sort(digests, new Comparator<String>() {
+
+			@Override
+			public int compare(String o1, String o2) {
+				return Long.compare(lastUsed.get(o1), lastUsed.get(o2));
+			}
+		});
+
+		for (String digest : digests) {
+			if (totalSize <= maxSize) {
+				break;
+			}
+			if (digest.equals(keepDigest)) {
+				continue;
+			}
+
+			for (File indexFile : indexFiles.get(digest)) {
+				indexFile.delete();
+			}
+			deleteObject(digest);
+			totalSize -= sizes.get(digest);
+		}
+
+		long now = System.currentTimeMillis();
+		for (File downloadDir : listFiles(downloadsDir)) {
+			if (now - downloadDir.lastModified() > STALE_DOWNLOAD_MILLIS) {
+				for (File file : listFiles(downloadDir)) {
+					file.delete();
+				}
+				downloadDir.delete();
+			}
+		}
+	}
+
+	private void deleteObject(String digest) {
+		if (digest.isEmpty()) {
+			return;
+		}
+
+		File objectDir = new File(objectsDir, digest);
+		for (File file : listFiles(objectDir)) {
+			file.delete();
+		}
+		objectDir.delete();
+	}
+
+	private File getIndexFile(URL url) {
+		return new File(indexDir, Hashing.sha256().hashString(url.toString(), Charsets.UTF_8).toString());
+	}
+
+	private String hash(File file) throws IOException {
+		return Files.hash(file, Hashing.sha256()).toString();
+	}
+
+	private Properties load(File file) throws IOException {
+		Properties properties = new Properties();
+		try (InputStream is = new FileInputStream(file)) {
+			properties.load(is);
+		}
+
+		return properties;
+	}
+
+	private void store(Properties properties, File file) throws IOException {
+		Files.createParentDirs(file);
+		File tempFile = File.createTempFile(file.getName() + ".", ".tmp", file.getParentFile());
+
+		try (OutputStream os = new FileOutputStream(tempFile)) {
+			properties.store(os, null);
+		}
+
+		Files.move(tempFile, file);
+	}
+
+	private File[] listFiles(File dir) {
+		File[] files = dir.listFiles();
+
+		return files == null ? new File[0] : files;
+	}
+}
@@ -0,0 +1,260 @@
+package infradev.lumis.lumisportalinstaller.common.tools;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystemException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Inject;
+
+import com.google.common.collect.Lists;
+
+/**
+ * A directory copier that walks the tree in parallel with fork/join and copies files with {@link FileChannel#transferTo}.
+ *
+ * With {@link Mode#HARDLINK} or {@link Mode#REFLINK} the files are linked instead of copied when the source and the target are on the same
+ * volume, falling back to a copy when the link can not be created. Hard links share the content with the source, so only the files accepted
+ * by the link filter, the jars by default, are hard linked; files that are changed in place after the copy, like the module.xml of a JBoss
+ * module, are always copied.
+ *
+ * @author Alexandre Ribeiro de Souza
+ */
+public class DirectoryCopier {
+
+	/**
+	 * How the files are copied.
+	 */
+	public enum Mode {
+		COPY, HARDLINK, REFLINK
+	}
+
+	private int threads;
+	private Mode mode;
+	private PathFilter linkFilter;
+	private volatile boolean reflinkUnavailable;
+
+	@Inject
+	public DirectoryCopier() {
+		setThreads(0);
+		this.mode = Mode.COPY;
+		this.linkFilter = new PathFilter().include(".*\\.jar");
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Sets the parallelism of the copy.
+	 *
+	 * @param threads
+	 *            Number of threads, or zero to use one per available processor.
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	public void setMode(Mode mode) {
+		this.mode = mode;
+	}
+
+	public PathFilter getLinkFilter() {
+		return linkFilter;
+	}
+
+	/**
+	 * Sets the files that are hard linked with {@link Mode#HARDLINK}.
+	 *
+	 * @param linkFilter
+	 *            filter of the paths, relative to the from directory, of files never changed in place.
+	 */
+	public void setLinkFilter(PathFilter linkFilter) {
+		this.linkFilter = linkFilter;
+	}
+
+	/**
+	 * Copy the files of a directory accepted by a filter to another directory.
+	 *
+	 * @param from
+	 *            directory that will have it's content copied.
+	 * @param to
+	 *            directory where the files will be copied.
+	 * @param pathFilter
+	 *            filter of the paths, relative to the from directory, that will be copied.
+	 * @return The number of files copied.
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	public int copy(File from, File to, PathFilter pathFilter) throws IOException {
+		if (!from.isDirectory()) {
+			return 0;
+		}
+
+		AtomicInteger count = new AtomicInteger();
+		boolean sameVolume = mode != Mode.COPY && isSameVolume(from, to);
+		ForkJoinPool pool = new ForkJoinPool(threads);
+
+		try {
+			pool.invoke(new CopyTask(from, to, "", pathFilter, sameVolume, count));
+		} catch (CopyException e) {
+			throw e.getCause();
+		} finally {
+			pool.shutdown();
+		}
+
+		return count.get();
+	}
+
+	private boolean isSameVolume(File from, File to) throws IOException {
+		File existing = to.getAbsoluteFile();
+		while (existing != null && !existing.exists()) {
+			existing = existing.getParentFile();
+		}
+
+		return existing != null && java.nio.file.Files.getFileStore(from.toPath()).equals(java.nio.file.Files.getFileStore(existing.toPath()));
+	}
+
+	/**
+	 * Copy, or link, a file.
+	 */
+	private void copyFile(File from, File to, String path, boolean sameVolume) throws IOException {
+		Path target = to.toPath();
+		java.nio.file.Files.deleteIfExists(target);
+
+		if (sameVolume && mode == Mode.HARDLINK && linkFilter.matches(path)) {
+			try {
+				java.nio.file.Files.createLink(target, from.toPath());
+				return;
+			} catch (FileSystemException | UnsupportedOperationException e) {
+				Log.debug(String.format("Unable to link %s: %s", to, e.getLocalizedMessage()));
+			}
+		} else if (sameVolume && mode == Mode.REFLINK && !reflinkUnavailable && reflink(from, to)) {
+			return;
+		}
+
+		try (FileChannel in = new FileInputStream(from).getChannel(); FileChannel out = new FileOutputStream(to).getChannel()) {
+			long size = in.size();
+			long position = 0;
+			while (position < size) {
+				position += in.transferTo(position, size - position, out);
+			}
+		}
+	}
+
+	/**
+	 * Clone a file with cp, or return false to copy it when cloning is not supported. When cp can not be started, like on Windows, it is not
+	 * tried again.
+	 */
+	private boolean reflink(File from, File to) throws IOException {
+		Process process;
+		try {
+			process = new ProcessBuilder("cp", "--reflink=always", from.getPath(), to.getPath()).redirectErrorStream(true).start();
+		} catch (IOException e) {
+			Log.debug(String.format("Unable to clone %s: %s", to, e.getLocalizedMessage()));
+			reflinkUnavailable = true;
+			return false;
+		}
+
+		try {
+			process.getInputStream().close();
+			if (process.waitFor() == 0) {
+				return true;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}
+
+		java.nio.file.Files.deleteIfExists(to.toPath());
+
+		return false;
+	}
+
+	/**
+	 * Copy a directory, forking a task by sub directory.
+	 */
+	private class CopyTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final File from;
+		private final File to;
+		private final String path;
+		private final PathFilter pathFilter;
+		private final boolean sameVolume;
+		private final AtomicInteger count;
+
+		private CopyTask(File from, File to, String path, PathFilter pathFilter, boolean sameVolume, AtomicInteger count) {
+			this.from = from;
+			this.to = to;
+			this.path = path;
+			this.pathFilter = pathFilter;
+			this.sameVolume = sameVolume;
+			this.count = count;
+		}
+
+		@Override
+		protected void compute() {
+			File[] files = from.listFiles();
+			if (files == null) {
+				return;
+			}
+
+			List<CopyTask> tasks = Lists.newArrayList();
+			boolean toCreated = false;
+
+			try {
+				for (File file : files) {
+					String filePath = path.isEmpty() ? file.getName() : path + "/" + file.getName();
+
+					if (file.isDirectory()) {
+						if (!pathFilter.prunes(filePath)) {
+							tasks.add(new CopyTask(file, new File(to, file.getName()), filePath, pathFilter, sameVolume, count));
+						}
+					} else if (pathFilter.matches(filePath)) {
+						if (!toCreated) {
+							if (!to.isDirectory() && !to.mkdirs() && !to.isDirectory()) {
+								throw new IOException(String.format("Unable to create directory %s", to));
+							}
+							toCreated = true;
+						}
+						copyFile(file, new File(to, file.getName()), filePath, sameVolume);
+						count.incrementAndGet();
+					}
+				}
+			} catch (IOException e) {
+				throw new CopyException(e);
+			}
+
+			invokeAll(tasks);
+		}
+	}
+
+	/**
+	 * Carries an IOException out of the fork/join pool.
+	 */
+	private static class CopyException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		private CopyException(IOException cause) {
+			super(cause);
+		}
+
+		@Override
+		public synchronized IOException getCause() {
+			return (IOException) super.getCause();
+		}
+	}
+}
@@ -0,0 +1,194 @@
+package infradev.lumis.lumisportalinstaller.common.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * A directory deleter that moves the directory out of the way and deletes it on a background pool.
+ *
+ * The directory is renamed to a hidden sibling ending with {@value #TRASH_SUFFIX}, which is atomic because it stays on the same file
+ * system, and the trash is deleted in parallel while the installer goes on. Pending deletions are finished before the process exits, and
+ * trash left by an interrupted process is deleted the next time a directory with the same parent is deleted. Symbolic links are deleted,
+ * never followed.
+ *
+ * @author Alexandre Ribeiro de Souza
+ */
+@Singleton
+public class DirectoryDeleter {
+
+	public static final String TRASH_SUFFIX = ".lpi-trash";
+
+	private final List<ForkJoinTask<?>> pending = Lists.newArrayList();
+	private final Set<Path> resumedParents = Sets.newHashSet();
+	private int threads;
+	private ForkJoinPool pool;
+
+	@Inject
+	public DirectoryDeleter() {
+		setThreads(0);
+
+		Runtime.getRuntime().addShutdownHook(new Thread("lpi-delete-shutdown") {
+
+			@Override
+			public void run() {
+				awaitCompletion();
+			}
+		});
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Sets the parallelism of the deletion. Only takes effect before the first deletion.
+	 *
+	 * @param threads
+	 *            Number of threads, or zero to use one per available processor.
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Delete a file or a directory. When this method returns the path is free, but the content of a directory may still be being deleted.
+	 *
+	 * @param file
+	 *            The file or directory to be deleted.
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	public void delete(File file) throws IOException {
+		Path path = file.toPath().toAbsolutePath();
+
+		if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+			return;
+		}
+
+		if (!Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+			Files.delete(path);
+			return;
+		}
+
+		resume(path.getParent());
+
+		if (path.getFileName().toString().endsWith(TRASH_SUFFIX)) {
+			return;
+		}
+
+		Path trash = path.resolveSibling(String.format(".%s.%d%s", path.getFileName(), System.nanoTime(), TRASH_SUFFIX));
+		try {
+			Files.move(path, trash, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			Log.debug(String.format("Unable to move %s to the trash, deleting it in place: %s", path, e.getLocalizedMessage()));
+			getPool().invoke(new DeleteTask(path));
+			return;
+		}
+
+		submit(trash);
+	}
+
+	/**
+	 * Wait for the pending deletions.
+	 */
+	public void awaitCompletion() {
+		List<ForkJoinTask<?>> tasks;
+		synchronized (this) {
+			tasks = Lists.newArrayList(pending);
+			pending.clear();
+		}
+
+		for (ForkJoinTask<?> task : tasks) {
+			task.join();
+		}
+	}
+
+	/**
+	 * Schedule the deletion of the trash left on a directory by a previous process.
+	 */
+	private void resume(Path parent) throws IOException {
+		synchronized (this) {
+			if (parent == null || !resumedParents.add(parent)) {
+				return;
+			}
+		}
+
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(parent, "*" + TRASH_SUFFIX)) {
+			for (Path trash : stream) {
+				submit(trash);
+			}
+		}
+	}
+
+	private synchronized void submit(Path trash) {
+		pending.add(getPool().submit(new DeleteTask(trash)));
+	}
+
+	private synchronized ForkJoinPool getPool() {
+		if (pool == null) {
+			pool = new ForkJoinPool(threads);
+		}
+
+		return pool;
+	}
+
+	/**
+	 * Delete a directory, forking a task by sub directory. Files that can not be deleted are logged and left in the trash.
+	 */
+	private static class DeleteTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Path path;
+
+		private DeleteTask(Path path) {
+			this.path = path;
+		}
+
+		@Override
+		protected void compute() {
+			List<DeleteTask> tasks = Lists.newArrayList();
+
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+				for (Path child : stream) {
+					if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+						tasks.add(new DeleteTask(child));
+					} else {
+						try {
+							Files.delete(child);
+						} catch (IOException e) {
+							Log.warn(String.format("Unable to delete %s: %s", child, e.getLocalizedMessage()));
+						}
+					}
+				}
+			} catch (IOException | DirectoryIteratorException e) {
+				Log.warn(String.format("Unable to delete %s: %s", path, e.getLocalizedMessage()));
+			}
+
+			invokeAll(tasks);
+
+			try {
+				Files.deleteIfExists(path);
+			} catch (IOException e) {
+				Log.warn(String.format("Unable to delete %s: %s", path, e.getLocalizedMessage()));
+			}
+		}
+	}
+}
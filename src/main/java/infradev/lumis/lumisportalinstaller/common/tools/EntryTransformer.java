@@ -0,0 +1,26 @@
+package infradev.lumis.lumisportalinstaller.common.tools;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A rewrite of a file applied while it is extracted from an archive, so the file is written once and already final.
+ *
+ * Transformers run on the extraction workers, several at a time, and must not share mutable state.
+ *
+ * @author Alexandre Ribeiro de Souza
+ */
+public interface EntryTransformer {
+
+	/**
+	 * Rewrite an extracted entry.
+	 *
+	 * @param original
+	 *            The entry as it is on the archive, kept as the .original file.
+	 * @param file
+	 *            The file where the rewritten entry must be written.
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	void transform(File original, File file) throws IOException;
+}
@@ -0,0 +1,125 @@
+package infradev.lumis.lumisportalinstaller.common.tools;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.ZipEntry;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+
+/**
+ * Manifest of the entries extracted to a directory, with the name, size and CRC32 of each entry and the last modified time of the file
+ * written for it.
+ *
+ * @author Alexandre Ribeiro de Souza
+ */
+public class ExtractionManifest {
+
+	private final File file;
+	private final ConcurrentMap<String, Entry> entries = Maps.newConcurrentMap();
+
+	private ExtractionManifest(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Load the manifest of a target directory. The manifest is kept next to the directory.
+	 *
+	 * @param targetDirectory
+	 *            The directory where the entries are extracted.
+	 * @return The manifest, empty if the directory was never extracted.
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	public static ExtractionManifest load(File targetDirectory) throws IOException {
+		File file = new File(targetDirectory.getAbsoluteFile().getParentFile(), targetDirectory.getName() + ".manifest");
+		ExtractionManifest manifest = new ExtractionManifest(file);
+
+		if (file.isFile()) {
+			try (BufferedReader reader = Files.newReader(file, Charsets.UTF_8)) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					List<String> fields = Splitter.on('\t').limit(4).splitToList(line);
+					if (fields.size() == 4) {
+						manifest.entries.put(fields.get(3), new Entry(Long.parseLong(fields.get(0)), Long.parseLong(fields.get(1)), Long.parseLong(fields.get(2))));
+					}
+				}
+			}
+		}
+
+		return manifest;
+	}
+
+	/**
+	 * Verify if the file of an entry is the same that was extracted before and was not changed since.
+	 *
+	 * @param name
+	 *            Name of the entry on the target directory.
+	 * @param zipEntry
+	 *            The zip entry.
+	 * @param path
+	 *            The file where the entry is extracted.
+	 * @return true if the entry does not need to be extracted.
+	 */
+	public boolean isUpToDate(String name, ZipEntry zipEntry, File path) {
+		Entry entry = entries.get(name);
+
+		return entry != null && zipEntry.getCrc() != -1 && entry.crc == zipEntry.getCrc() && entry.size == zipEntry.getSize()
+				&& path.length() == entry.size && path.lastModified() == entry.lastModified;
+	}
+
+	/**
+	 * Record an extracted entry.
+	 *
+	 * @param name
+	 *            Name of the entry on the target directory.
+	 * @param zipEntry
+	 *            The zip entry, with its size and CRC32 known.
+	 * @param path
+	 *            The file where the entry was extracted.
+	 */
+	public void put(String name, ZipEntry zipEntry, File path) {
+		if (zipEntry.getCrc() != -1) {
+			entries.put(name, new Entry(zipEntry.getSize(), zipEntry.getCrc(), path.lastModified()));
+		}
+	}
+
+	/**
+	 * Save the manifest, replacing the previous one atomically.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	public void store() throws IOException {
+		File tempFile = new File(file.getAbsolutePath() + ".tmp");
+		Files.createParentDirs(tempFile);
+
+		try (BufferedWriter writer = Files.newWriter(tempFile, Charsets.UTF_8)) {
+			for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+				writer.write(String.format("%d\t%d\t%d\t%s\n", entry.getValue().size, entry.getValue().crc, entry.getValue().lastModified, entry.getKey()));
+			}
+		}
+
+		Files.move(tempFile, file);
+	}
+
+	private static class Entry {
+
+		private final long size;
+		private final long crc;
+		private final long lastModified;
+
+		private Entry(long size, long crc, long lastModified) {
+			this.size = size;
+			this.crc = crc;
+			this.lastModified = lastModified;
+		}
+	}
+}
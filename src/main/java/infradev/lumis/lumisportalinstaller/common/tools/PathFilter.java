@@ -0,0 +1,379 @@
+package infradev.lumis.lumisportalinstaller.common.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.collect.Lists;
+
+/**
+ * A filter of relative paths, separated by '/', compiled from include and exclude patterns.
+ *
+ * Patterns use the {@code glob:} or {@code regex:} syntax of {@link java.nio.file.FileSystem#getPathMatcher(String)}, and are regexes when
+ * no syntax is given. A pattern must match the whole path. Literal, literal prefix ({@code www/lumis/doc.*}, {@code glob:lib/**}) and literal
+ * suffix ({@code .*\.jsp}, {@code glob:**.jsp}) patterns are compiled into prefix and suffix tries; other globs run on a backtracking matcher
+ * and other regexes on a matcher reused by thread. Matching a path allocates nothing and never touches the file system.
+ *
+ * The filter is built by a single thread and can be shared after it.
+ *
+ * @author Alexandre Ribeiro de Souza
+ */
+public class PathFilter {
+
+	private static final String GLOB_SYNTAX = "glob:";
+	private static final String REGEX_SYNTAX = "regex:";
+	private static final String REGEX_METACHARS = ".[]{}()*+?^$|\\";
+
+	private final Rules includes = new Rules();
+	private final Rules excludes = new Rules();
+
+	/**
+	 * Add a pattern of paths that will be accepted. Without includes every path is accepted.
+	 *
+	 * @param pattern
+	 *            A glob or regex pattern.
+	 * @return This filter.
+	 */
+	public PathFilter include(String pattern) {
+		includes.add(pattern);
+
+		return this;
+	}
+
+	/**
+	 * Add a pattern of paths that will be rejected.
+	 *
+	 * @param pattern
+	 *            A glob or regex pattern.
+	 * @return This filter.
+	 */
+	public PathFilter exclude(String pattern) {
+		excludes.add(pattern);
+
+		return this;
+	}
+
+	/**
+	 * Verify if a path is accepted.
+	 *
+	 * @param path
+	 *            A relative path.
+	 * @return true if the path matches an include, or there are no includes, and does not match an exclude.
+	 */
+	public boolean matches(CharSequence path) {
+		return (includes.isEmpty() || includes.matches(path)) && !excludes.matches(path);
+	}
+
+	/**
+	 * Verify if every path under a directory is rejected by an exclude prefix, so the directory does not need to be visited.
+	 *
+	 * @param directory
+	 *            A relative path of a directory.
+	 * @return true if the directory can be skipped.
+	 */
+	public boolean prunes(CharSequence directory) {
+		return directory.length() > 0 && excludes.matchesPrefix(directory);
+	}
+
+	/**
+	 * List the files of a directory tree accepted by this filter, skipping the directories it prunes.
+	 *
+	 * @param dir
+	 *            Root directory of the tree.
+	 * @return Paths of the accepted files, relative to the root directory.
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	public List<String> list(File dir) throws IOException {
+		final List<String> paths = Lists.newArrayList();
+		if (!dir.isDirectory()) {
+			return paths;
+		}
+
+		final Path root = dir.toPath();
+		final boolean isUnixSeparator = root.getFileSystem().getSeparator().equals("/");
+
+		java.nio.file.Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+
+			@Override
+			public FileVisitResult preVisitDirectory(Path path, BasicFileAttributes attrs) throws IOException {
+				return prunes(relativize(path)) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) throws IOException {
+				String relativePath = relativize(path);
+				if (attrs.isRegularFile() && matches(relativePath)) {
+					paths.add(relativePath);
+				}
+
+				return FileVisitResult.CONTINUE;
+			}
+
+			private String relativize(Path path) {
+				String relativePath = root.relativize(path).toString();
+
+				return isUnixSeparator ? relativePath : relativePath.replace('\\', '/');
+			}
+		});
+
+		return paths;
+	}
+
+	/**
+	 * A set of compiled patterns.
+	 */
+	private static class Rules {
+
+		private final Node prefixes = new Node();
+		private final Node suffixes = new Node();
+		private String[] globs = new String[0];
+		private Pattern[] patterns = new Pattern[0];
+		private ThreadLocal<Matcher[]> matchers;
+		private boolean empty = true;
+
+		private boolean isEmpty() {
+			return empty;
+		}
+
+		private void add(String pattern) {
+			empty = false;
+
+			if (pattern.startsWith(GLOB_SYNTAX)) {
+				addGlob(pattern.substring(GLOB_SYNTAX.length()));
+			} else if (pattern.startsWith(REGEX_SYNTAX)) {
+				addRegex(pattern.substring(REGEX_SYNTAX.length()));
+			} else {
+				addRegex(pattern);
+			}
+		}
+
+		private void addGlob(String glob) {
+			if (glob.endsWith("**") && isLiteralGlob(glob.substring(0, glob.length() - 2))) {
+				prefixes.put(glob.substring(0, glob.length() - 2), false).prefix = true;
+			} else if (glob.startsWith("**") && isLiteralGlob(glob.substring(2))) {
+				suffixes.put(glob.substring(2), true).prefix = true;
+			} else if (isLiteralGlob(glob)) {
+				prefixes.put(glob, false).exact = true;
+			} else {
+				globs = Arrays.copyOf(globs, globs.length + 1);
+				globs[globs.length - 1] = glob;
+			}
+		}
+
+		private void addRegex(String regex) {
+			String body = regex;
+			if (body.startsWith("^")) {
+				body = body.substring(1);
+			}
+			if (body.endsWith("$") && !body.endsWith("\\$")) {
+				body = body.substring(0, body.length() - 1);
+			}
+
+			String literal;
+			if (body.endsWith(".*") && (literal = unescapeRegex(body.substring(0, body.length() - 2))) != null) {
+				prefixes.put(literal, false).prefix = true;
+			} else if (body.startsWith(".*") && (literal = unescapeRegex(body.substring(2))) != null) {
+				suffixes.put(literal, true).prefix = true;
+			} else if ((literal = unescapeRegex(body)) != null) {
+				prefixes.put(literal, false).exact = true;
+			} else {
+				patterns = Arrays.copyOf(patterns, patterns.length + 1);
+				patterns[patterns.length - 1] = Pattern.compile(regex);
+				matchers = new ThreadLocal<Matcher[]>() {
+
+					@Override
+					protected Matcher[] initialValue() {
+						Matcher[] result = new Matcher[patterns.length];
+						for (int i = 0; i < result.length; i++) {
+							result[i] = patterns[i].matcher("");
+						}
+						return result;
+					}
+				};
+			}
+		}
+
+		private boolean matches(CharSequence path) {
+			int length = path.length();
+
+			Node node = prefixes;
+			for (int i = 0; node != null; i++) {
+				if (node.prefix || (i == length && node.exact)) {
+					return true;
+				}
+				node = i < length ? node.get(path.charAt(i)) : null;
+			}
+
+			node = suffixes;
+			for (int i = length - 1; node != null; i--) {
+				if (node.prefix) {
+					return true;
+				}
+				node = i >= 0 ? node.get(path.charAt(i)) : null;
+			}
+
+			for (int i = 0; i < globs.length; i++) {
+				if (matchesGlob(globs[i], 0, path, 0)) {
+					return true;
+				}
+			}
+
+			if (patterns.length > 0) {
+				Matcher[] threadMatchers = matchers.get();
+				for (int i = 0; i < threadMatchers.length; i++) {
+					if (threadMatchers[i].reset(path).matches()) {
+						return true;
+					}
+				}
+			}
+
+			return false;
+		}
+
+		/**
+		 * Verify if a prefix rule matches the directory followed by a separator, and so every path under it.
+		 */
+		private boolean matchesPrefix(CharSequence directory) {
+			int length = directory.length();
+
+			Node node = prefixes;
+			for (int i = 0; node != null; i++) {
+				if (node.prefix) {
+					return true;
+				}
+				if (i < length) {
+					node = node.get(directory.charAt(i));
+				} else if (i == length) {
+					node = node.get('/');
+				} else {
+					node = null;
+				}
+			}
+
+			return false;
+		}
+
+		private static boolean isLiteralGlob(String glob) {
+			for (int i = 0; i < glob.length(); i++) {
+				char c = glob.charAt(i);
+				if (c == '*' || c == '?' || c == '[' || c == '{' || c == '\\') {
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		/**
+		 * Unescape a regex that has only literal characters.
+		 *
+		 * @return The literal, or null if the regex has metacharacters.
+		 */
+		private static String unescapeRegex(String regex) {
+			StringBuilder literal = new StringBuilder(regex.length());
+
+			for (int i = 0; i < regex.length(); i++) {
+				char c = regex.charAt(i);
+				if (c == '\\') {
+					if (i + 1 == regex.length() || Character.isLetterOrDigit(regex.charAt(i + 1))) {
+						return null;
+					}
+					c = regex.charAt(++i);
+				} else if (REGEX_METACHARS.indexOf(c) >= 0) {
+					return null;
+				}
+				literal.append(c);
+			}
+
+			return literal.toString();
+		}
+
+		/**
+		 * Match a glob where '**' crosses directories, '*' does not and '?' is a single character other than '/'.
+		 */
+		private static boolean matchesGlob(String glob, int g, CharSequence path, int p) {
+			while (g < glob.length()) {
+				char c = glob.charAt(g);
+
+				if (c == '*') {
+					boolean crossesDirectories = g + 1 < glob.length() && glob.charAt(g + 1) == '*';
+					int next = crossesDirectories ? g + 2 : g + 1;
+
+					for (int i = p; i <= path.length(); i++) {
+						if (matchesGlob(glob, next, path, i)) {
+							return true;
+						}
+						if (i < path.length() && !crossesDirectories && path.charAt(i) == '/') {
+							return false;
+						}
+					}
+
+					return false;
+				}
+
+				if (p == path.length() || (c == '?' ? path.charAt(p) == '/' : c != path.charAt(p))) {
+					return false;
+				}
+				g++;
+				p++;
+			}
+
+			return p == path.length();
+		}
+	}
+
+	/**
+	 * A node of a trie of characters.
+	 */
+	private static class Node {
+
+		private char[] keys = new char[0];
+		private Node[] children = new Node[0];
+		private boolean prefix;
+		private boolean exact;
+
+		private Node get(char c) {
+			int index = Arrays.binarySearch(keys, c);
+
+			return index >= 0 ? children[index] : null;
+		}
+
+		private Node put(String str, boolean reverse) {
+			Node node = this;
+
+			for (int i = 0; i < str.length(); i++) {
+				char c = str.charAt(reverse ? str.length() - 1 - i : i);
+				Node child = node.get(c);
+
+				if (child == null) {
+					int index = -(Arrays.binarySearch(node.keys, c) + 1);
+					child = new Node();
+
+					char[] keys = new char[node.keys.length + 1];
+					Node[] children = new Node[node.children.length + 1];
+					System.arraycopy(node.keys, 0, keys, 0, index);
+					System.arraycopy(node.children, 0, children, 0, index);
+					keys[index] = c;
+					children[index] = child;
+					System.arraycopy(node.keys, index, keys, index + 1, node.keys.length - index);
+					System.arraycopy(node.children, index, children, index + 1, node.children.length - index);
+
+					node.keys = keys;
+					node.children = children;
+				}
+
+				node = child;
+			}
+
+			return node;
+		}
+	}
+}
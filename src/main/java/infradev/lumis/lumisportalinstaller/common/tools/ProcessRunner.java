@@ -0,0 +1,290 @@
+package infradev.lumis.lumisportalinstaller.common.tools;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Runs external commands on a shared pool, so independent commands run at the same time.
+ *
+ * Each command is given as its arguments, never split on spaces, so paths with spaces are passed as they are. The standard error is merged
+ * into the standard output, which is echoed to the console and kept as the last lines for error reports. A command running longer than its
+ * timeout is destroyed. The output is read for a few seconds after the command ends, since a child left running by the command, like a
+ * server started in background, keeps it open.
+ *
+ * @author Alexandre Ribeiro de Souza
+ */
+@Singleton
+public class ProcessRunner {
+
+	public static final int OUTPUT_LINES = 100;
+	private static final long DRAIN_TIMEOUT_SECONDS = 5;
+
+	private final ListeningExecutorService executor = MoreExecutors.listeningDecorator(Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+			.setNameFormat("lpi-process-%d").setDaemon(true).build()));
+	private int outputLines = OUTPUT_LINES;
+
+	@Inject
+	public ProcessRunner() {
+	}
+
+	public int getOutputLines() {
+		return outputLines;
+	}
+
+	/**
+	 * Sets the number of output lines kept of each command.
+	 *
+	 * @param outputLines
+	 *            Number of lines.
+	 */
+	public void setOutputLines(int outputLines) {
+		this.outputLines = Math.max(1, outputLines);
+	}
+
+	/**
+	 * Start a command.
+	 *
+	 * @param command
+	 *            The command and its arguments.
+	 * @param dir
+	 *            Directory where the command is executed.
+	 * @param timeout
+	 *            Time the command may run before it is destroyed, or zero to wait for it forever.
+	 * @param unit
+	 *            Unit of the timeout.
+	 * @return The future result of the command. It fails with an IOException when the command can not be started.
+	 */
+	public ListenableFuture<Result> submit(List<String> command, final File dir, final long timeout, final TimeUnit unit) {
+		final List<String> arguments = ImmutableList.copyOf(command);
+		final int lines = outputLines;
+
+		return executor.submit(new Callable<Result>() {
+
+			@Override
+			public Result call() throws IOException, InterruptedException {
+				return execute(arguments, dir, timeout, unit, lines);
+			}
+		});
+	}
+
+	/**
+	 * Run a command and wait for it.
+	 *
+	 * @param command
+	 *            The command and its arguments.
+	 * @param dir
+	 *            Directory where the command is executed.
+	 * @param timeout
+	 *            Time the command may run before it is destroyed, or zero to wait for it forever.
+	 * @param unit
+	 *            Unit of the timeout.
+	 * @return The result of the command.
+	 * @throws IOException
+	 *             When the command can not be started.
+	 */
+	public Result run(List<String> command, File dir, long timeout, TimeUnit unit) throws IOException {
+		return get(submit(command, dir, timeout, unit));
+	}
+
+	/**
+	 * Wait for the result of a submitted command.
+	 *
+	 * @param future
+	 *            The future of {@link #submit(List, File, long, TimeUnit)}.
+	 * @return The result of the command.
+	 * @throws IOException
+	 *             When the command can not be started.
+	 */
+	public Result get(Future<Result> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private Result execute(List<String> command, File dir, long timeout, TimeUnit unit, int lines) throws IOException, InterruptedException {
+		long start = System.nanoTime();
+		final Process process = new ProcessBuilder(command).directory(dir).redirectErrorStream(true).start();
+		final OutputBuffer output = new OutputBuffer(lines);
+
+		Future<?> drain = executor.submit(new Callable<Void>() {
+
+			@Override
+			public Void call() throws IOException {
+				try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+					String line;
+					while ((line = reader.readLine()) != null) {
+						System.out.println(line);
+						output.add(line);
+					}
+				}
+				return null;
+			}
+		});
+		Future<Integer> exit = executor.submit(new Callable<Integer>() {
+
+			@Override
+			public Integer call() throws InterruptedException {
+				return process.waitFor();
+			}
+		});
+
+		boolean timedOut = false;
+		int exitCode;
+		try {
+			exitCode = timeout > 0 ? exit.get(timeout, unit) : exit.get();
+		} catch (TimeoutException e) {
+			timedOut = true;
+			process.destroy();
+			exitCode = process.waitFor();
+		} catch (ExecutionException e) {
+			process.destroy();
+			throw new IOException(e.getCause());
+		} catch (InterruptedException e) {
+			process.destroy();
+			throw e;
+		}
+		drain(process, drain, output);
+
+		return new Result(command, exitCode, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), timedOut, output.lines());
+	}
+
+	/**
+	 * Wait for the output of an ended command to be read. When a child of the command still holds it open, the output is closed and the
+	 * report tells so.
+	 */
+	private void drain(Process process, Future<?> drain, OutputBuffer output) throws InterruptedException {
+		try {
+			drain.get(DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		} catch (ExecutionException e) {
+			Log.debug(String.format("Unable to read the process output: %s", e.getCause().getLocalizedMessage()));
+		} catch (TimeoutException e) {
+			String message = "The output is still open after the command ended, a child process may still be running";
+			Log.warn(message);
+			output.add(message);
+			try {
+				process.getInputStream().close();
+			} catch (IOException closeException) {
+				Log.debug(String.format("Unable to close the process output: %s", closeException.getLocalizedMessage()));
+			}
+			drain.cancel(true);
+		}
+	}
+
+	/**
+	 * The last lines of the output of a command.
+	 */
+	private static class OutputBuffer {
+
+		private final Deque<String> lines;
+		private final int capacity;
+
+		OutputBuffer(int capacity) {
+			this.capacity = capacity;
+			this.lines = new ArrayDeque<>(capacity);
+		}
+
+		synchronized void add(String line) {
+			if (lines.size() == capacity) {
+				lines.removeFirst();
+			}
+			lines.addLast(line);
+		}
+
+		synchronized List<String> lines() {
+			return ImmutableList.copyOf(lines);
+		}
+	}
+
+	/**
+	 * Result of a command.
+	 */
+	public static class Result {
+
+		private final List<String> command;
+		private final int exitCode;
+		private final long elapsedMillis;
+		private final boolean timedOut;
+		private final List<String> output;
+
+		private Result(List<String> command, int exitCode, long elapsedMillis, boolean timedOut, List<String> output) {
+			this.command = command;
+			this.exitCode = exitCode;
+			this.elapsedMillis = elapsedMillis;
+			this.timedOut = timedOut;
+			this.output = output;
+		}
+
+		public List<String> getCommand() {
+			return command;
+		}
+
+		public int getExitCode() {
+			return exitCode;
+		}
+
+		public long getElapsedMillis() {
+			return elapsedMillis;
+		}
+
+		public boolean isTimedOut() {
+			return timedOut;
+		}
+
+		/**
+		 * Get the last lines of the output, with the standard error merged.
+		 *
+		 * @return The lines, up to {@link ProcessRunner#getOutputLines()}.
+		 */
+		public List<String> getOutput() {
+			return output;
+		}
+
+		public boolean isSuccessful() {
+			return !timedOut && exitCode == 0;
+		}
+
+		/**
+		 * Describe the result for an error report, with the last lines of the output.
+		 *
+		 * @return The report.
+		 */
+		public String getReport() {
+			List<String> report = Lists.newArrayList();
+			report.add(String.format("%s %s after %d ms", Joiner.on(' ').join(command),
+					timedOut ? "timed out" : String.format("exited with %d", exitCode), elapsedMillis));
+			report.addAll(output);
+
+			return Joiner.on(System.lineSeparator()).join(report);
+		}
+	}
+}
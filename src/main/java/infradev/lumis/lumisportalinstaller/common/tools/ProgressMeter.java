@@ -22,7 +22,7 @@ public class ProgressMeter {
 		this.seconds = 10;
 	}
 
-	public void tick(String msg) {
+	public synchronized void tick(String msg) {
 		long now = System.currentTimeMillis();
 
 		if (now - lastSecond >= seconds * 1000) {
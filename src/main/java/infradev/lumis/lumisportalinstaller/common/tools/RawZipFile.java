@@ -0,0 +1,243 @@
+package infradev.lumis.lumisportalinstaller.common.tools;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+
+/**
+ * A zip file that reads the central directory and gives the entry data as it is on the archive, without inflating it, so the entries can
+ * be copied to a {@link RawZipOutputStream}.
+ *
+ * @author Alexandre Ribeiro de Souza
+ */
+public class RawZipFile implements Closeable {
+
+	private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+	private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+	private static final int END_SIGNATURE = 0x06054b50;
+	private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+	private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+	private static final int END_SIZE = 22;
+	private static final int MAX_COMMENT_SIZE = 0xFFFF;
+	private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+	private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+	private static final int ENCRYPTED_FLAG = 0x0001;
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final List<Entry> entries;
+
+	public RawZipFile(File archive) throws IOException {
+		this.file = new RandomAccessFile(archive, "r");
+		this.channel = file.getChannel();
+
+		try {
+			this.entries = Collections.unmodifiableList(readCentralDirectory());
+		} catch (IOException | RuntimeException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Get the entries, in the order of the central directory.
+	 *
+	 * @return The entries, with the method, CRC32 and sizes set.
+	 */
+	public List<Entry> entries() {
+		return entries;
+	}
+
+	/**
+	 * Copy the data of an entry, compressed as it is on the archive.
+	 *
+	 * @param entry
+	 *            An entry of this archive.
+	 * @param out
+	 *            The stream that will receive {@link ZipEntry#getCompressedSize()} bytes.
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	public void copyRaw(Entry entry, OutputStream out) throws IOException {
+		ByteBuffer header = read(entry.offset, 30);
+		if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+			throw new ZipException(String.format("Invalid local header of entry %s", entry.getName()));
+		}
+
+		long position = entry.offset + 30 + (header.getShort(26) & 0xffff) + (header.getShort(28) & 0xffff);
+		long end = position + entry.getCompressedSize();
+		byte[] buffer = new byte[BUFFER_SIZE];
+
+		while (position < end) {
+			ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, (int) Math.min(buffer.length, end - position));
+			int read = channel.read(byteBuffer, position);
+			if (read == -1) {
+				throw new ZipException(String.format("Truncated data of entry %s", entry.getName()));
+			}
+			out.write(buffer, 0, read);
+			position += read;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+
+	private List<Entry> readCentralDirectory() throws IOException {
+		long length = channel.size();
+		int tailSize = (int) Math.min(length, END_SIZE + MAX_COMMENT_SIZE);
+		ByteBuffer tail = read(length - tailSize, tailSize);
+
+		int end = tailSize - END_SIZE;
+		while (end >= 0 && tail.getInt(end) != END_SIGNATURE) {
+			end--;
+		}
+		if (end < 0) {
+			throw new ZipException("End of central directory not found");
+		}
+
+		long count = tail.getShort(end + 10) & 0xffff;
+		long centralSize = tail.getInt(end + 12) & ZIP64_MAGIC;
+		long centralOffset = tail.getInt(end + 16) & ZIP64_MAGIC;
+
+		if (count == ZIP64_MAGIC_COUNT || centralSize == ZIP64_MAGIC || centralOffset == ZIP64_MAGIC) {
+			long endOffset = length - tailSize + end;
+			ByteBuffer locator = read(endOffset - 20, 20);
+			if (locator.getInt(0) == ZIP64_LOCATOR_SIGNATURE) {
+				ByteBuffer zip64End = read(locator.getLong(8), 56);
+				if (zip64End.getInt(0) != ZIP64_END_SIGNATURE) {
+					throw new ZipException("Invalid Zip64 end of central directory");
+				}
+				count = zip64End.getLong(32);
+				centralSize = zip64End.getLong(40);
+				centralOffset = zip64End.getLong(48);
+			}
+		}
+
+		if (centralSize > Integer.MAX_VALUE) {
+			throw new ZipException("Central directory too large");
+		}
+
+		ByteBuffer central = read(centralOffset, (int) centralSize);
+		List<Entry> result = Lists.newArrayListWithCapacity((int) Math.min(count, ZIP64_MAGIC_COUNT));
+
+		int position = 0;
+		for (long i = 0; i < count; i++) {
+			if (central.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+				throw new ZipException("Invalid central directory header");
+			}
+
+			int flags = central.getShort(position + 8) & 0xffff;
+			int method = central.getShort(position + 10) & 0xffff;
+			long dosTime = central.getInt(position + 12) & ZIP64_MAGIC;
+			long crc = central.getInt(position + 16) & ZIP64_MAGIC;
+			long compressedSize = central.getInt(position + 20) & ZIP64_MAGIC;
+			long size = central.getInt(position + 24) & ZIP64_MAGIC;
+			int nameLength = central.getShort(position + 28) & 0xffff;
+			int extraLength = central.getShort(position + 30) & 0xffff;
+			int commentLength = central.getShort(position + 32) & 0xffff;
+			long offset = central.getInt(position + 42) & ZIP64_MAGIC;
+
+			byte[] name = new byte[nameLength];
+			central.position(position + 46);
+			central.get(name);
+
+			int extra = position + 46 + nameLength;
+			int extraEnd = extra + extraLength;
+			while (extra + 4 <= extraEnd) {
+				int id = central.getShort(extra) & 0xffff;
+				int dataSize = central.getShort(extra + 2) & 0xffff;
+				if (id == 0x0001) {
+					int field = extra + 4;
+					if (size == ZIP64_MAGIC) {
+						size = central.getLong(field);
+						field += 8;
+					}
+					if (compressedSize == ZIP64_MAGIC) {
+						compressedSize = central.getLong(field);
+						field += 8;
+					}
+					if (offset == ZIP64_MAGIC) {
+						offset = central.getLong(field);
+					}
+				}
+				extra += 4 + dataSize;
+			}
+
+			Entry entry = new Entry(new String(name, Charsets.UTF_8), offset, (flags & ENCRYPTED_FLAG) != 0);
+			entry.setMethod(method == ZipEntry.STORED || method == ZipEntry.DEFLATED ? method : ZipEntry.DEFLATED);
+			entry.rawMethod = method;
+			entry.setTime(fromDosTime(dosTime));
+			entry.setCrc(crc);
+			entry.setSize(size);
+			entry.setCompressedSize(compressedSize);
+			result.add(entry);
+
+			position = extraEnd + commentLength;
+		}
+
+		return result;
+	}
+
+	private ByteBuffer read(long position, int size) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) == -1) {
+				throw new ZipException("Unexpected end of zip file");
+			}
+		}
+		buffer.flip();
+
+		return buffer;
+	}
+
+	private static long fromDosTime(long dosTime) {
+		Calendar calendar = Calendar.getInstance();
+		calendar.clear();
+		calendar.set((int) ((dosTime >> 25) & 0x7f) + 1980, (int) ((dosTime >> 21) & 0x0f) - 1, (int) ((dosTime >> 16) & 0x1f),
+				(int) ((dosTime >> 11) & 0x1f), (int) ((dosTime >> 5) & 0x3f), (int) ((dosTime << 1) & 0x3e));
+
+		return calendar.getTimeInMillis();
+	}
+
+	/**
+	 * An entry of the archive, with the offset of its local header.
+	 */
+	public static class Entry extends ZipEntry {
+
+		private final long offset;
+		private final boolean encrypted;
+		private int rawMethod;
+
+		private Entry(String name, long offset, boolean encrypted) {
+			super(name);
+			this.offset = offset;
+			this.encrypted = encrypted;
+		}
+
+		/**
+		 * Verify if the data can be copied raw to a {@link RawZipOutputStream}.
+		 *
+		 * @return true if the entry is stored or deflated, and not encrypted.
+		 */
+		public boolean isCopyable() {
+			return !encrypted && (rawMethod == ZipEntry.STORED || rawMethod == ZipEntry.DEFLATED);
+		}
+	}
+}
@@ -0,0 +1,264 @@
+package infradev.lumis.lumisportalinstaller.common.tools;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Calendar;
+import java.util.List;
+import java.util.zip.ZipEntry;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.CountingOutputStream;
+
+/**
+ * A zip output stream that writes the entry data as given, already deflated or stored, so entries can be compressed elsewhere or copied
+ * raw from another archive.
+ *
+ * The method, CRC32, size and compressed size of each entry must be known before it is written. Archives with more than 65535 entries or
+ * larger than 4 GB are written with the Zip64 end of central directory, but a single entry must be smaller than 4 GB.
+ *
+ * @author Alexandre Ribeiro de Souza
+ */
+public class RawZipOutputStream extends OutputStream {
+
+	private static final long LOCAL_HEADER_SIGNATURE = 0x04034b50L;
+	private static final long CENTRAL_HEADER_SIGNATURE = 0x02014b50L;
+	private static final long END_SIGNATURE = 0x06054b50L;
+	private static final long ZIP64_END_SIGNATURE = 0x06064b50L;
+	private static final long ZIP64_LOCATOR_SIGNATURE = 0x07064b50L;
+	private static final int UTF8_FLAG = 0x0800;
+	private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+	private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+
+	private final CountingOutputStream out;
+	private final List<CentralEntry> entries = Lists.newArrayList();
+	private CentralEntry current;
+	private long written;
+	private boolean closed;
+
+	public RawZipOutputStream(OutputStream out) {
+		this.out = new CountingOutputStream(new BufferedOutputStream(out, 64 * 1024));
+	}
+
+	/**
+	 * Begin a new entry. The data written next must be the stored or deflated bytes of the entry.
+	 *
+	 * @param entry
+	 *            The entry, with the method, CRC32, size and compressed size set.
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	public void putNextEntry(ZipEntry entry) throws IOException {
+		closeEntry();
+
+		if (entry.getMethod() != ZipEntry.STORED && entry.getMethod() != ZipEntry.DEFLATED) {
+			throw new IOException(String.format("Unsupported compression method of entry %s", entry.getName()));
+		}
+		if (entry.getCrc() == -1 || entry.getSize() == -1 || entry.getCompressedSize() == -1) {
+			throw new IOException(String.format("Missing CRC32 or size of entry %s", entry.getName()));
+		}
+		if (entry.getSize() >= ZIP64_MAGIC || entry.getCompressedSize() >= ZIP64_MAGIC) {
+			throw new IOException(String.format("Entry %s is too large", entry.getName()));
+		}
+
+		byte[] name = entry.getName().getBytes(Charsets.UTF_8);
+		int flags = name.length != entry.getName().length() ? UTF8_FLAG : 0;
+		int version = entry.getMethod() == ZipEntry.DEFLATED ? 20 : 10;
+
+		current = new CentralEntry(entry, name, flags, version, toDosTime(entry.getTime()), out.getCount());
+		written = 0;
+
+		writeInt(LOCAL_HEADER_SIGNATURE);
+		writeShort(version);
+		writeShort(flags);
+		writeShort(entry.getMethod());
+		writeInt(current.dosTime);
+		writeInt(entry.getCrc());
+		writeInt(entry.getCompressedSize());
+		writeInt(entry.getSize());
+		writeShort(name.length);
+		writeShort(0);
+		out.write(name);
+	}
+
+	/**
+	 * Finish the current entry, verifying that all of its data was written.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	public void closeEntry() throws IOException {
+		if (current == null) {
+			return;
+		}
+
+		if (written != current.entry.getCompressedSize()) {
+			throw new IOException(String.format("Entry %s has %d bytes, expected %d", current.entry.getName(), written,
+					current.entry.getCompressedSize()));
+		}
+
+		entries.add(current);
+		current = null;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		ensureEntry();
+		out.write(b);
+		written++;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		ensureEntry();
+		out.write(b, off, len);
+		written += len;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	/**
+	 * Write the central directory and close the underlying stream.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+
+		try {
+			closeEntry();
+			writeCentralDirectory();
+		} finally {
+			out.close();
+		}
+	}
+
+	private void ensureEntry() throws IOException {
+		if (current == null) {
+			throw new IOException("No current zip entry");
+		}
+	}
+
+	private void writeCentralDirectory() throws IOException {
+		long centralOffset = out.getCount();
+
+		for (CentralEntry centralEntry : entries) {
+			boolean zip64 = centralEntry.offset >= ZIP64_MAGIC;
+
+			writeInt(CENTRAL_HEADER_SIGNATURE);
+			writeShort(zip64 ? 45 : 20);
+			writeShort(zip64 ? 45 : centralEntry.version);
+			writeShort(centralEntry.flags);
+			writeShort(centralEntry.entry.getMethod());
+			writeInt(centralEntry.dosTime);
+			writeInt(centralEntry.entry.getCrc());
+			writeInt(centralEntry.entry.getCompressedSize());
+			writeInt(centralEntry.entry.getSize());
+			writeShort(centralEntry.name.length);
+			writeShort(zip64 ? 12 : 0);
+			writeShort(0);
+			writeShort(0);
+			writeShort(0);
+			writeInt(0);
+			writeInt(zip64 ? ZIP64_MAGIC : centralEntry.offset);
+			out.write(centralEntry.name);
+			if (zip64) {
+				writeShort(0x0001);
+				writeShort(8);
+				writeLong(centralEntry.offset);
+			}
+		}
+
+		long centralSize = out.getCount() - centralOffset;
+		boolean zip64 = entries.size() >= ZIP64_MAGIC_COUNT || centralOffset >= ZIP64_MAGIC || centralSize >= ZIP64_MAGIC;
+
+		if (zip64) {
+			long zip64EndOffset = out.getCount();
+
+			writeInt(ZIP64_END_SIGNATURE);
+			writeLong(44);
+			writeShort(45);
+			writeShort(45);
+			writeInt(0);
+			writeInt(0);
+			writeLong(entries.size());
+			writeLong(entries.size());
+			writeLong(centralSize);
+			writeLong(centralOffset);
+
+			writeInt(ZIP64_LOCATOR_SIGNATURE);
+			writeInt(0);
+			writeLong(zip64EndOffset);
+			writeInt(1);
+		}
+
+		writeInt(END_SIGNATURE);
+		writeShort(0);
+		writeShort(0);
+		writeShort(Math.min(entries.size(), ZIP64_MAGIC_COUNT));
+		writeShort(Math.min(entries.size(), ZIP64_MAGIC_COUNT));
+		writeInt(Math.min(centralSize, ZIP64_MAGIC));
+		writeInt(Math.min(centralOffset, ZIP64_MAGIC));
+		writeShort(0);
+	}
+
+	private static long toDosTime(long time) {
+		if (time == -1) {
+			time = System.currentTimeMillis();
+		}
+
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTimeInMillis(time);
+
+		int year = calendar.get(Calendar.YEAR);
+		if (year < 1980) {
+			return (1 << 21) | (1 << 16);
+		}
+
+		return ((long) (year - 1980) << 25) | ((calendar.get(Calendar.MONTH) + 1) << 21) | (calendar.get(Calendar.DAY_OF_MONTH) << 16)
+				| (calendar.get(Calendar.HOUR_OF_DAY) << 11) | (calendar.get(Calendar.MINUTE) << 5) | (calendar.get(Calendar.SECOND) >> 1);
+	}
+
+	private void writeShort(int value) throws IOException {
+		out.write(value & 0xff);
+		out.write((value >>> 8) & 0xff);
+	}
+
+	private void writeInt(long value) throws IOException {
+		writeShort((int) (value & 0xffff));
+		writeShort((int) ((value >>> 16) & 0xffff));
+	}
+
+	private void writeLong(long value) throws IOException {
+		writeInt(value & 0xffffffffL);
+		writeInt(value >>> 32);
+	}
+
+	/**
+	 * An entry already written, waiting for the central directory.
+	 */
+	private static class CentralEntry {
+
+		private final ZipEntry entry;
+		private final byte[] name;
+		private final int flags;
+		private final int version;
+		private final long dosTime;
+		private final long offset;
+
+		private CentralEntry(ZipEntry entry, byte[] name, int flags, int version, long dosTime, long offset) {
+			this.entry = entry;
+			this.name = name;
+			this.flags = flags;
+			this.version = version;
+			this.dosTime = dosTime;
+			this.offset = offset;
+		}
+	}
+}
@@ -0,0 +1,252 @@
+package infradev.lumis.lumisportalinstaller.common.tools;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Objects;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A downloader that fetches segments of a file in parallel with HTTP Range requests.
+ *
+ * The completed segments are recorded on a journal next to the file, so an interrupted download resumes from the segments that are still
+ * missing.
+ *
+ * @author Alexandre Ribeiro de Souza
+ */
+public class SegmentedDownloader {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int RETRIES = 3;
+
+	private final ProgressMeter progressMeter;
+	private int segments;
+	private long minSegmentSize;
+
+	@Inject
+	public SegmentedDownloader(ProgressMeter progressMeter) {
+		this.progressMeter = progressMeter;
+		this.segments = 4;
+		this.minSegmentSize = 1024 * 1024;
+	}
+
+	public int getSegments() {
+		return segments;
+	}
+
+	public void setSegments(int segments) {
+		this.segments = Math.max(segments, 1);
+	}
+
+	public long getMinSegmentSize() {
+		return minSegmentSize;
+	}
+
+	public void setMinSegmentSize(long minSegmentSize) {
+		this.minSegmentSize = Math.max(minSegmentSize, 1);
+	}
+
+	/**
+	 * Download an url to a file using parallel segments.
+	 *
+	 * @param url
+	 *            URL from where the file will be downloaded.
+	 * @param file
+	 *            File destination of the download.
+	 * @return false if the server does not accept range requests and nothing was downloaded.
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	public boolean download(final URL url, File file) throws IOException {
+		if (!url.getProtocol().startsWith("http")) {
+			return false;
+		}
+
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		connection.setRequestMethod("HEAD");
+		long length = connection.getContentLengthLong();
+		boolean acceptRanges = connection.getResponseCode() == HttpURLConnection.HTTP_OK && "bytes".equalsIgnoreCase(connection.getHeaderField("Accept-Ranges"));
+		String validator = Objects.firstNonNull(connection.getHeaderField("ETag"), Objects.firstNonNull(connection.getHeaderField("Last-Modified"), ""));
+		connection.disconnect();
+
+		if (!acceptRanges || length <= 0) {
+			return false;
+		}
+
+		int count = (int) Math.max(1, Math.min(segments, length / minSegmentSize));
+		long segmentSize = (length + count - 1) / count;
+
+		final File journalFile = new File(file.getAbsolutePath() + ".segments");
+		final Properties journal = loadJournal(journalFile, file, length, count, validator);
+		final BitSet completed = new BitSet(count);
+		for (String index : Splitter.on(',').omitEmptyStrings().split(journal.getProperty("completed", ""))) {
+			completed.set(Integer.parseInt(index));
+		}
+
+		final AtomicLong downloaded = new AtomicLong();
+		for (int i = completed.nextSetBit(0); i >= 0; i = completed.nextSetBit(i + 1)) {
+			downloaded.addAndGet(Math.min(segmentSize, length - i * segmentSize));
+		}
+
+		Files.createParentDirs(file);
+		ExecutorService executor = Executors.newFixedThreadPool(count, new ThreadFactoryBuilder().setNameFormat("lpi-download-%d").setDaemon(true).build());
+
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+			randomAccessFile.setLength(length);
+			final FileChannel channel = randomAccessFile.getChannel();
+			final long total = length;
+
+			List<Future<Void>> futures = Lists.newArrayList();
+			for (int i = 0; i < count; i++) {
+				if (completed.get(i)) {
+					continue;
+				}
+
+				final int index = i;
+				final long start = i * segmentSize;
+				final long end = Math.min(start + segmentSize, length) - 1;
+
+				futures.add(executor.submit(new Callable<Void>() {
+
+					@Override
+					public Void call() throws IOException {
+						downloadSegment(url, channel, start, end, downloaded, total);
+
+						synchronized (completed) {
+							completed.set(index);
+							journal.setProperty("completed", Joiner.on(',').join(getIndexes(completed)));
+							storeJournal(journal, journalFile);
+						}
+
+						return null;
+					}
+				}));
+			}
+
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+
+		journalFile.delete();
+
+		return true;
+	}
+
+	/**
+	 * Download a segment, retrying from the last received byte when the connection drops.
+	 */
+	private void downloadSegment(URL url, FileChannel channel, long start, long end, AtomicLong downloaded, long total) throws IOException {
+		byte[] buffer = new byte[BUFFER_SIZE];
+		long position = start;
+
+		for (int attempt = 1; position <= end; attempt++) {
+			HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+			connection.setRequestProperty("Range", String.format("bytes=%d-%d", position, end));
+
+			try {
+				if (connection.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+					throw new IOException(String.format("Server ignored the range request of %s (HTTP %d)", url, connection.getResponseCode()));
+				}
+
+				try (InputStream is = connection.getInputStream()) {
+					int read;
+					while (position <= end && (read = is.read(buffer, 0, (int) Math.min(buffer.length, end - position + 1))) != -1) {
+						ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, read);
+						while (byteBuffer.hasRemaining()) {
+							position += channel.write(byteBuffer, position);
+						}
+
+						long count = downloaded.addAndGet(read);
+						String msg = String.format("  |- %d (%,.2f%%) of %d bytes downloaded", count, ((count * 1.00) / total) * 100, total);
+						progressMeter.tick(msg);
+					}
+				}
+
+				if (position <= end) {
+					throw new IOException(String.format("Segment %d-%d of %s ended at %d", start, end, url, position));
+				}
+			} catch (IOException e) {
+				if (attempt >= RETRIES) {
+					throw e;
+				}
+				Log.warn(String.format("  |- Retrying segment %d-%d of %s: %s", position, end, url, e.getLocalizedMessage()));
+			} finally {
+				connection.disconnect();
+			}
+		}
+	}
+
+	private Properties loadJournal(File journalFile, File file, long length, int count, String validator) throws IOException {
+		Properties journal = new Properties();
+
+		if (journalFile.isFile() && file.isFile()) {
+			try (InputStream is = new FileInputStream(journalFile)) {
+				journal.load(is);
+			}
+		}
+
+		if (!String.valueOf(length).equals(journal.getProperty("length")) || !String.valueOf(count).equals(journal.getProperty("segments"))
+				|| !validator.equals(journal.getProperty("validator"))) {
+			journal.clear();
+			journal.setProperty("length", String.valueOf(length));
+			journal.setProperty("segments", String.valueOf(count));
+			journal.setProperty("validator", validator);
+		}
+
+		return journal;
+	}
+
+	private void storeJournal(Properties journal, File journalFile) throws IOException {
+		File tempFile = new File(journalFile.getAbsolutePath() + ".tmp");
+
+		try (OutputStream os = new FileOutputStream(tempFile)) {
+			journal.store(os, null);
+		}
+
+		Files.move(tempFile, journalFile);
+	}
+
+	private List<Integer> getIndexes(BitSet bitSet) {
+		List<Integer> indexes = Lists.newArrayList();
+		for (int i = bitSet.nextSetBit(0); i >= 0; i = bitSet.nextSetBit(i + 1)) {
+			indexes.add(i);
+		}
+
+		return indexes;
+	}
+}
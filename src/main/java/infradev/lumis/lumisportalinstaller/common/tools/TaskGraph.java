@@ -0,0 +1,366 @@
+package infradev.lumis.lumisportalinstaller.common.tools;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A graph of installation tasks that runs the independent tasks at the same time.
+ *
+ * Each task declares the resources it consumes and the ones it produces, such as an extracted directory or an initialized database, and
+ * runs after the tasks that produce its inputs. Tasks that are ready run on a bounded pool, in the order they were added, so with one thread
+ * the graph runs like the tasks were called one after the other. When a task fails no other task is started, the running ones are waited
+ * for and the first failure is thrown. At the end the critical path, the chain of dependent tasks that took the longest, is logged.
+ *
+ * @author Alexandre Ribeiro de Souza
+ */
+public class TaskGraph {
+
+	private final List<Node> nodes = Lists.newArrayList();
+	private final List<Node> criticalPath = Lists.newArrayList();
+	private int threads;
+
+	@Inject
+	public TaskGraph() {
+		setThreads(0);
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Sets the number of tasks that run at the same time.
+	 *
+	 * @param threads
+	 *            Number of threads, or zero to use one per available processor.
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Add a task to the graph.
+	 *
+	 * @param name
+	 *            Name of the task, used on the log.
+	 * @param task
+	 *            The task.
+	 * @return The node of the task, to declare its inputs and outputs.
+	 */
+	public Node add(String name, Task task) {
+		Node node = new Node(name, task);
+		nodes.add(node);
+
+		return node;
+	}
+
+	/**
+	 * Get the names of the tasks on the critical path of the last execution, with the first task first.
+	 *
+	 * @return Names of the tasks.
+	 */
+	public List<String> getCriticalPath() {
+		List<String> names = Lists.newArrayList();
+		for (Node node : criticalPath) {
+			names.add(node.name);
+		}
+
+		return names;
+	}
+
+	/**
+	 * Execute the tasks of the graph.
+	 *
+	 * @throws IOException
+	 *             The first failure of a task.
+	 * @throws IllegalStateException
+	 *             When an input is not produced by any task, an output is produced by more than one task or the tasks depend on each other.
+	 */
+	public void execute() throws IOException {
+		Map<Node, Set<Node>> dependents = link();
+		List<Node> order = sort(dependents);
+
+		Map<Node, Integer> pending = Maps.newHashMap();
+		for (Node node : nodes) {
+			pending.put(node, node.dependencies.size());
+		}
+
+		int workers = Math.max(1, Math.min(threads, nodes.size()));
+		Log.info(String.format("- Running %d tasks on %d threads", nodes.size(), workers));
+
+		ExecutorService executor = Executors.newFixedThreadPool(workers, new ThreadFactoryBuilder().setNameFormat("lpi-task-%d").setDaemon(true).build());
+		CompletionService<Node> completionService = new ExecutorCompletionService<>(executor);
+		long start = System.nanoTime();
+		Throwable failure = null;
+		int running = 0;
+
+		try {
+			for (Node node : nodes) {
+				if (node.dependencies.isEmpty()) {
+					completionService.submit(node);
+					running++;
+				}
+			}
+
+			while (running > 0) {
+				Node node;
+				try {
+					node = completionService.take().get();
+					running--;
+				} catch (ExecutionException e) {
+					running--;
+					if (failure == null) {
+						failure = e.getCause();
+					}
+					continue;
+				}
+
+				if (failure != null) {
+					continue;
+				}
+
+				for (Node dependent : dependents.get(node)) {
+					int count = pending.get(dependent) - 1;
+					pending.put(dependent, count);
+					if (count == 0) {
+						completionService.submit(dependent);
+						running++;
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} finally {
+			executor.shutdownNow();
+		}
+
+		if (failure instanceof IOException) {
+			throw (IOException) failure;
+		} else if (failure instanceof RuntimeException) {
+			throw (RuntimeException) failure;
+		} else if (failure instanceof Error) {
+			throw (Error) failure;
+		} else if (failure != null) {
+			throw new IOException(failure);
+		}
+
+		logCriticalPath(order, System.nanoTime() - start);
+	}
+
+	/**
+	 * Link each task to the tasks that produce its inputs.
+	 *
+	 * @return The tasks that depend on each task.
+	 */
+	private Map<Node, Set<Node>> link() {
+		Map<String, Node> producers = Maps.newHashMap();
+		for (Node node : nodes) {
+			for (String output : node.outputs) {
+				Node producer = producers.put(output, node);
+				if (producer != null) {
+					throw new IllegalStateException(String.format("%s is produced by %s and %s", output, producer.name, node.name));
+				}
+			}
+		}
+
+		Map<Node, Set<Node>> dependents = Maps.newHashMap();
+		for (Node node : nodes) {
+			dependents.put(node, Sets.<Node> newLinkedHashSet());
+		}
+
+		for (Node node : nodes) {
+			node.dependencies.clear();
+			for (String input : node.inputs) {
+				Node producer = producers.get(input);
+				if (producer == null) {
+					throw new IllegalStateException(String.format("%s consumes %s, which is not produced by any task", node.name, input));
+				}
+				node.dependencies.add(producer);
+				dependents.get(producer).add(node);
+			}
+		}
+
+		return dependents;
+	}
+
+	/**
+	 * Sort the tasks so each task comes after its dependencies.
+	 *
+	 * @param dependents
+	 *            The tasks that depend on each task.
+	 * @return The sorted tasks.
+	 */
+	private List<Node> sort(Map<Node, Set<Node>> dependents) {
+		Map<Node, Integer> pending = Maps.newHashMap();
+		List<Node> order = Lists.newArrayList();
+		for (Node node : nodes) {
+			pending.put(node, node.dependencies.size());
+			if (node.dependencies.isEmpty()) {
+				order.add(node);
+			}
+		}
+
+		for (int i = 0; i < order.size(); i++) {
+			for (Node dependent : dependents.get(order.get(i))) {
+				int count = pending.get(dependent) - 1;
+				pending.put(dependent, count);
+				if (count == 0) {
+					order.add(dependent);
+				}
+			}
+		}
+
+		if (order.size() < nodes.size()) {
+			List<String> names = Lists.newArrayList();
+			for (Node node : nodes) {
+				if (pending.get(node) > 0) {
+					names.add(node.name);
+				}
+			}
+			throw new IllegalStateException(String.format("The tasks depend on each other: %s", Joiner.on(", ").join(names)));
+		}
+
+		return order;
+	}
+
+	/**
+	 * Find and log the chain of dependent tasks with the longest duration, the one that bounds the duration of the whole graph.
+	 *
+	 * @param order
+	 *            The tasks sorted by their dependencies.
+	 * @param elapsed
+	 *            Duration of the whole graph, in nanoseconds.
+	 */
+	private void logCriticalPath(List<Node> order, long elapsed) {
+		Map<Node, Long> lengths = Maps.newHashMap();
+		Map<Node, Node> previous = Maps.newHashMap();
+		Node last = null;
+
+		for (Node node : order) {
+			Node longest = null;
+			for (Node dependency : node.dependencies) {
+				if (longest == null || lengths.get(dependency) > lengths.get(longest)) {
+					longest = dependency;
+				}
+			}
+			if (longest != null) {
+				previous.put(node, longest);
+			}
+			lengths.put(node, (longest == null ? 0 : lengths.get(longest)) + node.duration);
+
+			if (last == null || lengths.get(node) > lengths.get(last)) {
+				last = node;
+			}
+		}
+
+		criticalPath.clear();
+		for (Node node = last; node != null; node = previous.get(node)) {
+			criticalPath.add(node);
+		}
+		Collections.reverse(criticalPath);
+
+		List<String> steps = Lists.newArrayList();
+		for (Node node : criticalPath) {
+			steps.add(String.format("%s (%s)", node.name, seconds(node.duration)));
+		}
+		Log.info(String.format("  +- Critical path of %s in %s: %s", last == null ? seconds(0) : seconds(lengths.get(last)), seconds(elapsed),
+				Joiner.on(" > ").join(steps)));
+	}
+
+	private String seconds(long nanos) {
+		return String.format("%.1fs", TimeUnit.NANOSECONDS.toMillis(nanos) / 1000.0);
+	}
+
+	/**
+	 * A task of the graph.
+	 */
+	public interface Task {
+
+		/**
+		 * Run the task.
+		 *
+		 * @throws IOException
+		 *             Throws IOException.
+		 */
+		void run() throws IOException;
+	}
+
+	/**
+	 * A task of the graph with its inputs and outputs.
+	 */
+	public static final class Node implements Callable<Node> {
+
+		private final String name;
+		private final Task task;
+		private final Set<String> inputs = Sets.newLinkedHashSet();
+		private final Set<String> outputs = Sets.newLinkedHashSet();
+		private final Set<Node> dependencies = Sets.newLinkedHashSet();
+		private volatile long duration;
+
+		private Node(String name, Task task) {
+			this.name = name;
+			this.task = task;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Declare resources the task needs before it runs.
+		 *
+		 * @param resources
+		 *            Names of the resources.
+		 * @return This node.
+		 */
+		public Node consumes(String... resources) {
+			Collections.addAll(inputs, resources);
+
+			return this;
+		}
+
+		/**
+		 * Declare resources that are ready once the task finishes.
+		 *
+		 * @param resources
+		 *            Names of the resources.
+		 * @return This node.
+		 */
+		public Node produces(String... resources) {
+			Collections.addAll(outputs, resources);
+
+			return this;
+		}
+
+		@Override
+		public Node call() throws IOException {
+			long start = System.nanoTime();
+			try {
+				task.run();
+			} finally {
+				duration = System.nanoTime() - start;
+			}
+
+			return this;
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package infradev.lumis.lumisportalinstaller.common.tools;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import com.github.mustachejava.DefaultMustacheFactory;
+import com.github.mustachejava.Mustache;
+import com.github.mustachejava.MustacheFactory;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+import com.google.common.io.Resources;
+
+/**
+ * A registry of compiled Mustache templates.
+ *
+ * A template resource is read and compiled the first time it is used, and the compiled template is shared by every later render, from
+ * any thread. Templates are rendered straight into the target file, encoded as UTF-8 the same way {@link com.google.common.io.Files#write}
+ * does, so the file is byte for byte the same as rendering to a String and saving it.
+ *
+ * @author Alexandre Ribeiro de Souza
+ */
+@Singleton
+public class TemplateRegistry {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final MustacheFactory factory = new DefaultMustacheFactory();
+	private final ConcurrentMap<String, Mustache> templates = Maps.newConcurrentMap();
+
+	@Inject
+	public TemplateRegistry() {
+	}
+
+	/**
+	 * Get the compiled template of a resource, compiling it on the first call.
+	 *
+	 * @param resource
+	 *            The template resource.
+	 * @return The compiled template.
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	public Mustache get(URL resource) throws IOException {
+		String name = resource.toExternalForm();
+
+		Mustache mustache = templates.get(name);
+		if (mustache == null) {
+			Mustache compiled = compile(Resources.toString(resource, Charsets.UTF_8), name);
+			mustache = templates.putIfAbsent(name, compiled);
+			if (mustache == null) {
+				mustache = compiled;
+			}
+		}
+
+		return mustache;
+	}
+
+	/**
+	 * Compile a template that is not a resource, such as a configuration file being patched. The result is not cached.
+	 *
+	 * @param template
+	 *            The template text.
+	 * @param name
+	 *            The template name, used on error messages.
+	 * @return The compiled template.
+	 */
+	public Mustache compile(String template, String name) {
+		synchronized (factory) {
+			return factory.compile(new StringReader(template), name);
+		}
+	}
+
+	/**
+	 * Render a template into a file, replacing its content.
+	 *
+	 * @param mustache
+	 *            The compiled template.
+	 * @param scope
+	 *            The model of the template.
+	 * @param file
+	 *            The target file.
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	public void render(Mustache mustache, Map<String, Object> scope, File file) throws IOException {
+		CharsetEncoder encoder = Charsets.UTF_8.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+				Writer writer = new BufferedWriter(Channels.newWriter(channel, encoder, -1), BUFFER_SIZE)) {
+			mustache.execute(writer, scope);
+		}
+	}
+
+	/**
+	 * Render a template into a String.
+	 *
+	 * @param mustache
+	 *            The compiled template.
+	 * @param scope
+	 *            The model of the template.
+	 * @return The rendered text.
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	public String render(Mustache mustache, Map<String, Object> scope) throws IOException {
+		Writer writer = new StringWriter();
+		mustache.execute(writer, scope).flush();
+
+		return writer.toString();
+	}
+}
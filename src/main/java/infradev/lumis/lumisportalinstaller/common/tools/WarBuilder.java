@@ -0,0 +1,381 @@
+package infradev.lumis.lumisportalinstaller.common.tools;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+import javax.inject.Inject;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.common.io.CountingOutputStream;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A war builder that deflates the files of a directory on a pool of workers and writes the entries in order, or that repacks a directory of
+ * a zip archive copying the compressed entries as they are.
+ *
+ * Jars, images and other files that are already compressed are stored, and so is any file that does not get smaller when deflated. Files
+ * larger than 1 MB are streamed, and deflated to a temporary file, so the memory held by the pending entries stays bounded.
+ *
+ * @author Alexandre Ribeiro de Souza
+ */
+public class WarBuilder {
+
+	private static final Set<String> PRECOMPRESSED_EXTENSIONS = ImmutableSet.of("jar", "war", "ear", "zip", "gz", "tgz", "bz2", "xz", "7z",
+			"rar", "png", "jpg", "jpeg", "gif", "ico", "webp", "swf", "flv", "mp3", "mp4", "m4a", "ogg", "avi", "mov", "webm", "woff", "woff2",
+			"docx", "xlsx", "pptx", "odt", "ods", "odp");
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int PENDING_PER_THREAD = 4;
+	private static final long MAX_IN_MEMORY = 1024 * 1024;
+
+	private final ProgressMeter progressMeter;
+	private int threads;
+	private int level;
+
+	@Inject
+	public WarBuilder(ProgressMeter progressMeter) {
+		this.progressMeter = progressMeter;
+		setThreads(0);
+		this.level = Deflater.DEFAULT_COMPRESSION;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Sets the number of worker threads.
+	 *
+	 * @param threads
+	 *            Number of workers, or zero to use one per available processor.
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+	}
+
+	public int getLevel() {
+		return level;
+	}
+
+	/**
+	 * Sets the compression level of the deflated entries.
+	 *
+	 * @param level
+	 *            From 0 to 9, or -1 to use the default level.
+	 */
+	public void setLevel(int level) {
+		if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+			throw new IllegalArgumentException(String.format("Invalid compression level %d", level));
+		}
+		this.level = level;
+	}
+
+	/**
+	 * Verify if a file is stored without compression because its content is already compressed.
+	 *
+	 * @param name
+	 *            Name of the file.
+	 * @return true if the extension of the file is of a compressed format.
+	 */
+	public static boolean isPrecompressed(String name) {
+		int dot = name.lastIndexOf('.');
+
+		return dot != -1 && dot > name.lastIndexOf('/') && PRECOMPRESSED_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ENGLISH));
+	}
+
+	/**
+	 * Build a war with the files of a directory.
+	 *
+	 * @param sourceDirectory
+	 *            The directory that will be the root of the war.
+	 * @param pathFilter
+	 *            Filter of the paths, relative to the source directory, that will be added.
+	 * @param war
+	 *            The war file.
+	 * @return The number of entries of the war.
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	public int build(File sourceDirectory, PathFilter pathFilter, File war) throws IOException {
+		List<String> paths = pathFilter.list(sourceDirectory);
+		Collections.sort(paths);
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setNameFormat("lpi-deflate-%d").setDaemon(true).build());
+		Deque<Future<Item>> pending = new ArrayDeque<>();
+		int totalFiles = 0;
+
+		try (RawZipOutputStream zos = new RawZipOutputStream(new FileOutputStream(war))) {
+			for (String path : paths) {
+				pending.add(executor.submit(new Compressor(new File(sourceDirectory, path), path)));
+
+				if (pending.size() >= threads * PENDING_PER_THREAD) {
+					write(zos, pending.poll().get());
+					progressMeter.tick(String.format("  |- %d files compressed", ++totalFiles));
+				}
+			}
+
+			while (!pending.isEmpty()) {
+				write(zos, pending.poll().get());
+				progressMeter.tick(String.format("  |- %d files compressed", ++totalFiles));
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+
+		return totalFiles;
+	}
+
+	/**
+	 * Build a war with the files of a directory, copying the compressed data of the entries of a zip archive for the files that are
+	 * unchanged. The archive entries whose file was removed from the directory are left out, and the files of the directory that are not
+	 * on the archive are added. A file is taken from the directory when its size differs from the entry, or when its path is listed as
+	 * changed.
+	 *
+	 * @param archive
+	 *            The zip archive.
+	 * @param root
+	 *            Path of the directory of the archive that will be the root of the war, ending with '/'.
+	 * @param pathFilter
+	 *            Filter of the entries of the archive and of the files of the directory, by their full path on the archive.
+	 * @param directory
+	 *            The directory that will be the root of the war, extracted from the archive.
+	 * @param changed
+	 *            Paths, relative to the root, of the files that may have been changed without changing their size.
+	 * @return The number of entries of the war.
+	 * @throws IOException
+	 *             Throws IOException, or ZipException when an entry can not be copied raw.
+	 */
+	public int repack(File archive, String root, PathFilter pathFilter, File directory, Collection<String> changed, File war)
+			throws IOException {
+		Set<String> added = Sets.newTreeSet(new PathFilter().list(directory));
+		int totalFiles = 0;
+
+		try (RawZipFile zipFile = new RawZipFile(archive); RawZipOutputStream zos = new RawZipOutputStream(new FileOutputStream(war))) {
+			for (RawZipFile.Entry entry : zipFile.entries()) {
+				String name = entry.getName();
+				if (entry.isDirectory() || !name.startsWith(root) || name.length() == root.length() || !pathFilter.matches(name)) {
+					continue;
+				}
+				name = name.substring(root.length());
+
+				if (!added.remove(name)) {
+					continue;
+				}
+
+				File file = new File(directory, name);
+				if (changed.contains(name) || file.length() != entry.getSize()) {
+					write(zos, new Compressor(file, name).call());
+				} else {
+					if (!entry.isCopyable()) {
+						throw new ZipException(String.format("Entry %s can not be copied", entry.getName()));
+					}
+
+					ZipEntry warEntry = new ZipEntry(name);
+					warEntry.setMethod(entry.getMethod());
+					warEntry.setTime(entry.getTime());
+					warEntry.setCrc(entry.getCrc());
+					warEntry.setSize(entry.getSize());
+					warEntry.setCompressedSize(entry.getCompressedSize());
+
+					zos.putNextEntry(warEntry);
+					zipFile.copyRaw(entry, zos);
+					zos.closeEntry();
+				}
+
+				progressMeter.tick(String.format("  |- %d files copied", ++totalFiles));
+			}
+
+			for (String name : added) {
+				if (pathFilter.matches(root + name)) {
+					write(zos, new Compressor(new File(directory, name), name).call());
+					totalFiles++;
+				}
+			}
+		}
+
+		return totalFiles;
+	}
+
+	private void write(RawZipOutputStream zos, Item item) throws IOException {
+		zos.putNextEntry(item.entry);
+
+		if (item.data != null) {
+			zos.write(item.data, 0, item.length);
+		} else {
+			Files.asByteSource(item.file).copyTo(zos);
+		}
+
+		zos.closeEntry();
+
+		if (item.temporary) {
+			item.file.delete();
+		}
+	}
+
+	/**
+	 * A compressed entry, with its data, or with the file of its data when it is too large to be kept in memory.
+	 */
+	private static class Item {
+
+		private final ZipEntry entry;
+		private final File file;
+		private final boolean temporary;
+		private final byte[] data;
+		private final int length;
+
+		private Item(ZipEntry entry, File file, boolean temporary, byte[] data, int length) {
+			this.entry = entry;
+			this.file = file;
+			this.temporary = temporary;
+			this.data = data;
+			this.length = length;
+		}
+	}
+
+	/**
+	 * Worker that computes the CRC32 of a file and deflates it, unless it is stored.
+	 */
+	private class Compressor implements Callable<Item> {
+
+		private final File file;
+		private final String name;
+
+		private Compressor(File file, String name) {
+			this.file = file;
+			this.name = name;
+		}
+
+		@Override
+		public Item call() throws IOException {
+			ZipEntry entry = new ZipEntry(name);
+			entry.setTime(file.lastModified());
+
+			if (file.length() > MAX_IN_MEMORY) {
+				return isPrecompressed(name) ? new Item(stored(entry, crcOf(file), file.length()), file, false, null, 0) : deflateToFile(entry);
+			}
+
+			CRC32 crc = new CRC32();
+			byte[] content = Files.toByteArray(file);
+			crc.update(content, 0, content.length);
+
+			if (!isPrecompressed(name) && content.length > 0) {
+				Deflater deflater = new Deflater(level, true);
+				try {
+					deflater.setInput(content);
+					deflater.finish();
+
+					byte[] deflated = new byte[content.length];
+					int length = 0;
+					while (!deflater.finished() && length < deflated.length) {
+						length += deflater.deflate(deflated, length, deflated.length - length);
+					}
+
+					if (deflater.finished() && length < content.length) {
+						entry.setMethod(ZipEntry.DEFLATED);
+						entry.setCrc(crc.getValue());
+						entry.setSize(content.length);
+						entry.setCompressedSize(length);
+
+						return new Item(entry, file, false, deflated, length);
+					}
+				} finally {
+					deflater.end();
+				}
+			}
+
+			return new Item(stored(entry, crc.getValue(), content.length), file, false, content, content.length);
+		}
+
+		private Item deflateToFile(ZipEntry entry) throws IOException {
+			File deflated = File.createTempFile("lpi-", ".deflate");
+			deflated.deleteOnExit();
+			CRC32 crc = new CRC32();
+			byte[] buffer = new byte[BUFFER_SIZE];
+			long size = 0;
+			boolean keep = false;
+
+			Deflater deflater = new Deflater(level, true);
+			CountingOutputStream counter = new CountingOutputStream(new FileOutputStream(deflated));
+			try (InputStream in = new FileInputStream(file); DeflaterOutputStream out = new DeflaterOutputStream(counter, deflater, BUFFER_SIZE)) {
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					crc.update(buffer, 0, read);
+					out.write(buffer, 0, read);
+					size += read;
+				}
+				out.finish();
+
+				keep = counter.getCount() < size;
+			} finally {
+				deflater.end();
+				if (!keep) {
+					counter.close();
+					deflated.delete();
+				}
+			}
+
+			if (!keep) {
+				return new Item(stored(entry, crc.getValue(), size), file, false, null, 0);
+			}
+
+			entry.setMethod(ZipEntry.DEFLATED);
+			entry.setCrc(crc.getValue());
+			entry.setSize(size);
+			entry.setCompressedSize(counter.getCount());
+
+			return new Item(entry, deflated, true, null, 0);
+		}
+
+		private long crcOf(File file) throws IOException {
+			CRC32 crc = new CRC32();
+			byte[] buffer = new byte[BUFFER_SIZE];
+
+			try (InputStream in = new FileInputStream(file)) {
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					crc.update(buffer, 0, read);
+				}
+			}
+
+			return crc.getValue();
+		}
+
+		private ZipEntry stored(ZipEntry entry, long crc, long size) {
+			entry.setMethod(ZipEntry.STORED);
+			entry.setCrc(crc);
+			entry.setSize(size);
+			entry.setCompressedSize(size);
+
+			return entry;
+		}
+	}
+}
@@ -0,0 +1,645 @@
+package infradev.lumis.lumisportalinstaller.common.tools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLResolver;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * A set of edits applied to an XML file in a single streaming pass.
+ *
+ * Each edit selects elements with an XPath-like path: element names separated by '/', starting with '/' to select from the root or with
+ * '//' to select at any depth. A step may have predicates {@code [@name]}, {@code [@name='value']} and
+ * {@code [starts-with(@name,'value')]}, where {@code @xmlns} is the namespace of the element. Fragments are whole lines of markup, placed
+ * on lines of their own the way the configuration files are laid out.
+ *
+ * The file is read with StAX and written as it is read, so the memory used does not grow with the file and inserted fragments are never
+ * scanned again. Text, comments and the whitespace between tags are copied as they are; the markup of a tag is written again with
+ * double-quoted attributes on one line.
+ *
+ * @author Alexandre Ribeiro de Souza
+ */
+public class XmlPatch {
+
+	private static final Pattern STEP = Pattern.compile("([\\w.:-]+|\\*)((?:\\[[^\\]]*\\])*)");
+	private static final Pattern PREDICATE = Pattern.compile("\\[(?:@([\\w.:-]+)(?:='([^']*)')?|starts-with\\(@([\\w.:-]+),\\s*'([^']*)'\\))\\]");
+
+	private final List<Edit> edits = Lists.newArrayList();
+
+	/**
+	 * Insert a fragment as the first content of the selected elements.
+	 *
+	 * @param path
+	 *            Path of the elements.
+	 * @param fragment
+	 *            Lines to be inserted.
+	 * @return This patch.
+	 */
+	public XmlPatch insertFirst(String path, String fragment) {
+		return add(new Edit(Kind.INSERT_FIRST, path, fragment, null, null));
+	}
+
+	/**
+	 * Insert a fragment as the last content of the selected elements.
+	 *
+	 * @param path
+	 *            Path of the elements.
+	 * @param fragment
+	 *            Lines to be inserted.
+	 * @return This patch.
+	 */
+	public XmlPatch insertLast(String path, String fragment) {
+		return add(new Edit(Kind.INSERT_LAST, path, fragment, null, null));
+	}
+
+	/**
+	 * Insert a fragment after the selected elements.
+	 *
+	 * @param path
+	 *            Path of the elements.
+	 * @param fragment
+	 *            Lines to be inserted.
+	 * @return This patch.
+	 */
+	public XmlPatch insertAfter(String path, String fragment) {
+		return add(new Edit(Kind.INSERT_AFTER, path, fragment, null, null));
+	}
+
+	/**
+	 * Replace the selected elements, and their lines, with a fragment.
+	 *
+	 * @param path
+	 *            Path of the elements.
+	 * @param fragment
+	 *            Lines that replace the elements.
+	 * @return This patch.
+	 */
+	public XmlPatch replace(String path, String fragment) {
+		return add(new Edit(Kind.REPLACE, path, fragment, null, null));
+	}
+
+	/**
+	 * Remove the selected elements and their lines.
+	 *
+	 * @param path
+	 *            Path of the elements.
+	 * @return This patch.
+	 */
+	public XmlPatch remove(String path) {
+		return add(new Edit(Kind.REMOVE, path, null, null, null));
+	}
+
+	/**
+	 * Set an attribute of the selected elements, in place when it exists or after the other attributes.
+	 *
+	 * @param path
+	 *            Path of the elements.
+	 * @param name
+	 *            Name of the attribute.
+	 * @param value
+	 *            Value of the attribute.
+	 * @return This patch.
+	 */
+	public XmlPatch setAttribute(String path, String name, String value) {
+		return add(new Edit(Kind.SET_ATTRIBUTE, path, null, name, value));
+	}
+
+	/**
+	 * Replace the content of the selected elements with a text.
+	 *
+	 * @param path
+	 *            Path of the elements.
+	 * @param text
+	 *            The text.
+	 * @return This patch.
+	 */
+	public XmlPatch setText(String path, String text) {
+		return add(new Edit(Kind.SET_TEXT, path, null, null, text));
+	}
+
+	/**
+	 * Take the selected elements out of the comments that hold them. The rest of each comment stays commented, and the other edits apply
+	 * to the uncommented elements too. Predicates of the last step are not checked.
+	 *
+	 * @param path
+	 *            Path of the elements.
+	 * @return This patch.
+	 */
+	public XmlPatch uncomment(String path) {
+		return add(new Edit(Kind.UNCOMMENT, path, null, null, null));
+	}
+
+	private XmlPatch add(Edit edit) {
+		edits.add(edit);
+
+		return this;
+	}
+
+	/**
+	 * Apply the edits to a file.
+	 *
+	 * @param source
+	 *            The file to be patched.
+	 * @param target
+	 *            The file where the patched content is written. It must not be the source.
+	 * @throws IOException
+	 *             When the file can not be read or written, or is not well-formed XML.
+	 */
+	public void apply(File source, File target) throws IOException {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, false);
+		factory.setXMLResolver(new XMLResolver() {
+			@Override
+			public Object resolveEntity(String publicID, String systemID, String baseURI, String namespace) {
+				return new ByteArrayInputStream(new byte[0]);
+			}
+		});
+
+		try (InputStream is = new BufferedInputStream(new FileInputStream(source))) {
+			XMLStreamReader reader = factory.createXMLStreamReader(is);
+			try {
+				String encoding = Strings.isNullOrEmpty(reader.getCharacterEncodingScheme()) ? Charsets.UTF_8.name() : reader
+						.getCharacterEncodingScheme();
+
+				try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(target), encoding))) {
+					if (reader.getVersion() != null) {
+						writer.write(String.format("<?xml version=\"%s\"", reader.getVersion()));
+						if (reader.getCharacterEncodingScheme() != null) {
+							writer.write(String.format(" encoding=\"%s\"", reader.getCharacterEncodingScheme()));
+						}
+						if (reader.standaloneSet()) {
+							writer.write(reader.isStandalone() ? " standalone=\"yes\"" : " standalone=\"no\"");
+						}
+						writer.write("?>\n");
+					}
+
+					new Patcher(writer, Lists.<Frame> newArrayList()).copy(reader);
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (XMLStreamException e) {
+			throw new IOException(String.format("Error patching %s", source), e);
+		}
+	}
+
+	private static String escape(String text, boolean attribute) {
+		StringBuilder sb = new StringBuilder(text.length() + 16);
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+			case '&':
+				sb.append("&amp;");
+				break;
+			case '<':
+				sb.append("&lt;");
+				break;
+			case '>':
+				sb.append(attribute || !(i >= 2 && text.charAt(i - 1) == ']' && text.charAt(i - 2) == ']') ? ">" : "&gt;");
+				break;
+			case '"':
+				sb.append(attribute ? "&quot;" : "\"");
+				break;
+			case '\t':
+			case '\n':
+			case '\r':
+				sb.append(attribute ? "&#" + (int) c + ";" : String.valueOf(c));
+				break;
+			default:
+				sb.append(c);
+			}
+		}
+
+		return sb.toString();
+	}
+
+	private static String lines(String fragment) {
+		return "\n" + CharMatcher.anyOf("\r\n").trimTrailingFrom(fragment.replace("\r\n", "\n"));
+	}
+
+	/**
+	 * The kinds of edit.
+	 */
+	private enum Kind {
+		INSERT_FIRST, INSERT_LAST, INSERT_AFTER, REPLACE, REMOVE, SET_ATTRIBUTE, SET_TEXT, UNCOMMENT
+	}
+
+	/**
+	 * An edit and its parsed path.
+	 */
+	private static class Edit {
+
+		private final Kind kind;
+		private final boolean anywhere;
+		private final List<Step> steps = Lists.newArrayList();
+		private final String fragment;
+		private final String name;
+		private final String value;
+
+		private Edit(Kind kind, String path, String fragment, String name, String value) {
+			if (!path.startsWith("/")) {
+				throw new IllegalArgumentException(String.format("Path must start with / or //: %s", path));
+			}
+
+			this.kind = kind;
+			this.anywhere = path.startsWith("//");
+			this.fragment = fragment;
+			this.name = name;
+			this.value = value;
+
+			int depth = 0;
+			int begin = anywhere ? 2 : 1;
+			for (int i = begin; i <= path.length(); i++) {
+				char c = i < path.length() ? path.charAt(i) : '/';
+				if (c == '[') {
+					depth++;
+				} else if (c == ']') {
+					depth--;
+				} else if (c == '/' && depth == 0) {
+					steps.add(new Step(path, path.substring(begin, i)));
+					begin = i + 1;
+				}
+			}
+		}
+
+		private boolean matches(List<Frame> stack, boolean checkLast) {
+			if (anywhere ? stack.size() < steps.size() : stack.size() != steps.size()) {
+				return false;
+			}
+
+			int offset = stack.size() - steps.size();
+			for (int i = 0; i < steps.size(); i++) {
+				if (!steps.get(i).matches(stack.get(offset + i), checkLast || i < steps.size() - 1)) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		private String getElementName() {
+			return steps.get(steps.size() - 1).name;
+		}
+	}
+
+	/**
+	 * A step of a path: an element name and its predicates.
+	 */
+	private static class Step {
+
+		private final String name;
+		private final List<String[]> predicates = Lists.newArrayList();
+
+		private Step(String path, String step) {
+			Matcher matcher = STEP.matcher(step);
+			if (!matcher.matches()) {
+				throw new IllegalArgumentException(String.format("Invalid step '%s' on path %s", step, path));
+			}
+			name = matcher.group(1);
+
+			Matcher predicate = PREDICATE.matcher(matcher.group(2));
+			int end = 0;
+			while (predicate.find() && predicate.start() == end) {
+				if (predicate.group(1) != null) {
+					predicates.add(new String[] { predicate.group(1), predicate.group(2), null });
+				} else {
+					predicates.add(new String[] { predicate.group(3), null, predicate.group(4) });
+				}
+				end = predicate.end();
+			}
+			if (end != matcher.group(2).length()) {
+				throw new IllegalArgumentException(String.format("Invalid predicate on step '%s' of path %s", step, path));
+			}
+		}
+
+		private boolean matches(Frame frame, boolean checkPredicates) {
+			if (!name.equals("*") && !name.equals(frame.localName)) {
+				return false;
+			}
+			if (!checkPredicates) {
+				return true;
+			}
+
+			for (String[] predicate : predicates) {
+				String actual = frame.attributes.get(predicate[0]);
+				if (actual == null || (predicate[1] != null && !actual.equals(predicate[1]))
+						|| (predicate[2] != null && !actual.startsWith(predicate[2]))) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+	}
+
+	/**
+	 * An open element.
+	 */
+	private static class Frame {
+
+		private final String localName;
+		private final String qName;
+		private final Map<String, String> attributes = Maps.newLinkedHashMap();
+		private final List<Edit> edits = Lists.newArrayList();
+		private String indent = "";
+		private boolean empty = true;
+		private boolean inserted;
+
+		private Frame(String prefix, String localName) {
+			this.localName = localName;
+			this.qName = Strings.isNullOrEmpty(prefix) ? localName : prefix + ":" + localName;
+		}
+
+		private boolean has(Kind kind) {
+			return get(kind) != null;
+		}
+
+		private Edit get(Kind kind) {
+			for (Edit edit : edits) {
+				if (edit.kind == kind) {
+					return edit;
+				}
+			}
+
+			return null;
+		}
+	}
+
+	/**
+	 * Copies the events of a reader to a writer, applying the edits. Uncommented elements are copied by a nested patcher that shares the
+	 * writer and the open elements.
+	 */
+	private class Patcher {
+
+		private final Writer writer;
+		private final List<Frame> stack;
+		private final StringBuilder pendingSpace = new StringBuilder();
+		private Frame pendingStart;
+
+		private Patcher(Writer writer, List<Frame> stack) {
+			this.writer = writer;
+			this.stack = stack;
+		}
+
+		private void copy(XMLStreamReader reader) throws XMLStreamException, IOException {
+			while (reader.hasNext()) {
+				int event = reader.next();
+				if (!stack.isEmpty() && event != XMLStreamConstants.END_ELEMENT) {
+					stack.get(stack.size() - 1).empty = false;
+				}
+
+				switch (event) {
+				case XMLStreamConstants.START_ELEMENT:
+					startElement(reader);
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					endElement();
+					break;
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.SPACE:
+					if (reader.isWhiteSpace()) {
+						pendingSpace.append(reader.getText());
+					} else {
+						flush();
+						writer.write(escape(reader.getText(), false));
+					}
+					break;
+				case XMLStreamConstants.CDATA:
+					flush();
+					writer.write("<![CDATA[" + reader.getText() + "]]>");
+					break;
+				case XMLStreamConstants.COMMENT:
+					flush();
+					writeComment(reader.getText());
+					if (stack.isEmpty()) {
+						writer.write('\n');
+					}
+					break;
+				case XMLStreamConstants.PROCESSING_INSTRUCTION:
+					flush();
+					writer.write(String.format("<?%s %s?>", reader.getPITarget(), Strings.nullToEmpty(reader.getPIData())).replace(" ?>", "?>"));
+					if (stack.isEmpty()) {
+						writer.write('\n');
+					}
+					break;
+				case XMLStreamConstants.DTD:
+					flush();
+					writer.write(reader.getText());
+					writer.write('\n');
+					break;
+				case XMLStreamConstants.ENTITY_REFERENCE:
+					flush();
+					writer.write("&" + reader.getLocalName() + ";");
+					break;
+				default:
+					break;
+				}
+			}
+
+			flush();
+		}
+
+		private void startElement(XMLStreamReader reader) throws XMLStreamException, IOException {
+			Frame frame = new Frame(reader.getPrefix(), reader.getLocalName());
+			frame.attributes.put("xmlns", Strings.nullToEmpty(reader.getNamespaceURI()));
+			for (int i = 0; i < reader.getAttributeCount(); i++) {
+				frame.attributes.put(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+			}
+			stack.add(frame);
+			for (Edit edit : edits) {
+				if (edit.kind != Kind.UNCOMMENT && edit.matches(stack, true)) {
+					frame.edits.add(edit);
+				}
+			}
+
+			Edit replace = frame.get(Kind.REPLACE);
+			if (replace != null || frame.has(Kind.REMOVE)) {
+				closeStart();
+				int newLine = pendingSpace.lastIndexOf("\n");
+				if (newLine >= 0) {
+					pendingSpace.setLength(replace != null ? newLine + 1 : newLine);
+				}
+				flush();
+				if (replace != null) {
+					writer.write(lines(replace.fragment).substring(1));
+				}
+
+				skipContent(reader);
+				stack.remove(stack.size() - 1);
+				return;
+			}
+
+			frame.indent = pendingSpace.substring(pendingSpace.lastIndexOf("\n") + 1);
+			flush();
+			writer.write("<" + frame.qName);
+			for (int i = 0; i < reader.getNamespaceCount(); i++) {
+				String prefix = reader.getNamespacePrefix(i);
+				writer.write(String.format(" %s=\"%s\"", Strings.isNullOrEmpty(prefix) ? "xmlns" : "xmlns:" + prefix,
+						escape(reader.getNamespaceURI(i), true)));
+			}
+			Map<String, String> attributes = Maps.newLinkedHashMap();
+			for (int i = 0; i < reader.getAttributeCount(); i++) {
+				String prefix = reader.getAttributePrefix(i);
+				attributes.put(Strings.isNullOrEmpty(prefix) ? reader.getAttributeLocalName(i) : prefix + ":" + reader.getAttributeLocalName(i),
+						reader.getAttributeValue(i));
+			}
+			for (Edit edit : frame.edits) {
+				if (edit.kind == Kind.SET_ATTRIBUTE) {
+					attributes.put(edit.name, edit.value);
+				}
+			}
+			for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+				writer.write(String.format(" %s=\"%s\"", attribute.getKey(), escape(attribute.getValue(), true)));
+			}
+			pendingStart = frame;
+
+			Edit insertFirst = frame.get(Kind.INSERT_FIRST);
+			if (insertFirst != null) {
+				closeStart();
+				writer.write(lines(insertFirst.fragment));
+				frame.inserted = true;
+			}
+
+			Edit setText = frame.get(Kind.SET_TEXT);
+			if (setText != null) {
+				closeStart();
+				writer.write(escape(setText.value, false));
+				frame.empty = false;
+				skipContent(reader);
+				endElement();
+			}
+		}
+
+		private void endElement() throws IOException {
+			Frame frame = stack.remove(stack.size() - 1);
+
+			Edit insertLast = frame.get(Kind.INSERT_LAST);
+			if (pendingStart == frame && pendingSpace.length() == 0 && insertLast == null && !frame.inserted) {
+				writer.write("/>");
+				pendingStart = null;
+			} else {
+				closeStart();
+				if (insertLast != null) {
+					writer.write(lines(insertLast.fragment));
+					frame.inserted = true;
+				}
+				if (frame.inserted && frame.empty) {
+					writer.write("\n" + frame.indent);
+				}
+				flush();
+				writer.write("</" + frame.qName + ">");
+			}
+
+			Edit insertAfter = frame.get(Kind.INSERT_AFTER);
+			if (insertAfter != null) {
+				writer.write(lines(insertAfter.fragment));
+			}
+		}
+
+		private void writeComment(String text) throws XMLStreamException, IOException {
+			for (Edit edit : edits) {
+				if (edit.kind != Kind.UNCOMMENT) {
+					continue;
+				}
+
+				String name = Pattern.quote(edit.getElementName());
+				Matcher start = Pattern.compile("<" + name + "[\\s/>]").matcher(text);
+				if (!start.find()) {
+					continue;
+				}
+				Matcher end = Pattern.compile("</" + name + "\\s*>|/>").matcher(text);
+				int endIndex = -1;
+				for (int from = start.start(); end.find(from); from = end.end()) {
+					if (end.group().startsWith("</") || text.lastIndexOf('<', end.start()) == start.start()) {
+						endIndex = end.end();
+						break;
+					}
+				}
+				if (endIndex < 0) {
+					continue;
+				}
+
+				Frame frame = new Frame(null, edit.getElementName());
+				stack.add(frame);
+				boolean matches = edit.matches(stack, false);
+				stack.remove(stack.size() - 1);
+				if (!matches) {
+					continue;
+				}
+
+				writeCommentPart(text.substring(0, start.start()));
+				XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(text.substring(start.start(), endIndex)));
+				try {
+					new Patcher(writer, stack).copy(reader);
+				} finally {
+					reader.close();
+				}
+
+				String rest = text.substring(endIndex);
+				String space = rest.substring(0, rest.length() - CharMatcher.WHITESPACE.trimLeadingFrom(rest).length());
+				writer.write(space);
+				if (space.length() < rest.length()) {
+					writeComment(" " + rest.substring(space.length()));
+				}
+				return;
+			}
+
+			writer.write("<!--" + text + "-->");
+		}
+
+		private void writeCommentPart(String text) throws IOException {
+			String body = CharMatcher.WHITESPACE.trimTrailingFrom(text);
+			if (!body.isEmpty()) {
+				writer.write("<!--" + body + " -->");
+			}
+			writer.write(text.substring(body.length()));
+		}
+
+		private void skipContent(XMLStreamReader reader) throws XMLStreamException {
+			for (int depth = 1; depth > 0;) {
+				int event = reader.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					depth++;
+				} else if (event == XMLStreamConstants.END_ELEMENT) {
+					depth--;
+				}
+			}
+		}
+
+		private void closeStart() throws IOException {
+			if (pendingStart != null) {
+				writer.write(">");
+				pendingStart = null;
+			}
+		}
+
+		private void flush() throws IOException {
+			closeStart();
+			writer.write(pendingSpace.toString());
+			pendingSpace.setLength(0);
+		}
+	}
+}
@@ -0,0 +1,464 @@
+package infradev.lumis.lumisportalinstaller.common.tools;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import javax.inject.Inject;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.Closeables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A zip extractor that splits the central directory across a pool of workers, or decodes a stream while it is downloaded.
+ *
+ * Extracted entries are recorded on an {@link ExtractionManifest}, so a new extraction to the same directory only writes the entries that
+ * are missing or changed. Entries with an {@link EntryTransformer} are written as a .original file and rewritten from it to their final
+ * place, every time, since their content depends on the installation.
+ *
+ * @author Alexandre Ribeiro de Souza
+ */
+public class ZipExtractor {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int CHUNKS_PER_THREAD = 4;
+	private static final int PIPE_SIZE = 1024 * 1024;
+
+	private final ProgressMeter progressMeter;
+	private final Map<PathFilter, EntryTransformer> transformers = Maps.newLinkedHashMap();
+	private final AtomicInteger transformedFiles = new AtomicInteger();
+	private int threads;
+
+	@Inject
+	public ZipExtractor(ProgressMeter progressMeter) {
+		this.progressMeter = progressMeter;
+		setThreads(0);
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Sets the number of worker threads.
+	 *
+	 * @param threads
+	 *            Number of workers, or zero to use one per available processor.
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Add a rewrite of the entries that match a pattern. Only the first matching transformer is applied to an entry.
+	 *
+	 * @param pattern
+	 *            A glob or regex pattern of {@link PathFilter}, matched against the path of the entry on the target directory.
+	 * @param transformer
+	 *            The rewrite.
+	 */
+	public void addTransformer(String pattern, EntryTransformer transformer) {
+		transformers.put(new PathFilter().include(pattern), transformer);
+	}
+
+	/**
+	 * Extracts a zip archive to a target directory.
+	 *
+	 * @param archive
+	 *            The zip file.
+	 * @param targetDirectory
+	 *            The directory where the file will be decompressed.
+	 * @param pathFilter
+	 *            Filter of the entries that will be extracted.
+	 * @param ignoreRootDir
+	 *            If will ignore Root directory.
+	 * @return The number of entries of the archive.
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	public int extract(File archive, File targetDirectory, PathFilter pathFilter, boolean ignoreRootDir) throws IOException {
+		ExtractionManifest manifest = ExtractionManifest.load(targetDirectory);
+		Set<File> directories = Sets.newHashSet();
+		List<Item> items = Lists.newArrayList();
+		long totalSize = 0;
+		int totalFiles = 0;
+		int unchangedFiles = 0;
+
+		try (ZipFile zipFile = new ZipFile(archive)) {
+			for (Enumeration<? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements();) {
+				ZipEntry entry = entries.nextElement();
+				String name = entry.getName();
+				totalFiles++;
+
+				if (!pathFilter.matches(name)) {
+					continue;
+				}
+				if (ignoreRootDir) {
+					name = name.substring(name.indexOf("/") + 1);
+				}
+
+				File path = new File(targetDirectory, name);
+
+				if (entry.isDirectory()) {
+					directories.add(path);
+				} else if (getTransformer(name) == null && manifest.isUpToDate(name, entry, path)) {
+					unchangedFiles++;
+				} else {
+					directories.add(path.getParentFile());
+					items.add(new Item(entry, name, path));
+					totalSize += Math.max(entry.getCompressedSize(), 0);
+				}
+			}
+		}
+
+		if (unchangedFiles > 0) {
+			Log.info(String.format("  |- %d files unchanged since the last extraction", unchangedFiles));
+		}
+
+		try {
+			createDirectories(directories);
+			extractItems(archive, split(items, totalSize), manifest);
+		} finally {
+			manifest.store();
+		}
+		logTransformedFiles();
+
+		return totalFiles;
+	}
+
+	/**
+	 * Extracts a zip stream to a target directory while a background thread copies the source to another stream, so the entries are
+	 * extracted while the bytes are still arriving. The source is always copied to the end, even when the extraction fails.
+	 *
+	 * @param source
+	 *            The zip stream, usually a download.
+	 * @param copy
+	 *            Stream that will receive every byte of the source.
+	 * @param targetDirectory
+	 *            The directory where the stream will be decompressed.
+	 * @param pathFilter
+	 *            Filter of the entries that will be extracted.
+	 * @param ignoreRootDir
+	 *            If will ignore Root directory.
+	 * @return The number of entries of the stream.
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	public int extract(final InputStream source, final OutputStream copy, File targetDirectory, PathFilter pathFilter, boolean ignoreRootDir)
+			throws IOException {
+		final PipedInputStream pipeIn = new PipedInputStream(PIPE_SIZE);
+		final PipedOutputStream pipeOut = new PipedOutputStream(pipeIn);
+
+		ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("lpi-tee-%d").setDaemon(true).build());
+		Future<Void> tee = executor.submit(new Callable<Void>() {
+
+			@Override
+			public Void call() throws IOException {
+				byte[] buffer = new byte[BUFFER_SIZE];
+				boolean piping = true;
+
+				try {
+					int read;
+					while ((read = source.read(buffer)) != -1) {
+						copy.write(buffer, 0, read);
+						if (piping) {
+							try {
+								pipeOut.write(buffer, 0, read);
+							} catch (IOException e) {
+								// the extraction is over, keep copying the source
+								piping = false;
+							}
+						}
+					}
+				} finally {
+					Closeables.close(pipeOut, true);
+				}
+
+				return null;
+			}
+		});
+
+		int totalFiles = 0;
+		IOException extractException = null;
+		try {
+			totalFiles = extract(pipeIn, targetDirectory, pathFilter, ignoreRootDir);
+		} catch (IOException e) {
+			extractException = e;
+		} finally {
+			pipeIn.close();
+		}
+
+		try {
+			tee.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+
+		if (extractException != null) {
+			throw extractException;
+		}
+
+		return totalFiles;
+	}
+
+	/**
+	 * Extracts a zip stream to a target directory, entry by entry, on the calling thread.
+	 *
+	 * @param in
+	 *            The zip stream.
+	 * @param targetDirectory
+	 *            The directory where the stream will be decompressed.
+	 * @param pathFilter
+	 *            Filter of the entries that will be extracted.
+	 * @param ignoreRootDir
+	 *            If will ignore Root directory.
+	 * @return The number of entries of the stream.
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	public int extract(InputStream in, File targetDirectory, PathFilter pathFilter, boolean ignoreRootDir) throws IOException {
+		ExtractionManifest manifest = ExtractionManifest.load(targetDirectory);
+		Set<File> directories = Sets.newHashSet();
+		byte[] buffer = new byte[BUFFER_SIZE];
+		int totalFiles = 0;
+
+		try {
+			totalFiles = extract(new ZipInputStream(in), targetDirectory, pathFilter, ignoreRootDir, manifest, directories, buffer);
+		} finally {
+			manifest.store();
+		}
+		logTransformedFiles();
+
+		return totalFiles;
+	}
+
+	private int extract(ZipInputStream zis, File targetDirectory, PathFilter pathFilter, boolean ignoreRootDir, ExtractionManifest manifest,
+			Set<File> directories, byte[] buffer) throws IOException {
+		int totalFiles = 0;
+
+		ZipEntry entry;
+		while ((entry = zis.getNextEntry()) != null) {
+			String name = entry.getName();
+			totalFiles++;
+
+			if (!pathFilter.matches(name)) {
+				continue;
+			}
+			if (ignoreRootDir) {
+				name = name.substring(name.indexOf("/") + 1);
+			}
+
+			File path = new File(targetDirectory, name);
+
+			if (entry.isDirectory()) {
+				createDirectory(path, directories);
+			} else {
+				createDirectory(path.getParentFile(), directories);
+				write(zis, name, entry, path, manifest, buffer);
+			}
+
+			String msg = String.format("  |- %d files extracted", totalFiles);
+			progressMeter.tick(msg);
+		}
+
+		return totalFiles;
+	}
+
+	/**
+	 * Write an entry to its file, or to its .original file and then through its transformer.
+	 */
+	private void write(InputStream in, String name, ZipEntry entry, File path, ExtractionManifest manifest, byte[] buffer) throws IOException {
+		EntryTransformer transformer = getTransformer(name);
+		File file = transformer != null ? new File(path.getPath() + ".original") : path;
+
+		try (OutputStream out = new FileOutputStream(file)) {
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+		}
+
+		if (transformer != null) {
+			transformer.transform(file, path);
+			transformedFiles.incrementAndGet();
+		} else {
+			manifest.put(name, entry, path);
+		}
+	}
+
+	private EntryTransformer getTransformer(String name) {
+		for (Map.Entry<PathFilter, EntryTransformer> transformer : transformers.entrySet()) {
+			if (transformer.getKey().matches(name)) {
+				return transformer.getValue();
+			}
+		}
+
+		return null;
+	}
+
+	private void logTransformedFiles() {
+		if (transformedFiles.get() > 0) {
+			Log.info(String.format("  |- %d files configured while extracted", transformedFiles.getAndSet(0)));
+		}
+	}
+
+	private void createDirectory(File directory, Set<File> directories) throws IOException {
+		if (directories.add(directory)) {
+			createDirectories(Collections.singleton(directory));
+		}
+	}
+
+	private void createDirectories(Set<File> directories) throws IOException {
+		for (File directory : directories) {
+			if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+				throw new IOException(String.format("Unable to create directory %s", directory));
+			}
+		}
+	}
+
+	/**
+	 * Split the items in contiguous chunks of similar compressed size, keeping the archive order so each worker reads sequentially.
+	 */
+	private Queue<List<Item>> split(List<Item> items, long totalSize) {
+		Queue<List<Item>> chunks = new ConcurrentLinkedQueue<>();
+		long chunkSize = Math.max(totalSize / (threads * CHUNKS_PER_THREAD), 1);
+
+		List<Item> chunk = Lists.newArrayList();
+		long size = 0;
+		for (Item item : items) {
+			chunk.add(item);
+			size += Math.max(item.entry.getCompressedSize(), 0);
+			if (size >= chunkSize) {
+				chunks.add(chunk);
+				chunk = Lists.newArrayList();
+				size = 0;
+			}
+		}
+		if (!chunk.isEmpty()) {
+			chunks.add(chunk);
+		}
+
+		return chunks;
+	}
+
+	private void extractItems(File archive, Queue<List<Item>> chunks, ExtractionManifest manifest) throws IOException {
+		AtomicInteger extracted = new AtomicInteger();
+		int workers = Math.min(threads, chunks.size());
+
+		if (workers <= 1) {
+			new Worker(archive, chunks, extracted, manifest).call();
+			return;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(workers, new ThreadFactoryBuilder().setNameFormat("lpi-unzip-%d").setDaemon(true).build());
+		try {
+			List<Future<Void>> futures = Lists.newArrayList();
+			for (int i = 0; i < workers; i++) {
+				futures.add(executor.submit(new Worker(archive, chunks, extracted, manifest)));
+			}
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * A zip entry and the file where it will be extracted.
+	 */
+	private static class Item {
+
+		private final ZipEntry entry;
+		private final String name;
+		private final File path;
+
+		private Item(ZipEntry entry, String name, File path) {
+			this.entry = entry;
+			this.name = name;
+			this.path = path;
+		}
+	}
+
+	/**
+	 * Worker that holds its own zip file handle and extracts chunks until the queue is empty.
+	 */
+	private class Worker implements Callable<Void> {
+
+		private final File archive;
+		private final Queue<List<Item>> chunks;
+		private final AtomicInteger extracted;
+		private final ExtractionManifest manifest;
+
+		private Worker(File archive, Queue<List<Item>> chunks, AtomicInteger extracted, ExtractionManifest manifest) {
+			this.archive = archive;
+			this.chunks = chunks;
+			this.extracted = extracted;
+			this.manifest = manifest;
+		}
+
+		@Override
+		public Void call() throws IOException {
+			byte[] buffer = new byte[BUFFER_SIZE];
+
+			try (ZipFile zipFile = new ZipFile(archive)) {
+				List<Item> chunk;
+				while ((chunk = chunks.poll()) != null) {
+					for (Item item : chunk) {
+						if (Thread.currentThread().isInterrupted()) {
+							throw new IOException("Extraction interrupted");
+						}
+
+						try (InputStream in = zipFile.getInputStream(item.entry)) {
+							write(in, item.name, item.entry, item.path, manifest, buffer);
+						}
+
+						String msg = String.format("  |- %d files extracted", extracted.incrementAndGet());
+						progressMeter.tick(msg);
+					}
+				}
+			}
+
+			return null;
+		}
+	}
+}
@@ -9,15 +9,15 @@ import infradev.lumis.lumisportalinstaller.common.tools.ProgressMeter;
 import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
-import java.net.URL;
-import java.net.URLClassLoader;
 import java.sql.Connection;
-import java.sql.Driver;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Iterator;
 import java.util.List;
 
+import javax.inject.Inject;
+import javax.inject.Named;
+
 import com.google.common.base.Charsets;
 import com.google.common.collect.Lists;
 import com.google.common.io.Files;
@@ -32,14 +32,56 @@ public abstract class AbstractDatabase extends AbstractInstaller {
 
 	public static boolean driverRegistered = false;
 
+	protected String dialect = null;
 	protected String driverPattern = null;
 	protected String commentPattern = null;
 	protected String classname = null;
 
+	@Inject
+	@Named("${database.batchSize:-100}")
+	protected Integer batchSize;
+	@Inject
+	@Named("${database.commitSize:-1000}")
+	protected Integer commitSize;
+	@Inject
+	@Named("${database.connections:-4}")
+	protected Integer connections;
+	@Inject
+	@Named("${database.sequential:-false}")
+	protected Boolean sequential;
+	@Inject
+	@Named("${database.bulkLoad:-true}")
+	protected Boolean bulkLoad;
+	@Inject
+	@Named("${database.checkpoint:-true}")
+	protected Boolean checkpoint;
+	@Inject
+	@Named("${database.deferDdl:-false}")
+	protected Boolean deferDdl;
+	@Inject
+	@Named("${database.poolSize:-4}")
+	protected Integer poolSize;
+	@Inject
+	@Named("${database.idleTimeout:-300}")
+	protected Integer idleTimeout;
+
 	public String getClassname() {
 		return classname;
 	}
 
+	public String getDialect() {
+		return dialect;
+	}
+
+	/**
+	 * Get the database type of the script generated by generatesql, that names the db_&lt;type&gt;.sql file.
+	 * 
+	 * @return The script type, the dialect by default.
+	 */
+	public String getScriptType() {
+		return dialect;
+	}
+
 	@Override
 	protected void extract() throws IOException {
 	}
@@ -111,10 +153,19 @@ public abstract class AbstractDatabase extends AbstractInstaller {
 	 */
 	@Logged
 	public int executeScript(File file) throws IOException {
-		List<String> lines = convertSql(file);
-		int statementCount = executeScript(lines);
+		ScriptJournal journal = null;
+		if (checkpoint) {
+			journal = new ScriptJournal(getJournalFile(file), file);
+			if (journal.getCommitted() > 0) {
+				Log.info(String.format("Resuming %s after statement %d", file.getName(), journal.getCommitted()));
+			}
+		}
 
-		return statementCount;
+		try (SqlScriptReader reader = SqlScriptReader.open(file, dialect)) {
+			return executeScript(reader, journal);
+		} catch (SqlScriptReader.ReadException e) {
+			throw e.getCause();
+		}
 	}
 
 	/**
@@ -127,36 +178,140 @@ public abstract class AbstractDatabase extends AbstractInstaller {
 	 *             Throws IOException.
 	 */
 	public int executeScript(List<String> lines) throws IOException {
-		Connection connection = null;
-		Statement statement = null;
+		return executeScript(lines.iterator(), null);
+	}
 
-		int result = 0;
+	/**
+	 * Verify if a script has a checkpoint journal of a failed execution, that the next execution will resume.
+	 * 
+	 * @param file
+	 *            File with the statements.
+	 * @return true if the script has a journal of the same version of the script, with committed statements.
+	 */
+	public boolean hasCheckpoint(File file) {
+		File journalFile = getJournalFile(file);
+		if (!checkpoint || !journalFile.exists()) {
+			return false;
+		}
 
 		try {
-			connection = createConnection();
-			statement = connection.createStatement();
+			return !new ScriptJournal(journalFile, file).isEmpty();
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	private File getJournalFile(File file) {
+		return new File(PathEnum.LUMISPORTAL_DIR_LUMISDATA.getFile(), file.getName() + ".journal");
+	}
+
+	private int executeScript(Iterator<String> statements, ScriptJournal journal) throws IOException {
+		List<Connection> scriptConnections = Lists.newArrayList();
+
+		int result = 0;
+		boolean completed = false;
 
+		try {
 			ProgressMeter progressMeter = injector.getInstance(ProgressMeter.class);
-			for (int i = 0; i < lines.size(); i++) {
-				result++;
-				String line = lines.get(i);
-				executeSql(line, statement);
-				String msg = String.format("  |- %d of %d statements executed", i + 1, lines.size());
-				progressMeter.tick(msg);
+			DeferredDdl deferredDdl = null;
+			if (deferDdl) {
+				deferredDdl = new DeferredDdl(this, progressMeter);
+				deferredDdl.setJournal(journal);
+			}
+
+			if (sequential || connections <= 1) {
+				scriptConnections.add(createConnection());
+
+				ScriptExecutor scriptExecutor = new ScriptExecutor(this, progressMeter);
+				scriptExecutor.setBatchSize(batchSize);
+				scriptExecutor.setCommitSize(commitSize);
+				scriptExecutor.setBulkLoad(bulkLoad);
+				scriptExecutor.setJournal(journal);
+				scriptExecutor.setDeferredDdl(deferredDdl);
+
+				result = scriptExecutor.execute(scriptConnections.get(0), statements);
+			} else {
+				for (int i = 0; i < Math.min(connections, poolSize); i++) {
+					scriptConnections.add(createConnection());
+				}
+
+				ParallelScriptExecutor parallelScriptExecutor = new ParallelScriptExecutor(this, progressMeter);
+				parallelScriptExecutor.setBatchSize(batchSize);
+				parallelScriptExecutor.setCommitSize(commitSize);
+				parallelScriptExecutor.setBulkLoad(bulkLoad);
+				parallelScriptExecutor.setJournal(journal);
+				parallelScriptExecutor.setDeferredDdl(deferredDdl);
+
+				result = parallelScriptExecutor.execute(scriptConnections, statements);
 			}
+			if (deferredDdl != null) {
+				deferredDdl.execute(scriptConnections);
+			}
+			completed = true;
+		} catch (ScriptException e) {
+			result = e.getLine();
+			Log.error("(Line " + result + ") " + e.getLocalizedMessage());
 		} catch (ClassNotFoundException | IllegalAccessException | InstantiationException | MalformedURLException | SQLException e) {
 			Log.error("(Line " + result + ") " + e.getLocalizedMessage());
 		} finally {
-			closeConnection(connection, statement);
+			for (Connection connection : scriptConnections) {
+				closeConnection(connection, null);
+			}
+		}
+
+		if (journal != null) {
+			if (completed) {
+				journal.delete();
+			} else {
+				journal.flush();
+			}
 		}
 
 		return result;
 	}
 
 	/**
-	 * Create a SQL Connection.
+	 * Export the initialized schema to a snapshot, restored on other installations with {@link #executeScript(File)}.
 	 * 
-	 * @return Created connection.
+	 * @param script
+	 *            The schema script generated by generatesql.
+	 * @param snapshot
+	 *            The snapshot file.
+	 * @return true if the snapshot was exported.
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	@Logged
+	public boolean exportSnapshot(File script, File snapshot) throws IOException {
+		Connection connection = null;
+
+		try {
+			connection = createConnection();
+			if (connection == null) {
+				return false;
+			}
+
+			SchemaSnapshot schemaSnapshot = new SchemaSnapshot(dialect);
+			schemaSnapshot.setCompressionLevel(compressionLevel);
+			schemaSnapshot.export(connection, script, snapshot);
+			Log.info(String.format("  |- %d rows of %d tables exported to %s", schemaSnapshot.getRowCount(), schemaSnapshot.getTableCount(),
+					snapshot.getName()));
+
+			return true;
+		} catch (ClassNotFoundException | IllegalAccessException | InstantiationException | MalformedURLException | SQLException e) {
+			Log.error(e.getLocalizedMessage());
+
+			return false;
+		} finally {
+			closeConnection(connection, null);
+		}
+	}
+
+	/**
+	 * Borrow a SQL Connection from the pool of the database. The driver is loaded from the context lib once, or from the classpath of the
+	 * installer when the context lib has no driver.
+	 * 
+	 * @return Borrowed connection, to be returned with closeConnection, or null when there is no driver.
 	 * @throws MalformedURLException
 	 *             Throws MalformedURLException.
 	 * @throws InstantiationException
@@ -170,46 +325,52 @@ public abstract class AbstractDatabase extends AbstractInstaller {
 	 */
 	public Connection createConnection() throws MalformedURLException, InstantiationException, IllegalAccessException, ClassNotFoundException,
 			SQLException {
-		if (!driverRegistered) {
-			File jdbcDriverFile = null;
-			for (File lib : PathEnum.LUMISPORTAL_DIR_CONTEXTLIB.getFile().listFiles(new PatternFilenameFilter(driverPattern + ".*"))) {
+		ConnectionManager connectionManager = injector.getInstance(ConnectionManager.class);
+
+		File jdbcDriverFile = null;
+		File[] libs = PathEnum.LUMISPORTAL_DIR_CONTEXTLIB.getFile().listFiles(new PatternFilenameFilter(driverPattern + ".*"));
+		if (libs != null) {
+			for (File lib : libs) {
 				jdbcDriverFile = lib;
 			}
+		}
 
-			if (null == jdbcDriverFile) {
+		if (null != jdbcDriverFile) {
+			connectionManager.registerDriver(jdbcDriverFile, classname);
+		} else {
+			try {
+				Class.forName(classname);
+			} catch (ClassNotFoundException e) {
 				return null;
 			}
-
-			URL driverUrl = new URL(String.format("jar:%s!/", jdbcDriverFile.toURI()));
-			URLClassLoader urlClassLoader = new URLClassLoader(new URL[] { driverUrl });
-			Driver driver = (Driver) Class.forName(classname, true, urlClassLoader).newInstance();
-			DriverManager.registerDriver(new DriverShim(driver));
 		}
+		driverRegistered = true;
 
-		Connection connection = DriverManager.getConnection(databaseUrl, databaseUser, databasePassword);
+		connectionManager.setPoolSize(poolSize);
+		connectionManager.setIdleTimeout(idleTimeout * 1000L);
 
-		return connection;
+		return connectionManager.getPool(databaseUrl, databaseUser, databasePassword).borrow();
 	}
 
 	/**
-	 * Close a SQL Connection.
+	 * Close a SQL Statement and return its Connection to the pool.
 	 * 
 	 * @param connection
-	 *            Connection to be closed.
+	 *            Connection to be returned.
 	 * @param statement
 	 *            Statement to be closed.
 	 */
 	public void closeConnection(Connection connection, Statement statement) {
 		try {
-			if (connection != null) {
-				connection.close();
-			}
 			if (statement != null) {
 				statement.close();
 			}
 		} catch (SQLException e) {
 			Log.error(e.getLocalizedMessage());
 		}
+		if (connection != null) {
+			injector.getInstance(ConnectionManager.class).getPool(databaseUrl, databaseUser, databasePassword).release(connection);
+		}
 	}
 
 	/**
@@ -224,12 +385,24 @@ public abstract class AbstractDatabase extends AbstractInstaller {
 	 *             Throws SQLException.
 	 */
 	public boolean executeSql(String query, Statement statement) throws SQLException {
-		if ("ORACLE".equalsIgnoreCase(databaseType) && query.substring(query.length() - 1).equals(";")) {
+		boolean result = statement.execute(normalizeSql(query));
+
+		return result;
+	}
+
+	/**
+	 * Adapt a statement of a script to be executed by the driver.
+	 * 
+	 * @param query
+	 *            string containing a query.
+	 * @return The query without the trailing ';' on Oracle, unless it is a PL/SQL block.
+	 */
+	public String normalizeSql(String query) {
+		if ("ORACLE".equalsIgnoreCase(databaseType) && query.endsWith(";") && !SqlScriptReader.isPlsqlBlock(query)) {
 			query = query.substring(0, query.length() - 1);
 		}
-		boolean result = statement.execute(query);
 
-		return result;
+		return query;
 	}
 
 	private Boolean hasDuplicatedSqlServerConfiguration(List<String> lines) {
@@ -244,34 +417,4 @@ public abstract class AbstractDatabase extends AbstractInstaller {
 		return sqlServers > 1;
 	}
 
-	private List<String> convertSql(File file) throws IOException {
-		List<String> lines = Files.readLines(file, Charsets.UTF_8);
-
-		List<String> result = Lists.newArrayList();
-		StringBuilder query = new StringBuilder();
-
-		for (String line : lines) {
-			line = line.trim();
-			boolean match = false;
-			if (!line.isEmpty() && !(line.startsWith("PRINT") || line.startsWith("--") || line.startsWith("#"))) {
-				if (line.startsWith("GO")) {
-					if (!query.toString().trim().isEmpty()) {
-						match = true;
-					}
-				} else {
-					query.append(line.replace("\t", "")).append(" ");
-					if (query.toString().trim().endsWith(";")) {
-						match = true;
-					}
-				}
-			}
-			if (match) {
-				result.add(query.toString().trim());
-				query = new StringBuilder();
-			}
-		}
-
-		return result;
-	}
-
 }
@@ -0,0 +1,330 @@
+package infradev.lumis.lumisportalinstaller.database;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.BaseEncoding;
+
+/**
+ * Loads a run of single-row INSERTs of the same shape with parameterized statements.
+ *
+ * Two INSERTs have the same shape when they differ only by their string, numeric, TIMESTAMP and binary (X'..', 0x.. or HEXTORAW('..'))
+ * literal values; NULL, functions and any other expression stay in the statement text. On MySQL, SQL Server and H2 the rows are sent as multi-row VALUES, like the MySQL driver does with
+ * rewriteBatchedStatements, within the parameter limits of each database; on Oracle each row is added to a PreparedStatement batch, which
+ * the driver sends as array binds.
+ *
+ * @author Alexandre Ribeiro de Souza
+ */
+public class BulkInsert {
+
+	private static final Pattern INSERT = Pattern.compile("^\\s*INSERT\\s+INTO\\s+([\\w$#.\"`\\[\\]]+)\\s*(\\([^()']*\\))?\\s*VALUES\\s*\\(",
+			Pattern.CASE_INSENSITIVE);
+	private static final Pattern NUMBER = Pattern.compile("[-+]?\\d+(\\.\\d+)?");
+	private static final Pattern TIMESTAMP = Pattern.compile("TIMESTAMP\\s*'(\\d{4}-\\d{1,2}-\\d{1,2} \\d{1,2}:\\d{1,2}:\\d{1,2}(\\.\\d{1,9})?)'",
+			Pattern.CASE_INSENSITIVE);
+	private static final Pattern BINARY = Pattern.compile("X'((?:[0-9A-F]{2})*)'|0x((?:[0-9A-F]{2})*)|HEXTORAW\\s*\\(\\s*'((?:[0-9A-F]{2})*)'\\s*\\)",
+			Pattern.CASE_INSENSITIVE);
+
+	private final boolean isMySql;
+	private final boolean isSqlServer;
+	private final int maxParameters;
+	private final List<Row> rows = Lists.newArrayList();
+
+	/**
+	 * Create an empty run.
+	 *
+	 * @param dialect
+	 *            The database type, MYSQL, ORACLE, SQLSERVER or H2.
+	 */
+	public BulkInsert(String dialect) {
+		this.isMySql = "MYSQL".equalsIgnoreCase(dialect) || "H2".equalsIgnoreCase(dialect);
+		this.isSqlServer = "SQLSERVER".equalsIgnoreCase(dialect);
+		this.maxParameters = isSqlServer ? 2000 : 65000;
+	}
+
+	/**
+	 * Parse a single-row INSERT.
+	 *
+	 * @param sql
+	 *            The statement.
+	 * @param dialect
+	 *            The database type, MYSQL, ORACLE, SQLSERVER or H2.
+	 * @return The row, or null if the statement is not a single-row INSERT ... VALUES.
+	 */
+	public static Row parse(String sql, String dialect) {
+		Matcher matcher = INSERT.matcher(sql);
+		if (!matcher.find()) {
+			return null;
+		}
+
+		boolean backslashEscapes = "MYSQL".equalsIgnoreCase(dialect);
+		StringBuilder values = new StringBuilder("(");
+		List<Object> parameters = Lists.newArrayList();
+		int depth = 0;
+		int start = matcher.end();
+		int i = start;
+
+		for (; i < sql.length(); i++) {
+			char c = sql.charAt(i);
+
+			if (c == '\'' || c == '"') {
+				i = skipString(sql, i, c == '\'' && backslashEscapes);
+				if (i < 0) {
+					return null;
+				}
+			} else if (c == '(') {
+				depth++;
+			} else if ((c == ',' || c == ')') && depth == 0) {
+				addValue(sql.substring(start, i).trim(), backslashEscapes, values, parameters);
+				values.append(c == ',' ? ", " : ")");
+				start = i + 1;
+				if (c == ')') {
+					break;
+				}
+			} else if (c == ')') {
+				depth--;
+			}
+		}
+
+		String rest = i < sql.length() ? sql.substring(i + 1).trim() : null;
+		if (rest == null || !(rest.isEmpty() || rest.equals(";")) || parameters.isEmpty()) {
+			return null;
+		}
+
+		String prefix = sql.substring(0, matcher.end() - 1).trim();
+
+		return new Row(prefix, values.toString(), parameters);
+	}
+
+	/**
+	 * Verify if a row can join the run.
+	 *
+	 * @param row
+	 *            The row.
+	 * @return true if the run is empty or has rows of the same shape.
+	 */
+	public boolean accepts(Row row) {
+		return rows.isEmpty() || (rows.get(0).prefix.equals(row.prefix) && rows.get(0).values.equals(row.values));
+	}
+
+	public void add(Row row) {
+		rows.add(row);
+	}
+
+	public int size() {
+		return rows.size();
+	}
+
+	/**
+	 * Insert the rows of the run and empty it.
+	 *
+	 * @param connection
+	 *            The connection.
+	 * @throws SQLException
+	 *             Throws SQLException.
+	 */
+	public void execute(Connection connection) throws SQLException {
+		if (rows.isEmpty()) {
+			return;
+		}
+
+		try {
+			Row first = rows.get(0);
+			int rowsByStatement = isMySql || isSqlServer ? Math.max(1, Math.min(1000, maxParameters / first.parameters.size())) : 1;
+			int fullStatements = rowsByStatement > 1 ? rows.size() / rowsByStatement : 0;
+			int next = 0;
+
+			if (fullStatements > 0) {
+				try (PreparedStatement statement = connection.prepareStatement(first.toSql(rowsByStatement))) {
+					for (int s = 0; s < fullStatements; s++) {
+						int parameter = 1;
+						for (int r = 0; r < rowsByStatement; r++) {
+							parameter = rows.get(next++).bind(statement, parameter);
+						}
+						statement.addBatch();
+					}
+					statement.executeBatch();
+				}
+			}
+
+			if (next < rows.size()) {
+				int remaining = rows.size() - next;
+
+				if (rowsByStatement > 1) {
+					try (PreparedStatement statement = connection.prepareStatement(first.toSql(remaining))) {
+						int parameter = 1;
+						while (next < rows.size()) {
+							parameter = rows.get(next++).bind(statement, parameter);
+						}
+						statement.executeUpdate();
+					}
+				} else {
+					try (PreparedStatement statement = connection.prepareStatement(first.toSql(1))) {
+						while (next < rows.size()) {
+							rows.get(next++).bind(statement, 1);
+							statement.addBatch();
+						}
+						statement.executeBatch();
+					}
+				}
+			}
+		} finally {
+			rows.clear();
+		}
+	}
+
+	private static void addValue(String value, boolean backslashEscapes, StringBuilder values, List<Object> parameters) {
+		String literal = value.length() > 1 && (value.charAt(0) == 'N' || value.charAt(0) == 'n') && value.charAt(1) == '\'' ? value.substring(1)
+				: value;
+		Matcher timestamp = TIMESTAMP.matcher(value);
+		Matcher binary = BINARY.matcher(value);
+
+		if (literal.length() >= 2 && literal.charAt(0) == '\'' && skipString(literal, 0, backslashEscapes) == literal.length() - 1) {
+			parameters.add(unescape(literal.substring(1, literal.length() - 1), backslashEscapes));
+			values.append('?');
+		} else if (NUMBER.matcher(value).matches()) {
+			parameters.add(new BigDecimal(value));
+			values.append('?');
+		} else if (timestamp.matches()) {
+			parameters.add(Timestamp.valueOf(timestamp.group(1)));
+			values.append('?');
+		} else if (binary.matches()) {
+			String hex = binary.group(1) != null ? binary.group(1) : binary.group(2) != null ? binary.group(2) : binary.group(3);
+			parameters.add(BaseEncoding.base16().decode(hex.toUpperCase(Locale.ENGLISH)));
+			values.append('?');
+		} else {
+			values.append(value);
+		}
+	}
+
+	/**
+	 * Find the closing quote of a quoted string or identifier.
+	 *
+	 * @return The position of the closing quote, or -1 when the literal is not closed.
+	 */
+	private static int skipString(String sql, int start, boolean backslashEscapes) {
+		char quote = sql.charAt(start);
+
+		for (int i = start + 1; i < sql.length(); i++) {
+			char c = sql.charAt(i);
+
+			if (c == '\\' && backslashEscapes) {
+				i++;
+			} else if (c == quote) {
+				if (i + 1 < sql.length() && sql.charAt(i + 1) == quote) {
+					i++;
+				} else {
+					return i;
+				}
+			}
+		}
+
+		return -1;
+	}
+
+	private static String unescape(String text, boolean backslashEscapes) {
+		StringBuilder result = new StringBuilder(text.length());
+
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+
+			if (c == '\'' && i + 1 < text.length() && text.charAt(i + 1) == '\'') {
+				i++;
+			} else if (c == '\\' && backslashEscapes && i + 1 < text.length()) {
+				char escaped = text.charAt(++i);
+				switch (escaped) {
+				case '0':
+					c = '\0';
+					break;
+				case 'b':
+					c = '\b';
+					break;
+				case 'n':
+					c = '\n';
+					break;
+				case 'r':
+					c = '\r';
+					break;
+				case 't':
+					c = '\t';
+					break;
+				case 'Z':
+					c = '\032';
+					break;
+				case '%':
+				case '_':
+					result.append('\\');
+					c = escaped;
+					break;
+				default:
+					c = escaped;
+				}
+			}
+			result.append(c);
+		}
+
+		return result.toString();
+	}
+
+	/**
+	 * A parsed single-row INSERT.
+	 */
+	public static class Row {
+
+		private final String prefix;
+		private final String values;
+		private final List<Object> parameters;
+
+		private Row(String prefix, String values, List<Object> parameters) {
+			this.prefix = prefix;
+			this.values = values;
+			this.parameters = parameters;
+		}
+
+		/**
+		 * Get the statement of the shape.
+		 *
+		 * @param rowCount
+		 *            Rows by statement.
+		 * @return The INSERT with rowCount parameterized VALUES.
+		 */
+		public String toSql(int rowCount) {
+			StringBuilder sql = new StringBuilder(prefix).append(' ');
+			for (int r = 0; r < rowCount; r++) {
+				sql.append(r == 0 ? "" : ", ").append(values);
+			}
+
+			return sql.toString();
+		}
+
+		public List<Object> getParameters() {
+			return parameters;
+		}
+
+		private int bind(PreparedStatement statement, int first) throws SQLException {
+			int parameter = first;
+
+			for (Object value : parameters) {
+				if (value instanceof BigDecimal) {
+					statement.setBigDecimal(parameter++, (BigDecimal) value);
+				} else if (value instanceof Timestamp) {
+					statement.setTimestamp(parameter++, (Timestamp) value);
+				} else if (value instanceof byte[]) {
+					statement.setBytes(parameter++, (byte[]) value);
+				} else {
+					statement.setString(parameter++, (String) value);
+				}
+			}
+
+			return parameter;
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package infradev.lumis.lumisportalinstaller.database;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Map;
+
+import javax.inject.Singleton;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Keeps the JDBC drivers loaded from jar files and the connection pools of the installer.
+ *
+ * A driver is loaded and registered once for each jar file and class; a pool is created once for each url and user. The pools are closed
+ * at shutdown.
+ *
+ * @author Alexandre Ribeiro de Souza
+ */
+@Singleton
+public class ConnectionManager {
+
+	private final Map<String, Driver> drivers = Maps.newHashMap();
+	private final Map<String, ConnectionPool> pools = Maps.newHashMap();
+	private int poolSize;
+	private long idleTimeout;
+
+	public ConnectionManager() {
+		this.poolSize = 4;
+		this.idleTimeout = 300000;
+
+		Runtime.getRuntime().addShutdownHook(new Thread("lpi-connection-shutdown") {
+			@Override
+			public void run() {
+				close();
+			}
+		});
+	}
+
+	/**
+	 * Sets the size of the pools created from now on.
+	 *
+	 * @param poolSize
+	 *            The maximum number of connections by pool.
+	 */
+	public void setPoolSize(int poolSize) {
+		this.poolSize = poolSize;
+	}
+
+	/**
+	 * Sets the idle timeout of the pools created from now on.
+	 *
+	 * @param idleTimeout
+	 *            Milliseconds an idle connection is kept open.
+	 */
+	public void setIdleTimeout(long idleTimeout) {
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * Load a driver from a jar file and register it on DriverManager, unless it was already.
+	 *
+	 * @param jdbcDriverFile
+	 *            The jar file.
+	 * @param classname
+	 *            The driver class.
+	 * @return The driver.
+	 * @throws MalformedURLException
+	 *             Throws MalformedURLException.
+	 * @throws InstantiationException
+	 *             Throws InstantiationException.
+	 * @throws IllegalAccessException
+	 *             Throws IllegalAccessException.
+	 * @throws ClassNotFoundException
+	 *             Throws ClassNotFoundException.
+	 * @throws SQLException
+	 *             Throws SQLException.
+	 */
+	public synchronized Driver registerDriver(File jdbcDriverFile, String classname) throws MalformedURLException, InstantiationException,
+			IllegalAccessException, ClassNotFoundException, SQLException {
+		String key;
+		try {
+			key = jdbcDriverFile.getCanonicalPath() + "!" + classname;
+		} catch (IOException e) {
+			key = jdbcDriverFile.getAbsolutePath() + "!" + classname;
+		}
+
+		Driver driver = drivers.get(key);
+		if (driver == null) {
+			URL driverUrl = new URL(String.format("jar:%s!/", jdbcDriverFile.toURI()));
+			URLClassLoader urlClassLoader = new URLClassLoader(new URL[] { driverUrl });
+			driver = (Driver) Class.forName(classname, true, urlClassLoader).newInstance();
+			DriverManager.registerDriver(new DriverShim(driver));
+
+			drivers.put(key, driver);
+		}
+
+		return driver;
+	}
+
+	/**
+	 * Get the pool of a database, creating it on the first call.
+	 *
+	 * @param url
+	 *            The JDBC url.
+	 * @param user
+	 *            The user.
+	 * @param password
+	 *            The password.
+	 * @return The pool.
+	 */
+	public synchronized ConnectionPool getPool(String url, String user, String password) {
+		String key = url + "\n" + user;
+
+		ConnectionPool pool = pools.get(key);
+		if (pool == null) {
+			pool = new ConnectionPool(url, user, password, poolSize, idleTimeout);
+			pools.put(key, pool);
+		}
+
+		return pool;
+	}
+
+	/**
+	 * Close every pool.
+	 */
+	public synchronized void close() {
+		for (ConnectionPool pool : pools.values()) {
+			pool.close();
+		}
+		pools.clear();
+	}
+}
@@ -0,0 +1,237 @@
+package infradev.lumis.lumisportalinstaller.database;
+
+import infradev.lumis.lumisportalinstaller.common.tools.Log;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A small pool of connections to a database.
+ *
+ * At most size connections are borrowed at once; borrow waits for a returned one up to the borrow timeout. Idle connections are kept
+ * most recent first; the ones idle for more than the idle timeout are closed, and the ones idle for more than a few seconds are validated
+ * before being borrowed again. A returned connection is rolled back to autocommit, or closed if it is broken. Closing the pool closes every
+ * connection, and the ones still borrowed are logged as leaked.
+ *
+ * @author Alexandre Ribeiro de Souza
+ */
+public class ConnectionPool implements Closeable {
+
+	private static final long VALIDATION_INTERVAL = 5000;
+	private static final int VALIDATION_TIMEOUT = 5;
+
+	private final String url;
+	private final String user;
+	private final String password;
+	private final int size;
+	private final long idleTimeout;
+	private final Semaphore permits;
+	private final Deque<IdleConnection> idleConnections = new LinkedList<>();
+	private final Set<Connection> connections = Collections.newSetFromMap(new IdentityHashMap<Connection, Boolean>());
+	private long borrowTimeout;
+	private boolean closed;
+
+	/**
+	 * Create a pool.
+	 *
+	 * @param url
+	 *            The JDBC url.
+	 * @param user
+	 *            The user.
+	 * @param password
+	 *            The password.
+	 * @param size
+	 *            The maximum number of connections.
+	 * @param idleTimeout
+	 *            Milliseconds an idle connection is kept open.
+	 */
+	public ConnectionPool(String url, String user, String password, int size, long idleTimeout) {
+		this.url = url;
+		this.user = user;
+		this.password = password;
+		this.size = Math.max(size, 1);
+		this.idleTimeout = idleTimeout;
+		this.permits = new Semaphore(this.size, true);
+		this.borrowTimeout = 60000;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Sets how long borrow waits for a connection.
+	 *
+	 * @param borrowTimeout
+	 *            Milliseconds to wait.
+	 */
+	public void setBorrowTimeout(long borrowTimeout) {
+		this.borrowTimeout = borrowTimeout;
+	}
+
+	/**
+	 * Borrow a connection, opening one when no idle connection is valid.
+	 *
+	 * @return The connection, to be given back with {@link #release(Connection)}.
+	 * @throws SQLException
+	 *             When the pool is closed, no connection is returned in time or the connection can not be opened.
+	 */
+	public Connection borrow() throws SQLException {
+		try {
+			if (!permits.tryAcquire(borrowTimeout, TimeUnit.MILLISECONDS)) {
+				throw new SQLException(String.format("No connection to %s returned in %d ms", url, borrowTimeout));
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException(e);
+		}
+
+		try {
+			Connection connection = takeIdle();
+			if (connection == null) {
+				connection = DriverManager.getConnection(url, user, password);
+
+				synchronized (this) {
+					connections.add(connection);
+				}
+			}
+
+			return connection;
+		} catch (SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Return a borrowed connection to the pool. Connections not borrowed from the pool are closed.
+	 *
+	 * @param connection
+	 *            The connection.
+	 */
+	public void release(Connection connection) {
+		synchronized (this) {
+			if (!connections.contains(connection)) {
+				closeQuietly(connection);
+				return;
+			}
+		}
+
+		boolean reusable;
+		try {
+			if (!connection.isClosed() && !connection.getAutoCommit()) {
+				connection.rollback();
+				connection.setAutoCommit(true);
+			}
+			reusable = !connection.isClosed();
+		} catch (SQLException e) {
+			reusable = false;
+		}
+
+		synchronized (this) {
+			if (reusable && !closed) {
+				idleConnections.addFirst(new IdleConnection(connection, System.currentTimeMillis()));
+			} else {
+				discard(connection);
+			}
+		}
+
+		permits.release();
+	}
+
+	/**
+	 * Close the idle connections and the borrowed ones, which were not returned.
+	 */
+	@Override
+	public synchronized void close() {
+		closed = true;
+
+		while (!idleConnections.isEmpty()) {
+			discard(idleConnections.removeFirst().connection);
+		}
+
+		if (!connections.isEmpty()) {
+			Log.warn(String.format("Closing %d connections to %s that were not returned to the pool", connections.size(), url));
+			for (Connection connection : connections) {
+				closeQuietly(connection);
+			}
+			connections.clear();
+		}
+	}
+
+	private Connection takeIdle() throws SQLException {
+		while (true) {
+			IdleConnection idle;
+			synchronized (this) {
+				if (closed) {
+					throw new SQLException(String.format("Pool of %s is closed", url));
+				}
+				evictIdle();
+				idle = idleConnections.pollFirst();
+			}
+
+			if (idle == null) {
+				return null;
+			}
+			if (System.currentTimeMillis() - idle.since < VALIDATION_INTERVAL || isValid(idle.connection)) {
+				return idle.connection;
+			}
+
+			synchronized (this) {
+				discard(idle.connection);
+			}
+		}
+	}
+
+	/**
+	 * Close the connections idle for more than the idle timeout, which are the last of the deque.
+	 */
+	private void evictIdle() {
+		long now = System.currentTimeMillis();
+
+		while (!idleConnections.isEmpty() && now - idleConnections.peekLast().since > idleTimeout) {
+			discard(idleConnections.removeLast().connection);
+		}
+	}
+
+	private void discard(Connection connection) {
+		connections.remove(connection);
+		closeQuietly(connection);
+	}
+
+	private static boolean isValid(Connection connection) {
+		try {
+			return connection.isValid(VALIDATION_TIMEOUT);
+		} catch (SQLException | AbstractMethodError e) {
+			return false;
+		}
+	}
+
+	private static void closeQuietly(Connection connection) {
+		try {
+			connection.close();
+		} catch (SQLException e) {
+			// nothing else can be done with a broken connection
+		}
+	}
+
+	private static class IdleConnection {
+
+		private final Connection connection;
+		private final long since;
+
+		private IdleConnection(Connection connection, long since) {
+			this.connection = connection;
+			this.since = since;
+		}
+	}
+}
@@ -0,0 +1,246 @@
+package infradev.lumis.lumisportalinstaller.database;
+
+import infradev.lumis.lumisportalinstaller.common.tools.ProgressMeter;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Index and constraint DDL of a script held back until the data is loaded, so the database builds each index once instead of row by row.
+ *
+ * The executors hand every CREATE INDEX and ALTER TABLE ... ADD of a key, index or constraint to {@link #defer(int, String)} instead of
+ * running it. {@link #execute(Collection)} then runs the indexes and keys, and after them the foreign keys, which need the keys of their
+ * parents. The statements of a table run in script order on one connection, and the tables run in parallel across the connections. A
+ * failure stops the statements not yet started and is thrown, with the position of the statement on the script, once the running ones end.
+ *
+ * Statements are deferred as the script is read, so a script that drops or relies on one of its own indexes or constraints before the
+ * end must not be deferred.
+ *
+ * @author Alexandre Ribeiro de Souza
+ */
+public class DeferredDdl {
+
+	private static final Pattern CREATE_INDEX = Pattern.compile("^\\s*CREATE\\s+(?:UNIQUE\\s+)?(?:(?:NON)?CLUSTERED\\s+)?INDEX\\s",
+			Pattern.CASE_INSENSITIVE);
+	private static final Pattern ADD_CONSTRAINT = Pattern.compile("^\\s*ALTER\\s+TABLE\\s+\\S+\\s+ADD\\s*\\(?\\s*(?:CONSTRAINT\\s+\\S+\\s+)?"
+			+ "(?:PRIMARY\\s+KEY|UNIQUE|FOREIGN\\s+KEY|CHECK|INDEX|KEY)\\b", Pattern.CASE_INSENSITIVE);
+	private static final Pattern FOREIGN_KEY = Pattern.compile("\\bFOREIGN\\s+KEY\\b|\\bREFERENCES\\b", Pattern.CASE_INSENSITIVE);
+
+	private final AbstractDatabase database;
+	private final ProgressMeter progressMeter;
+	private final List<Deferred> keys = Lists.newArrayList();
+	private final List<Deferred> foreignKeys = Lists.newArrayList();
+	private ScriptJournal journal;
+
+	/**
+	 * Create an empty list of deferred statements.
+	 *
+	 * @param database
+	 *            The database of the statements.
+	 * @param progressMeter
+	 *            The progress meter, or null to not report progress.
+	 */
+	public DeferredDdl(AbstractDatabase database, ProgressMeter progressMeter) {
+		this.database = database;
+		this.progressMeter = progressMeter;
+	}
+
+	/**
+	 * Sets the journal where the executed statements are recorded.
+	 *
+	 * @param journal
+	 *            The journal, or null.
+	 */
+	public void setJournal(ScriptJournal journal) {
+		this.journal = journal;
+	}
+
+	/**
+	 * Verify if a statement creates an index or constraint that can run after the data is loaded.
+	 *
+	 * @param sql
+	 *            The statement.
+	 * @return true if the statement is a CREATE INDEX or adds a key, index or constraint to a table.
+	 */
+	public static boolean isDeferrable(String sql) {
+		return CREATE_INDEX.matcher(sql).find() || ADD_CONSTRAINT.matcher(sql).find();
+	}
+
+	/**
+	 * Defer a statement of the script when it is deferrable.
+	 *
+	 * @param position
+	 *            The position of the statement on the script.
+	 * @param sql
+	 *            The statement.
+	 * @return true if the statement was deferred, and must not be executed now.
+	 */
+	public boolean defer(int position, String sql) {
+		if (!isDeferrable(sql)) {
+			return false;
+		}
+
+		ParallelScriptExecutor.Table table = ParallelScriptExecutor.tableOf(sql);
+		Deferred deferred = new Deferred(position, sql, table != null ? table.getName() : "");
+		if (FOREIGN_KEY.matcher(sql).find()) {
+			foreignKeys.add(deferred);
+		} else {
+			keys.add(deferred);
+		}
+
+		return true;
+	}
+
+	public int size() {
+		return keys.size() + foreignKeys.size();
+	}
+
+	/**
+	 * Execute the deferred statements, the keys and indexes first and then the foreign keys.
+	 *
+	 * @param connections
+	 *            The connections, one for each worker.
+	 * @throws ScriptException
+	 *             When a statement fails, with its position.
+	 * @throws SQLException
+	 *             Throws SQLException.
+	 */
+	public void execute(Collection<Connection> connections) throws SQLException {
+		if (size() == 0) {
+			return;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(connections.size(),
+				new ThreadFactoryBuilder().setNameFormat("lpi-ddl-%d").setDaemon(true).build());
+		BlockingQueue<Connection> idleConnections = new LinkedBlockingQueue<>(connections);
+		AtomicInteger executed = new AtomicInteger();
+
+		try {
+			execute(keys, executor, idleConnections, executed);
+			execute(foreignKeys, executor, idleConnections, executed);
+		} finally {
+			executor.shutdownNow();
+			ParallelScriptExecutor.awaitTermination(executor);
+		}
+
+		keys.clear();
+		foreignKeys.clear();
+	}
+
+	private void execute(List<Deferred> phase, ExecutorService executor, final BlockingQueue<Connection> idleConnections,
+			final AtomicInteger executed) throws SQLException {
+		Map<String, List<Deferred>> byTable = Maps.newLinkedHashMap();
+		for (Deferred deferred : phase) {
+			if (!byTable.containsKey(deferred.table)) {
+				byTable.put(deferred.table, Lists.<Deferred> newArrayList());
+			}
+			byTable.get(deferred.table).add(deferred);
+		}
+
+		final AtomicBoolean failed = new AtomicBoolean();
+		List<Future<Void>> futures = Lists.newArrayList();
+		for (final List<Deferred> statements : byTable.values()) {
+			futures.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws SQLException, IOException, InterruptedException {
+					try {
+						run(statements, idleConnections, executed, failed);
+					} catch (SQLException | IOException | InterruptedException | RuntimeException e) {
+						failed.set(true);
+						throw e;
+					}
+					return null;
+				}
+			}));
+		}
+
+		ScriptException failure = null;
+		SQLException otherFailure = null;
+		for (Future<Void> future : futures) {
+			try {
+				Uninterruptibles.getUninterruptibly(future);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof ScriptException) {
+					if (failure == null || ((ScriptException) e.getCause()).getLine() < failure.getLine()) {
+						failure = (ScriptException) e.getCause();
+					}
+				} else if (otherFailure == null) {
+					otherFailure = e.getCause() instanceof SQLException ? (SQLException) e.getCause() : new SQLException(e.getCause());
+				}
+			}
+		}
+		if (otherFailure != null) {
+			throw otherFailure;
+		} else if (failure != null) {
+			throw failure;
+		}
+	}
+
+	private void run(List<Deferred> statements, BlockingQueue<Connection> idleConnections, AtomicInteger executed, AtomicBoolean failed)
+			throws SQLException, IOException, InterruptedException {
+		Connection connection = idleConnections.take();
+
+		try (Statement statement = connection.createStatement()) {
+			for (Deferred deferred : statements) {
+				if (failed.get()) {
+					return;
+				}
+
+				try {
+					database.executeSql(deferred.sql, statement);
+					if (!connection.getAutoCommit()) {
+						connection.commit();
+					}
+				} catch (SQLException e) {
+					failed.set(true);
+					throw new ScriptException(deferred.position, e);
+				}
+				if (journal != null) {
+					journal.committed(deferred.position, deferred.position);
+				}
+
+				if (progressMeter != null) {
+					progressMeter.tick(String.format("  |- %d of %d deferred statements executed", executed.incrementAndGet(), size()));
+				}
+			}
+		} finally {
+			idleConnections.add(connection);
+		}
+	}
+
+	/**
+	 * A deferred statement and its position on the script.
+	 */
+	private static class Deferred {
+
+		private final int position;
+		private final String sql;
+		private final String table;
+
+		private Deferred(int position, String sql, String table) {
+			this.position = position;
+			this.sql = sql;
+			this.table = table;
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package infradev.lumis.lumisportalinstaller.database;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import javax.inject.Named;
+
+/**
+ * H2 embedded database handler, running in MySQL mode the MySQL script and hibernate configuration of the portal.
+ *
+ * @author Alexandre Ribeiro de Souza
+ */
+@Named("H2")
+public class H2Impl extends AbstractDatabase {
+
+	public H2Impl() {
+		super();
+		dialect = "H2";
+		driverPattern = "h2";
+		commentPattern = "<!-- MySQL";
+		classname = "org.h2.Driver";
+		// baseUrl = "jdbc:h2:./lumisdata/h2/lumisportal;MODE=MySQL";
+	}
+
+	@Override
+	public String getScriptType() {
+		return "MYSQL";
+	}
+
+	@Override
+	public List<String> configureLumishibernateCfgXml(File file) throws IOException {
+		List<String> lines = super.configureLumishibernateCfgXml(file);
+
+		boolean inConfiguration = false;
+		for (int i = 0; i < lines.size(); i++) {
+			String line = lines.get(i);
+
+			if (line.contains(commentPattern)) {
+				inConfiguration = true;
+			} else if (inConfiguration && line.contains("<!--") && !line.contains("<!-- -->")) {
+				break;
+			} else if (inConfiguration && line.contains("\"connection.driver_class\"")) {
+				lines.set(i, line.replaceAll(">[^<]*<", ">" + classname + "<"));
+			}
+		}
+
+		return lines;
+	}
+}
@@ -12,6 +12,7 @@ public class MySQLImpl extends AbstractDatabase {
 
 	public MySQLImpl() {
 		super();
+		dialect = "MYSQL";
 		driverPattern = "mysql";
 		commentPattern = "<!-- MySQL";
 		classname = "com.mysql.jdbc.Driver";
@@ -12,6 +12,7 @@ public class OracleImpl extends AbstractDatabase {
 
 	public OracleImpl() {
 		super();
+		dialect = "ORACLE";
 		driverPattern = "ojdbc";
 		commentPattern = "<!-- Oracle";
 		classname = "oracle.jdbc.driver.OracleDriver";
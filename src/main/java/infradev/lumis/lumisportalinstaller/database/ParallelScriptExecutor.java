@@ -0,0 +1,416 @@
+package infradev.lumis.lumisportalinstaller.database;
+
+import infradev.lumis.lumisportalinstaller.common.tools.ProgressMeter;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Executes the statements of a script across several connections, in the order the tables they touch require.
+ *
+ * Every statement is keyed by the tables it writes and reads, plus the tables referenced by foreign keys of the table it writes. A
+ * statement waits for the last statement that touched any of its keys, so each table sees its statements in script order and a child
+ * table row is never inserted before the rows of its parent. Statements whose tables can not be found (views, procedures, SET, ...) are
+ * barriers: they wait for everything before them and everything after them waits for them. Consecutive statements with the same keys
+ * run as one task through a {@link ScriptExecutor}, batched and committed in chunks on the connection of a worker.
+ *
+ * When a statement fails no new task starts and the failure with the lowest position is thrown; statements after it that do not depend
+ * on it may have been executed.
+ *
+ * @author Alexandre Ribeiro de Souza
+ */
+public class ParallelScriptExecutor {
+
+	private static final Pattern WRITTEN_TABLE = Pattern.compile("^\\s*(?:INSERT\\s+(?:IGNORE\\s+)?INTO|REPLACE\\s+INTO|UPDATE|DELETE(?:\\s+FROM)?"
+			+ "|CREATE\\s+(?:GLOBAL\\s+TEMPORARY\\s+)?TABLE(?:\\s+IF\\s+NOT\\s+EXISTS)?|ALTER\\s+TABLE|DROP\\s+TABLE(?:\\s+IF\\s+EXISTS)?"
+			+ "|TRUNCATE\\s+TABLE|CREATE\\s+(?:UNIQUE\\s+)?(?:(?:NON)?CLUSTERED\\s+)?INDEX\\s+\\S+\\s+ON)\\s+(" + Table.NAME + ")",
+			Pattern.CASE_INSENSITIVE);
+	private static final Pattern READ_TABLE = Pattern.compile("\\b(?:FROM|JOIN|REFERENCES)\\s+(" + Table.NAME + ")", Pattern.CASE_INSENSITIVE);
+	private static final Pattern FOREIGN_KEY = Pattern.compile("\\bREFERENCES\\s+(" + Table.NAME + ")", Pattern.CASE_INSENSITIVE);
+	private static final Set<String> NOT_TABLES = ImmutableSet.of("select", "dual");
+
+	private final AbstractDatabase database;
+	private final ProgressMeter progressMeter;
+	private int batchSize;
+	private int commitSize;
+	private boolean bulkLoad;
+	private ScriptJournal journal;
+	private DeferredDdl deferredDdl;
+
+	public ParallelScriptExecutor(AbstractDatabase database, ProgressMeter progressMeter) {
+		this.database = database;
+		this.progressMeter = progressMeter;
+		this.batchSize = 1;
+		this.commitSize = 1;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = Math.max(batchSize, 1);
+	}
+
+	public void setCommitSize(int commitSize) {
+		this.commitSize = Math.max(commitSize, 1);
+	}
+
+	public void setBulkLoad(boolean bulkLoad) {
+		this.bulkLoad = bulkLoad;
+	}
+
+	/**
+	 * Sets the journal where the committed statements are recorded. Statements already committed on the journal are skipped.
+	 *
+	 * @param journal
+	 *            The journal, or null to run every statement.
+	 */
+	public void setJournal(ScriptJournal journal) {
+		this.journal = journal;
+	}
+
+	/**
+	 * Sets where the index and constraint DDL is deferred to, to be executed after the script with {@link DeferredDdl#execute(Collection)}.
+	 *
+	 * @param deferredDdl
+	 *            The deferred statements, or null to run every statement in order.
+	 */
+	public void setDeferredDdl(DeferredDdl deferredDdl) {
+		this.deferredDdl = deferredDdl;
+	}
+
+	/**
+	 * Find the tables of a statement.
+	 *
+	 * @param sql
+	 *            The statement.
+	 * @return The tables written and read by the statement, in lower case, or null if the statement does not write a table.
+	 */
+	public static Table tableOf(String sql) {
+		Matcher matcher = WRITTEN_TABLE.matcher(sql);
+		if (!matcher.find()) {
+			return null;
+		}
+
+		Table table = new Table(Table.normalize(matcher.group(1)));
+
+		matcher = READ_TABLE.matcher(sql);
+		while (matcher.find()) {
+			String name = Table.normalize(matcher.group(1));
+			if (!NOT_TABLES.contains(name)) {
+				table.read.add(name);
+			}
+		}
+		matcher = FOREIGN_KEY.matcher(sql);
+		while (matcher.find()) {
+			table.foreignKeys.add(Table.normalize(matcher.group(1)));
+		}
+		table.read.remove(table.name);
+
+		return table;
+	}
+
+	/**
+	 * Execute the statements of a script.
+	 *
+	 * @param connections
+	 *            The connections, one for each worker.
+	 * @param statements
+	 *            The statements, like a {@link SqlScriptReader}.
+	 * @return The number of statements of the script, including the ones skipped as committed on the journal.
+	 * @throws ScriptException
+	 *             When a statement fails, with its position.
+	 * @throws SQLException
+	 *             Throws SQLException.
+	 */
+	public int execute(Collection<Connection> connections, Iterator<String> statements) throws SQLException {
+		final BlockingQueue<Connection> idleConnections = new LinkedBlockingQueue<>(connections);
+		ListeningExecutorService executor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(connections.size(),
+				new ThreadFactoryBuilder().setNameFormat("lpi-sql-%d").setDaemon(true).build()));
+		final Semaphore window = new Semaphore(connections.size() * 4);
+		final AtomicInteger executed = new AtomicInteger();
+
+		SetMultimap<String, String> foreignKeys = HashMultimap.create();
+		Map<String, ListenableFuture<Integer>> lastByKey = Maps.newHashMap();
+		List<ListenableFuture<Integer>> sinceBarrier = Lists.newArrayList();
+		List<ListenableFuture<Integer>> failures = Collections.synchronizedList(Lists.<ListenableFuture<Integer>> newArrayList());
+		ListenableFuture<Integer> barrier = null;
+
+		int position = 0;
+		Task task = null;
+
+		try {
+			while (statements.hasNext() && failures.isEmpty()) {
+				String sql = statements.next();
+				position++;
+
+				if ((journal != null && journal.isCommitted(position)) || (deferredDdl != null && deferredDdl.defer(position, sql))) {
+					if (task != null) {
+						barrier = submit(task, executor, idleConnections, window, executed, lastByKey, sinceBarrier, failures, barrier);
+						task = null;
+					}
+					continue;
+				}
+
+				Table table = tableOf(sql);
+				Set<String> keys = null;
+				if (table != null) {
+					foreignKeys.putAll(table.name, table.foreignKeys);
+					keys = Sets.newHashSet(table.read);
+					keys.add(table.name);
+					keys.addAll(foreignKeys.get(table.name));
+				}
+
+				if (task != null && keys != null && keys.equals(task.keys) && task.statements.size() < commitSize) {
+					task.statements.add(sql);
+					continue;
+				}
+
+				if (task != null) {
+					barrier = submit(task, executor, idleConnections, window, executed, lastByKey, sinceBarrier, failures, barrier);
+				}
+				task = new Task(position, keys);
+				task.statements.add(sql);
+			}
+
+			if (task != null && failures.isEmpty()) {
+				submit(task, executor, idleConnections, window, executed, lastByKey, sinceBarrier, failures, barrier);
+			}
+
+			window.acquireUninterruptibly(connections.size() * 4);
+		} finally {
+			executor.shutdownNow();
+			awaitTermination(executor);
+		}
+
+		ScriptException failure = null;
+		for (ListenableFuture<Integer> future : failures) {
+			try {
+				future.get();
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof ScriptException) {
+					if (failure == null || ((ScriptException) e.getCause()).getLine() < failure.getLine()) {
+						failure = (ScriptException) e.getCause();
+					}
+				} else if (e.getCause() instanceof SQLException) {
+					throw (SQLException) e.getCause();
+				} else {
+					throw new SQLException(e.getCause());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SQLException(e);
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+
+		return position;
+	}
+
+	/**
+	 * Submit a task after its dependencies.
+	 *
+	 * @return The barrier that following tasks must wait for.
+	 */
+	private ListenableFuture<Integer> submit(final Task task, final ListeningExecutorService executor, final BlockingQueue<Connection> idleConnections,
+			final Semaphore window, final AtomicInteger executed, Map<String, ListenableFuture<Integer>> lastByKey,
+			List<ListenableFuture<Integer>> sinceBarrier, final List<ListenableFuture<Integer>> failures, ListenableFuture<Integer> barrier) {
+		List<ListenableFuture<Integer>> dependencies = Lists.newArrayList();
+
+		if (task.keys == null) {
+			dependencies.addAll(sinceBarrier);
+		} else {
+			for (String key : task.keys) {
+				if (lastByKey.containsKey(key)) {
+					dependencies.add(lastByKey.get(key));
+				}
+			}
+		}
+		if (barrier != null) {
+			dependencies.add(barrier);
+		}
+
+		window.acquireUninterruptibly();
+
+		final ListenableFuture<Integer> future = Futures.transform(Futures.allAsList(dependencies), new AsyncFunction<List<Integer>, Integer>() {
+			@Override
+			public ListenableFuture<Integer> apply(List<Integer> input) {
+				if (!failures.isEmpty()) {
+					return Futures.immediateFuture(0);
+				}
+
+				return executor.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() throws SQLException, IOException, InterruptedException {
+						return run(task, idleConnections, executed);
+					}
+				});
+			}
+		});
+
+		future.addListener(new Runnable() {
+			@Override
+			public void run() {
+				if (!isSuccessful(future)) {
+					failures.add(future);
+				}
+				window.release();
+			}
+		}, MoreExecutors.sameThreadExecutor());
+
+		if (task.keys == null) {
+			lastByKey.clear();
+			sinceBarrier.clear();
+			return future;
+		}
+
+		for (String key : task.keys) {
+			lastByKey.put(key, future);
+		}
+		for (Iterator<ListenableFuture<Integer>> iterator = sinceBarrier.iterator(); iterator.hasNext();) {
+			ListenableFuture<Integer> done = iterator.next();
+			if (done.isDone() && isSuccessful(done)) {
+				iterator.remove();
+			}
+		}
+		sinceBarrier.add(future);
+
+		return barrier;
+	}
+
+	private int run(Task task, BlockingQueue<Connection> idleConnections, AtomicInteger executed) throws SQLException, IOException,
+			InterruptedException {
+		Connection connection = idleConnections.take();
+
+		try {
+			ScriptExecutor scriptExecutor = new ScriptExecutor(database, null);
+			scriptExecutor.setBatchSize(batchSize);
+			scriptExecutor.setCommitSize(commitSize);
+			scriptExecutor.setBulkLoad(bulkLoad);
+
+			int result = scriptExecutor.execute(connection, task.statements);
+			if (journal != null) {
+				journal.committed(task.position, task.position + result - 1);
+			}
+
+			int total = executed.addAndGet(result);
+			if (progressMeter != null) {
+				progressMeter.tick(String.format("  |- %d statements executed", total));
+			}
+
+			return result;
+		} catch (ScriptException e) {
+			if (journal != null) {
+				journal.committed(task.position, task.position + e.getLine() - 2);
+			}
+			throw new ScriptException(task.position + e.getLine() - 1, (SQLException) e.getCause());
+		} finally {
+			idleConnections.add(connection);
+		}
+	}
+
+	/**
+	 * Wait for the workers to finish the statements they are running, which are not interrupted, before their connections are released.
+	 */
+	static void awaitTermination(ExecutorService executor) {
+		boolean interrupted = false;
+
+		while (!executor.isTerminated()) {
+			try {
+				executor.awaitTermination(1, TimeUnit.MINUTES);
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static boolean isSuccessful(ListenableFuture<Integer> future) {
+		try {
+			future.get();
+			return true;
+		} catch (ExecutionException | InterruptedException | RuntimeException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Consecutive statements with the same keys, starting at a position of the script.
+	 */
+	private static class Task {
+
+		private final int position;
+		private final Set<String> keys;
+		private final List<String> statements = Lists.newArrayList();
+
+		private Task(int position, Set<String> keys) {
+			this.position = position;
+			this.keys = keys;
+		}
+	}
+
+	/**
+	 * The tables of a statement.
+	 */
+	public static class Table {
+
+		private static final String NAME = "[\\w$#.\"`\\[\\]]+";
+
+		private final String name;
+		private final Set<String> read = Sets.newHashSet();
+		private final Set<String> foreignKeys = Sets.newHashSet();
+
+		private Table(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public Set<String> getRead() {
+			return read;
+		}
+
+		public Set<String> getForeignKeys() {
+			return foreignKeys;
+		}
+
+		private static String normalize(String name) {
+			return name.replaceAll("[\"`\\[\\]]", "").toLowerCase(Locale.ENGLISH);
+		}
+	}
+}
@@ -12,6 +12,7 @@ public class SQLServerImpl extends AbstractDatabase {
 
 	public SQLServerImpl() {
 		super();
+		dialect = "SQLSERVER";
 		driverPattern = "jtds";
 		commentPattern = "<!-- MS SQL Server";
 		classname = "net.sourceforge.jtds.jdbc.Driver";
@@ -0,0 +1,344 @@
+package infradev.lumis.lumisportalinstaller.database;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.Files;
+
+/**
+ * Exports an initialized portal schema to a compressed script of the database dialect, restored with
+ * {@link AbstractDatabase#executeScript(File)}.
+ *
+ * The snapshot has the CREATE TABLE statements of the schema script, one single-row INSERT for each row of those tables and then the rest
+ * of the schema script, like indexes and constraints. The data statements of the schema script are left out, since their rows are in the
+ * tables. Restoring it runs the INSERTs as bulk loads and resumes from the checkpoint journal like any other script.
+ *
+ * Texts are written as they are, line ends included, and the INSERTs of large texts and binaries have their values bound when restored. On
+ * SQL Server the rows of tables with an IDENTITY column are written in batches between SET IDENTITY_INSERT ON and OFF, and sequences are
+ * created starting after the values already used by the rows.
+ *
+ * @author Alexandre Ribeiro de Souza
+ */
+public class SchemaSnapshot {
+
+	private static final Pattern CREATE_TABLE = Pattern.compile("^\\s*CREATE\\s+TABLE\\s+([\\w$#.\"`\\[\\]]+)", Pattern.CASE_INSENSITIVE);
+	private static final Pattern DATA = Pattern.compile("^\\s*(?:INSERT|UPDATE|DELETE|REPLACE|MERGE)\\b", Pattern.CASE_INSENSITIVE);
+	private static final Pattern CREATE_SEQUENCE = Pattern.compile("^\\s*CREATE\\s+SEQUENCE\\s+([\\w$#.\"`\\[\\]]+)", Pattern.CASE_INSENSITIVE);
+	private static final Pattern START_WITH = Pattern.compile("\\s+START\\s+WITH\\s+[-+]?\\d+", Pattern.CASE_INSENSITIVE);
+	private static final int IDENTITY_BATCH_SIZE = 100;
+
+	private final String dialect;
+	private final boolean isMySql;
+	private final boolean isOracle;
+	private final boolean isSqlServer;
+	private int compressionLevel = 6;
+	private int tableCount;
+	private long rowCount;
+
+	/**
+	 * Create an exporter.
+	 *
+	 * @param dialect
+	 *            The database type, MYSQL, ORACLE, SQLSERVER or H2.
+	 */
+	public SchemaSnapshot(String dialect) {
+		this.dialect = dialect;
+		this.isMySql = "MYSQL".equalsIgnoreCase(dialect);
+		this.isOracle = "ORACLE".equalsIgnoreCase(dialect);
+		this.isSqlServer = "SQLSERVER".equalsIgnoreCase(dialect);
+	}
+
+	public void setCompressionLevel(int compressionLevel) {
+		this.compressionLevel = compressionLevel;
+	}
+
+	public int getTableCount() {
+		return tableCount;
+	}
+
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * Export the tables created by a schema script. The snapshot is written to a temporary file and moved to its place when complete, so a
+	 * snapshot shared by many installers is never read half written.
+	 *
+	 * @param connection
+	 *            Connection to the initialized schema.
+	 * @param script
+	 *            The schema script.
+	 * @param snapshot
+	 *            The snapshot file.
+	 * @throws IOException
+	 *             Throws IOException.
+	 * @throws SQLException
+	 *             Throws SQLException.
+	 */
+	public void export(Connection connection, File script, File snapshot) throws IOException, SQLException {
+		List<String> tables = Lists.newArrayList();
+		List<String> schema = Lists.newArrayList();
+
+		Files.createParentDirs(snapshot);
+		File temporaryFile = File.createTempFile(snapshot.getName(), ".tmp", snapshot.getParentFile());
+		tableCount = 0;
+		rowCount = 0;
+
+		try {
+			try (SqlScriptReader reader = SqlScriptReader.open(script, dialect);
+					OutputStream out = new GZIPOutputStream(Files.asByteSink(temporaryFile).openStream(), 65536) {
+						{
+							def.setLevel(compressionLevel);
+						}
+					};
+					Writer writer = new OutputStreamWriter(out, Charsets.UTF_8)) {
+				String sql;
+				while ((sql = reader.readStatement()) != null) {
+					Matcher matcher = CREATE_TABLE.matcher(sql);
+					if (matcher.find()) {
+						tables.add(matcher.group(1));
+						write(writer, sql);
+					} else if (!DATA.matcher(sql).find()) {
+						schema.add(sql);
+					}
+				}
+
+				for (String table : tables) {
+					exportTable(connection, table, writer);
+				}
+				for (String statement : schema) {
+					write(writer, restartSequence(connection, statement));
+				}
+			}
+
+			java.nio.file.Files.move(temporaryFile.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			java.nio.file.Files.deleteIfExists(temporaryFile.toPath());
+		}
+	}
+
+	private void exportTable(Connection connection, String table, Writer writer) throws IOException, SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.setFetchSize(1000);
+
+			try (ResultSet resultSet = statement.executeQuery("SELECT * FROM " + table)) {
+				ResultSetMetaData metaData = resultSet.getMetaData();
+				int columnCount = metaData.getColumnCount();
+				StringBuilder columns = new StringBuilder();
+				boolean identity = false;
+				for (int i = 1; i <= columnCount; i++) {
+					columns.append(i == 1 ? "" : ", ").append(metaData.getColumnName(i));
+					identity |= isSqlServer && metaData.isAutoIncrement(i);
+				}
+
+				String insert = identity ? "INSERT INTO " + table + " (" + columns + ") VALUES (" : "INSERT INTO " + table + " VALUES (";
+				StringBuilder sql = new StringBuilder();
+				StringBuilder batch = new StringBuilder();
+				int batchRows = 0;
+
+				while (resultSet.next()) {
+					sql.setLength(0);
+					sql.append(insert);
+					for (int i = 1; i <= columnCount; i++) {
+						sql.append(i == 1 ? "" : ", ");
+						appendValue(sql, resultSet, i, metaData.getColumnType(i));
+					}
+					sql.append(')');
+
+					if (!identity) {
+						write(writer, sql.toString());
+					} else {
+						if (batchRows == 0) {
+							batch.append("SET IDENTITY_INSERT ").append(table).append(" ON\n");
+						}
+						batch.append(sql).append('\n');
+						if (++batchRows == IDENTITY_BATCH_SIZE) {
+							writeIdentityBatch(writer, table, batch);
+							batchRows = 0;
+						}
+					}
+					rowCount++;
+				}
+
+				if (batchRows > 0) {
+					writeIdentityBatch(writer, table, batch);
+				}
+			}
+		}
+
+		tableCount++;
+	}
+
+	/**
+	 * Write the INSERTs of a batch of rows with their IDENTITY values. IDENTITY_INSERT is set on the session, so it is turned on and off in the
+	 * same batch, that runs alone and is replayed whole when resumed.
+	 */
+	private void writeIdentityBatch(Writer writer, String table, StringBuilder batch) throws IOException {
+		batch.append("SET IDENTITY_INSERT ").append(table).append(" OFF");
+		write(writer, batch.toString());
+		batch.setLength(0);
+	}
+
+	/**
+	 * Make a CREATE SEQUENCE of the schema script start after the values already used on the exported schema.
+	 *
+	 * @return The statement starting with the next value of the sequence, or the statement itself when it is not a CREATE SEQUENCE or the
+	 *         sequence is not found.
+	 */
+	private String restartSequence(Connection connection, String sql) throws SQLException {
+		Matcher matcher = CREATE_SEQUENCE.matcher(sql);
+		if (isMySql || !matcher.find()) {
+			return sql;
+		}
+
+		String name = matcher.group(1).substring(matcher.group(1).lastIndexOf('.') + 1);
+		if (name.startsWith("\"")) {
+			name = name.replace("\"", "");
+		} else if (isSqlServer) {
+			name = name.replace("[", "").replace("]", "");
+		} else {
+			name = name.toUpperCase(Locale.ENGLISH);
+		}
+
+		String query;
+		if (isOracle) {
+			query = "SELECT LAST_NUMBER FROM USER_SEQUENCES WHERE SEQUENCE_NAME = ?";
+		} else if (isSqlServer) {
+			query = "SELECT CAST(current_value AS BIGINT) + CAST(increment AS BIGINT) FROM sys.sequences WHERE name = ?";
+		} else {
+			query = "SELECT CURRENT_VALUE + INCREMENT FROM INFORMATION_SCHEMA.SEQUENCES WHERE SEQUENCE_NAME = ?";
+		}
+
+		try (PreparedStatement statement = connection.prepareStatement(query)) {
+			statement.setString(1, name);
+			try (ResultSet resultSet = statement.executeQuery()) {
+				if (!resultSet.next()) {
+					return sql;
+				}
+				String startWith = " START WITH " + resultSet.getLong(1);
+
+				Matcher start = START_WITH.matcher(sql);
+				if (start.find()) {
+					return sql.substring(0, start.start()) + startWith + sql.substring(start.end());
+				} else if (sql.endsWith(";")) {
+					return sql.substring(0, sql.length() - 1) + startWith + ";";
+				} else {
+					return sql + startWith;
+				}
+			}
+		}
+	}
+
+	private void appendValue(StringBuilder sql, ResultSet resultSet, int column, int type) throws SQLException {
+		switch (type) {
+		case Types.BIT:
+		case Types.BOOLEAN:
+			boolean booleanValue = resultSet.getBoolean(column);
+			sql.append(resultSet.wasNull() ? "NULL" : booleanValue ? "1" : "0");
+			break;
+		case Types.TINYINT:
+		case Types.SMALLINT:
+		case Types.INTEGER:
+		case Types.BIGINT:
+		case Types.DECIMAL:
+		case Types.NUMERIC:
+		case Types.REAL:
+		case Types.FLOAT:
+		case Types.DOUBLE:
+			BigDecimal number = resultSet.getBigDecimal(column);
+			sql.append(number == null ? "NULL" : number.toPlainString());
+			break;
+		case Types.DATE:
+		case Types.TIMESTAMP:
+			Timestamp timestamp = resultSet.getTimestamp(column);
+			if (timestamp == null) {
+				sql.append("NULL");
+			} else if (isSqlServer) {
+				appendString(sql, timestamp.toString().replace(' ', 'T'));
+			} else {
+				sql.append("TIMESTAMP ");
+				appendString(sql, timestamp.toString());
+			}
+			break;
+		case Types.BINARY:
+		case Types.VARBINARY:
+		case Types.LONGVARBINARY:
+		case Types.BLOB:
+			byte[] bytes = resultSet.getBytes(column);
+			String hex = bytes == null ? null : BaseEncoding.base16().encode(bytes);
+			if (hex == null) {
+				sql.append("NULL");
+			} else if (isSqlServer) {
+				sql.append("0x").append(hex);
+			} else if (isOracle) {
+				sql.append("HEXTORAW('").append(hex).append("')");
+			} else {
+				sql.append("X'").append(hex).append('\'');
+			}
+			break;
+		default:
+			String text = resultSet.getString(column);
+			if (text == null) {
+				sql.append("NULL");
+			} else {
+				appendString(sql, text);
+			}
+		}
+	}
+
+	private void appendString(StringBuilder sql, String text) {
+		sql.append(isSqlServer ? "N'" : "'");
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '\'') {
+				sql.append('\'');
+			} else if (c == '\\' && isMySql) {
+				sql.append('\\');
+			}
+			sql.append(c);
+		}
+		sql.append('\'');
+	}
+
+	/**
+	 * Write a statement with the delimiter read back by {@link SqlScriptReader} on the dialect.
+	 */
+	private void write(Writer writer, String sql) throws IOException {
+		if (isOracle) {
+			writer.write(sql);
+			writer.write("\n/\n");
+		} else if (isSqlServer) {
+			writer.write(sql);
+			writer.write("\nGO\n");
+		} else if (sql.indexOf(';') >= 0) {
+			writer.write("DELIMITER //\n");
+			writer.write(sql);
+			writer.write("//\nDELIMITER ;\n");
+		} else {
+			writer.write(sql);
+			writer.write(";\n");
+		}
+	}
+}
@@ -0,0 +1,29 @@
+package infradev.lumis.lumisportalinstaller.database;
+
+import java.sql.SQLException;
+
+/**
+ * A failure of a statement of a script.
+ *
+ * @author Alexandre Ribeiro de Souza
+ */
+public class ScriptException extends SQLException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int line;
+
+	public ScriptException(int line, SQLException cause) {
+		super(cause.getLocalizedMessage(), cause.getSQLState(), cause.getErrorCode(), cause);
+		this.line = line;
+	}
+
+	/**
+	 * Get the position of the failed statement on the script.
+	 *
+	 * @return Position of the statement, starting at 1.
+	 */
+	public int getLine() {
+		return line;
+	}
+}
@@ -0,0 +1,387 @@
+package infradev.lumis.lumisportalinstaller.database;
+
+import infradev.lumis.lumisportalinstaller.common.tools.ProgressMeter;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.List;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+/**
+ * Executes the statements of a script on a connection.
+ *
+ * Consecutive DML statements are sent in JDBC batches and committed in chunks; any other statement commits the pending chunk and runs
+ * alone. When a batch fails the chunk is rolled back and replayed statement by statement, so the statements before the failed one are
+ * committed, as they would be in autocommit, and the failure names its position on the script. With a batch size of 1 every statement
+ * runs in autocommit. Runs of INSERTs of the same shape can be sent as bulk loads instead of statement batches. INSERTs too long to be sent as
+ * text, like the ones of large texts and binaries, always have their values bound.
+ *
+ * @author Alexandre Ribeiro de Souza
+ */
+public class ScriptExecutor {
+
+	private static final Set<String> DML_KEYWORDS = ImmutableSet.of("INSERT", "UPDATE", "DELETE", "MERGE");
+	/**
+	 * Length of the statements whose values are bound; Oracle refuses string literals over 4000 characters and HEXTORAW over 2000 bytes.
+	 */
+	private static final int MAX_LITERALS_LENGTH = 2000;
+
+	private final AbstractDatabase database;
+	private final ProgressMeter progressMeter;
+	private int batchSize;
+	private int commitSize;
+	private boolean bulkLoad;
+	private ScriptJournal journal;
+	private DeferredDdl deferredDdl;
+
+	/**
+	 * Create an executor.
+	 *
+	 * @param database
+	 *            The database of the statements.
+	 * @param progressMeter
+	 *            The progress meter, or null to not report progress.
+	 */
+	public ScriptExecutor(AbstractDatabase database, ProgressMeter progressMeter) {
+		this.database = database;
+		this.progressMeter = progressMeter;
+		this.batchSize = 1;
+		this.commitSize = 1;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Sets the number of DML statements sent by batch.
+	 *
+	 * @param batchSize
+	 *            Statements by batch, or 1 or less to run every statement alone in autocommit.
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = Math.max(batchSize, 1);
+	}
+
+	public int getCommitSize() {
+		return commitSize;
+	}
+
+	/**
+	 * Sets the number of DML statements by transaction.
+	 *
+	 * @param commitSize
+	 *            Statements by transaction, never less than the batch size.
+	 */
+	public void setCommitSize(int commitSize) {
+		this.commitSize = Math.max(commitSize, 1);
+	}
+
+	public boolean isBulkLoad() {
+		return bulkLoad;
+	}
+
+	/**
+	 * Sets if runs of single-row INSERTs of the same shape are loaded with parameterized statements, see {@link BulkInsert}.
+	 *
+	 * @param bulkLoad
+	 *            true to load INSERTs in bulk when batching.
+	 */
+	public void setBulkLoad(boolean bulkLoad) {
+		this.bulkLoad = bulkLoad;
+	}
+
+	public ScriptJournal getJournal() {
+		return journal;
+	}
+
+	/**
+	 * Sets the journal where the committed statements are recorded. Statements already committed on the journal are skipped.
+	 *
+	 * @param journal
+	 *            The journal, or null to run every statement.
+	 */
+	public void setJournal(ScriptJournal journal) {
+		this.journal = journal;
+	}
+
+	public DeferredDdl getDeferredDdl() {
+		return deferredDdl;
+	}
+
+	/**
+	 * Sets where the index and constraint DDL is deferred to, to be executed after the script with {@link DeferredDdl#execute(Collection)}.
+	 *
+	 * @param deferredDdl
+	 *            The deferred statements, or null to run every statement in order.
+	 */
+	public void setDeferredDdl(DeferredDdl deferredDdl) {
+		this.deferredDdl = deferredDdl;
+	}
+
+	/**
+	 * Verify if a statement is a DML that can be batched.
+	 *
+	 * @param sql
+	 *            The statement.
+	 * @return true if the statement is an INSERT, UPDATE, DELETE or MERGE.
+	 */
+	public static boolean isBatchable(String sql) {
+		int start = 0;
+		while (start < sql.length() && (Character.isWhitespace(sql.charAt(start)) || sql.charAt(start) == '(')) {
+			start++;
+		}
+		int end = start;
+		while (end < sql.length() && Character.isLetter(sql.charAt(end))) {
+			end++;
+		}
+
+		return DML_KEYWORDS.contains(sql.substring(start, end).toUpperCase(Locale.ENGLISH));
+	}
+
+	/**
+	 * Execute the statements of a script.
+	 *
+	 * @param connection
+	 *            The connection where the statements will be executed.
+	 * @param statements
+	 *            The statements.
+	 * @return The number of statements of the script, including the ones skipped as committed on the journal.
+	 * @throws ScriptException
+	 *             When a statement fails, with its position.
+	 * @throws SQLException
+	 *             Throws SQLException.
+	 */
+	public int execute(Connection connection, List<String> statements) throws SQLException {
+		return execute(connection, statements.iterator(), statements.size());
+	}
+
+	/**
+	 * Execute the statements of a script as they are read. Only the statements of the uncommitted chunk are kept in memory.
+	 *
+	 * @param connection
+	 *            The connection where the statements will be executed.
+	 * @param statements
+	 *            The statements, like a {@link SqlScriptReader}.
+	 * @return The number of statements of the script, including the ones skipped as committed on the journal.
+	 * @throws ScriptException
+	 *             When a statement fails, with its position.
+	 * @throws SQLException
+	 *             Throws SQLException.
+	 */
+	public int execute(Connection connection, Iterator<String> statements) throws SQLException {
+		return execute(connection, statements, -1);
+	}
+
+	private int execute(Connection connection, Iterator<String> statements, int total) throws SQLException {
+		if (batchSize <= 1) {
+			return executeSequential(connection, statements, total);
+		}
+
+		boolean autoCommit = connection.getAutoCommit();
+		connection.setAutoCommit(false);
+
+		int position = 0;
+
+		try (Statement statement = connection.createStatement()) {
+			BulkInsert bulkInsert = new BulkInsert(database.getDialect());
+			List<String> chunk = Lists.newArrayList();
+			int batched = 0;
+
+			while (statements.hasNext()) {
+				String sql = statements.next();
+				position++;
+
+				if (isSkipped(position, sql)) {
+					if (!chunk.isEmpty()) {
+						flush(connection, statement, bulkInsert, chunk, position - 1);
+						batched = 0;
+						commit(connection, chunk, position - 1);
+					}
+					continue;
+				}
+
+				if (isBatchable(sql)) {
+					BulkInsert.Row row = bulkLoad || sql.length() > MAX_LITERALS_LENGTH ? BulkInsert.parse(sql, database.getDialect()) : null;
+
+					if (row != null ? batched > 0 || !bulkInsert.accepts(row) : bulkInsert.size() > 0) {
+						flush(connection, statement, bulkInsert, chunk, position - 1);
+						batched = 0;
+					}
+
+					if (row != null) {
+						bulkInsert.add(row);
+					} else {
+						statement.addBatch(database.normalizeSql(sql));
+						batched++;
+					}
+					chunk.add(sql);
+
+					if (batched + bulkInsert.size() >= batchSize || chunk.size() >= commitSize) {
+						flush(connection, statement, bulkInsert, chunk, position);
+						batched = 0;
+					}
+					if (chunk.size() >= commitSize) {
+						commit(connection, chunk, position);
+					}
+				} else {
+					if (!chunk.isEmpty()) {
+						flush(connection, statement, bulkInsert, chunk, position - 1);
+						batched = 0;
+					}
+					commit(connection, chunk, position - 1);
+
+					try {
+						executeSql(connection, statement, sql);
+						chunk.add(sql);
+						commit(connection, chunk, position);
+					} catch (SQLException e) {
+						rollback(connection);
+						throw new ScriptException(position, e);
+					}
+				}
+
+				tick(position, total);
+			}
+
+			if (!chunk.isEmpty()) {
+				flush(connection, statement, bulkInsert, chunk, position);
+			}
+			commit(connection, chunk, position);
+		} finally {
+			connection.setAutoCommit(autoCommit);
+		}
+
+		return position;
+	}
+
+	private int executeSequential(Connection connection, Iterator<String> statements, int total) throws SQLException {
+		int position = 0;
+
+		try (Statement statement = connection.createStatement()) {
+			while (statements.hasNext()) {
+				String sql = statements.next();
+				position++;
+
+				if (isSkipped(position, sql)) {
+					continue;
+				}
+
+				try {
+					executeSql(connection, statement, sql);
+				} catch (SQLException e) {
+					throw new ScriptException(position, e);
+				}
+				committed(position, position);
+
+				tick(position, total);
+			}
+		}
+
+		return position;
+	}
+
+	/**
+	 * Verify if a statement is not executed now, because it was committed on the journal or is deferred.
+	 */
+	private boolean isSkipped(int position, String sql) {
+		return (journal != null && journal.isCommitted(position)) || (deferredDdl != null && deferredDdl.defer(position, sql));
+	}
+
+	/**
+	 * Commit the chunk ending at a position of the script.
+	 */
+	private void commit(Connection connection, List<String> chunk, int chunkEnd) throws SQLException {
+		connection.commit();
+
+		committed(chunkEnd - chunk.size() + 1, chunkEnd);
+		chunk.clear();
+	}
+
+	/**
+	 * Record committed statements on the journal.
+	 */
+	private void committed(int first, int last) throws SQLException {
+		if (journal == null) {
+			return;
+		}
+
+		try {
+			journal.committed(first, last);
+		} catch (IOException e) {
+			throw new SQLException(String.format("Unable to save the journal of statements %d to %d", first, last), e);
+		}
+	}
+
+	private void tick(int position, int total) {
+		if (progressMeter == null) {
+			return;
+		} else if (total < 0) {
+			progressMeter.tick(String.format("  |- %d statements executed", position));
+		} else {
+			progressMeter.tick(String.format("  |- %d of %d statements executed", position, total));
+		}
+	}
+
+	/**
+	 * Execute the pending batch or bulk insert. When it fails, the uncommitted statements of the chunk are replayed one by one and the ones before the
+	 * failure are committed.
+	 *
+	 * @param chunkEnd
+	 *            Position on the script of the last statement of the chunk.
+	 */
+	private void flush(Connection connection, Statement statement, BulkInsert bulkInsert, List<String> chunk, int chunkEnd) throws SQLException {
+		try {
+			statement.executeBatch();
+			bulkInsert.execute(connection);
+			return;
+		} catch (SQLException e) {
+			statement.clearBatch();
+			rollback(connection);
+		}
+
+		int chunkStart = chunkEnd - chunk.size() + 1;
+		try (Statement replayStatement = connection.createStatement()) {
+			for (int i = 0; i < chunk.size(); i++) {
+				try {
+					executeSql(connection, replayStatement, chunk.get(i));
+				} catch (SQLException e) {
+					connection.commit();
+					committed(chunkStart, chunkStart + i - 1);
+					throw new ScriptException(chunkStart + i, e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Execute a statement alone, binding its values when it is too long to be sent as text.
+	 */
+	private void executeSql(Connection connection, Statement statement, String sql) throws SQLException {
+		BulkInsert.Row row = sql.length() > MAX_LITERALS_LENGTH ? BulkInsert.parse(sql, database.getDialect()) : null;
+
+		if (row == null) {
+			database.executeSql(sql, statement);
+		} else {
+			BulkInsert bulkInsert = new BulkInsert(database.getDialect());
+			bulkInsert.add(row);
+			bulkInsert.execute(connection);
+		}
+	}
+
+	private void rollback(Connection connection) {
+		try {
+			connection.rollback();
+		} catch (SQLException e) {
+			// the failure being reported is more relevant
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package infradev.lumis.lumisportalinstaller.database;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Properties;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.BoundType;
+import com.google.common.collect.DiscreteDomain;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeSet;
+import com.google.common.collect.TreeRangeSet;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+/**
+ * A checkpoint journal of the statements of a script committed on the database, so a failed execution can be resumed.
+ *
+ * The journal keeps the digest of the script and the positions of the committed statements; a journal of another version of the script
+ * is ignored. It is saved and synced to the disk on every commit recorded, so after a crash it is behind the database by at most the commit
+ * that was being recorded.
+ *
+ * @author Alexandre Ribeiro de Souza
+ */
+public class ScriptJournal {
+
+	private final File file;
+	private final String digest;
+	private final RangeSet<Integer> committed = TreeRangeSet.create();
+
+	/**
+	 * Open the journal of a script, loading the positions committed by a previous execution of the same script.
+	 *
+	 * @param file
+	 *            The journal file.
+	 * @param script
+	 *            The script.
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	public ScriptJournal(File file, File script) throws IOException {
+		this.file = file;
+		this.digest = Files.hash(script, Hashing.sha256()).toString();
+
+		if (file.exists()) {
+			Properties properties = new Properties();
+			try (Reader reader = Files.newReader(file, Charsets.UTF_8)) {
+				properties.load(reader);
+			}
+
+			if (digest.equals(properties.getProperty("digest"))) {
+				for (String range : Splitter.on(',').omitEmptyStrings().split(properties.getProperty("committed", ""))) {
+					int separator = range.indexOf('-');
+					committed.add(Range.closed(Integer.valueOf(range.substring(0, separator)), Integer.valueOf(range.substring(separator + 1)))
+							.canonical(DiscreteDomain.integers()));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the last position of the statements committed from the start of the script.
+	 *
+	 * @return The position, or 0 if the first statement was not committed.
+	 */
+	public synchronized int getCommitted() {
+		Range<Integer> first = committed.rangeContaining(1);
+
+		return first == null ? 0 : last(first);
+	}
+
+	/**
+	 * Verify if the journal has no statement committed by a previous execution of the same script.
+	 *
+	 * @return true if there is nothing to resume.
+	 */
+	public synchronized boolean isEmpty() {
+		return committed.isEmpty();
+	}
+
+	/**
+	 * Verify if a statement was committed.
+	 *
+	 * @param position
+	 *            The position of the statement, starting at 1.
+	 * @return true if the statement was committed.
+	 */
+	public synchronized boolean isCommitted(int position) {
+		return committed.contains(position);
+	}
+
+	/**
+	 * Record statements as committed, saving the journal.
+	 *
+	 * @param first
+	 *            The position of the first statement.
+	 * @param last
+	 *            The position of the last statement.
+	 * @throws IOException
+	 *             When the journal can not be saved.
+	 */
+	public synchronized void committed(int first, int last) throws IOException {
+		if (first > last) {
+			return;
+		}
+
+		committed.add(Range.closed(first, last).canonical(DiscreteDomain.integers()));
+		flush();
+	}
+
+	/**
+	 * Save the journal.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	public synchronized void flush() throws IOException {
+		List<String> ranges = Lists.newArrayList();
+		for (Range<Integer> range : committed.asRanges()) {
+			ranges.add(range.lowerEndpoint() + "-" + last(range));
+		}
+
+		Properties properties = new Properties();
+		properties.setProperty("digest", digest);
+		properties.setProperty("committed", Joiner.on(',').join(ranges));
+
+		Files.createParentDirs(file);
+		File temporaryFile = new File(file.getPath() + ".tmp");
+		try (FileOutputStream out = new FileOutputStream(temporaryFile)) {
+			Writer writer = new OutputStreamWriter(out, Charsets.UTF_8);
+			properties.store(writer, "Statements of the script committed on the database");
+			writer.flush();
+			out.getFD().sync();
+		}
+		java.nio.file.Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Delete the journal, after the whole script is committed.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	public synchronized void delete() throws IOException {
+		committed.clear();
+		java.nio.file.Files.deleteIfExists(file.toPath());
+	}
+
+	private static int last(Range<Integer> range) {
+		return range.upperBoundType() == BoundType.OPEN ? range.upperEndpoint() - 1 : range.upperEndpoint();
+	}
+}
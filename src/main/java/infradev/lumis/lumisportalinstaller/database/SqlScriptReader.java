@@ -0,0 +1,369 @@
+package infradev.lumis.lumisportalinstaller.database;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.AbstractIterator;
+
+/**
+ * A streaming reader of the statements of a SQL script, that keeps in memory only the statement being read.
+ *
+ * Statements end with the delimiter, ';' by default, outside of string literals, quoted identifiers and comments. Comments ('--', '/* *&#47;'
+ * and '#' on MySQL) are removed. A MySQL {@code DELIMITER} line changes the delimiter, a {@code GO} line ends a SQL Server batch and a '/'
+ * line ends an Oracle PL/SQL block; inside PL/SQL blocks and SQL Server procedures the ';' does not end the statement. Lines starting with
+ * {@code PRINT} between statements are skipped. Line ends are read as '\n', except inside quoted literals, where a "\r\n" is kept as it is.
+ *
+ * @author Alexandre Ribeiro de Souza
+ */
+public class SqlScriptReader extends AbstractIterator<String> implements Closeable {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final Reader reader;
+	private final boolean isMySql;
+	private final boolean hasBackslashEscapes;
+	private final boolean isOracle;
+	private final boolean isSqlServer;
+	private final char[] buffer = new char[BUFFER_SIZE];
+	private final StringBuilder line = new StringBuilder();
+	private final StringBuilder statement = new StringBuilder();
+	private int position;
+	private int limit;
+	private String delimiter = ";";
+	private char quote;
+	private boolean inBlockComment;
+	private boolean eof;
+	private boolean pending;
+	private boolean crlf;
+	private int lineNumber;
+
+	/**
+	 * Create a reader of a script.
+	 *
+	 * @param reader
+	 *            The script.
+	 * @param dialect
+	 *            The database type, MYSQL, ORACLE, SQLSERVER or H2.
+	 */
+	public SqlScriptReader(Reader reader, String dialect) {
+		this.reader = reader;
+		this.isMySql = "MYSQL".equalsIgnoreCase(dialect) || "H2".equalsIgnoreCase(dialect);
+		this.hasBackslashEscapes = "MYSQL".equalsIgnoreCase(dialect);
+		this.isOracle = "ORACLE".equalsIgnoreCase(dialect);
+		this.isSqlServer = "SQLSERVER".equalsIgnoreCase(dialect);
+	}
+
+	/**
+	 * Open a script file, decompressing it when the name ends with .gz.
+	 *
+	 * @param file
+	 *            The script file, in UTF-8.
+	 * @param dialect
+	 *            The database type, MYSQL, ORACLE, SQLSERVER or H2.
+	 * @return The reader.
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	public static SqlScriptReader open(File file, String dialect) throws IOException {
+		InputStream in = new BufferedInputStream(Channels.newInputStream(FileChannel.open(file.toPath(), StandardOpenOption.READ)), BUFFER_SIZE);
+
+		try {
+			if (file.getName().endsWith(".gz")) {
+				in = new GZIPInputStream(in, BUFFER_SIZE);
+			}
+		} catch (IOException e) {
+			in.close();
+			throw e;
+		}
+
+		return new SqlScriptReader(new InputStreamReader(in, Charsets.UTF_8), dialect);
+	}
+
+	/**
+	 * Verify if a statement is an Oracle PL/SQL block, which keeps its trailing ';'.
+	 *
+	 * @param sql
+	 *            The statement.
+	 * @return true if the statement is an anonymous block or creates a procedure, function, trigger, package or type.
+	 */
+	public static boolean isPlsqlBlock(CharSequence sql) {
+		String[] words = firstWords(sql, 4);
+
+		if (words[0].equals("DECLARE") || words[0].equals("BEGIN")) {
+			return true;
+		}
+		if (!words[0].equals("CREATE")) {
+			return false;
+		}
+
+		String object = words[1].equals("OR") && words[2].equals("REPLACE") ? words[3] : words[1];
+
+		return object.equals("PROCEDURE") || object.equals("FUNCTION") || object.equals("TRIGGER") || object.equals("PACKAGE")
+				|| object.equals("TYPE");
+	}
+
+	/**
+	 * Get the number of the line being read.
+	 *
+	 * @return The line number, starting at 1.
+	 */
+	public int getLineNumber() {
+		return lineNumber;
+	}
+
+	/**
+	 * Read the next statement.
+	 *
+	 * @return The statement, without the delimiter, or null at the end of the script.
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	public String readStatement() throws IOException {
+		while (readLine()) {
+			String result = parseLine();
+			if (result != null) {
+				return result;
+			}
+		}
+
+		return emit();
+	}
+
+	@Override
+	protected String computeNext() {
+		try {
+			String result = readStatement();
+
+			return result != null ? result : endOfData();
+		} catch (IOException e) {
+			throw new ReadException(e);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	/**
+	 * Parse the current line, returning a statement when one ends on it. The rest of a line after a delimiter is kept for the next call.
+	 */
+	private String parseLine() {
+		if (quote == 0 && !inBlockComment) {
+			int start = 0;
+			int end = line.length();
+			while (start < end && Character.isWhitespace(line.charAt(start))) {
+				start++;
+			}
+			while (end > start && Character.isWhitespace(line.charAt(end - 1))) {
+				end--;
+			}
+
+			if (isStatementEmpty()) {
+				if (lineStartsWith(start, "DELIMITER ")) {
+					delimiter = line.substring(start + 10, end).trim();
+					consumeLine();
+					return null;
+				}
+				if (lineStartsWith(start, "PRINT")) {
+					consumeLine();
+					return null;
+				}
+			}
+			if ((end - start == 2 && lineStartsWith(start, "GO")) || (isOracle && end - start == 1 && line.charAt(start) == '/')) {
+				consumeLine();
+				return emit();
+			}
+		}
+
+		int length = line.length();
+		for (int i = 0; i < length; i++) {
+			char c = line.charAt(i);
+			char next = i + 1 < length ? line.charAt(i + 1) : 0;
+
+			if (inBlockComment) {
+				if (c == '*' && next == '/') {
+					inBlockComment = false;
+					statement.append(' ');
+					i++;
+				}
+			} else if (quote != 0) {
+				statement.append(c);
+				if (c == quote) {
+					if (next == quote) {
+						statement.append(next);
+						i++;
+					} else {
+						quote = 0;
+					}
+				} else if (c == '\\' && hasBackslashEscapes && quote != '`' && next != 0) {
+					statement.append(next);
+					i++;
+				}
+			} else if ((c == '-' && next == '-') || (c == '#' && isMySql)) {
+				break;
+			} else if (c == '/' && next == '*') {
+				inBlockComment = true;
+				i++;
+			} else if (c == '\'' || c == '"' || (c == '`' && isMySql)) {
+				quote = c;
+				statement.append(c);
+			} else if (c == delimiter.charAt(0) && line.indexOf(delimiter, i) == i && !isBlock()) {
+				line.delete(0, i + delimiter.length());
+				pending = line.length() > 0;
+				String result = emit();
+				if (result != null || !pending) {
+					return result;
+				}
+				return parseLine();
+			} else {
+				statement.append(c);
+			}
+		}
+
+		consumeLine();
+		if (statement.length() > 0) {
+			statement.append(quote != 0 && crlf ? "\r\n" : "\n");
+		}
+
+		return null;
+	}
+
+	private void consumeLine() {
+		line.setLength(0);
+		pending = false;
+	}
+
+	private boolean isBlock() {
+		if (isOracle && delimiter.equals(";")) {
+			return isPlsqlBlock(statement);
+		}
+		if (isSqlServer && delimiter.equals(";")) {
+			String[] words = firstWords(statement, 4);
+			String object = words[0].equals("CREATE") || words[0].equals("ALTER") ? (words[1].equals("OR") ? words[3] : words[1]) : "";
+
+			return object.equals("PROCEDURE") || object.equals("PROC") || object.equals("FUNCTION") || object.equals("TRIGGER");
+		}
+
+		return false;
+	}
+
+	private String emit() {
+		int start = 0;
+		int end = statement.length();
+		while (start < end && Character.isWhitespace(statement.charAt(start))) {
+			start++;
+		}
+		while (end > start && Character.isWhitespace(statement.charAt(end - 1))) {
+			end--;
+		}
+
+		String result = start < end ? statement.substring(start, end) : null;
+		statement.setLength(0);
+
+		return result;
+	}
+
+	private boolean isStatementEmpty() {
+		for (int i = 0; i < statement.length(); i++) {
+			if (!Character.isWhitespace(statement.charAt(i))) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private boolean lineStartsWith(int start, String prefix) {
+		return line.length() - start >= prefix.length() && line.substring(start, start + prefix.length()).equalsIgnoreCase(prefix);
+	}
+
+	/**
+	 * Read the next line to the line buffer, unless it still has the rest of a line.
+	 */
+	private boolean readLine() throws IOException {
+		if (pending) {
+			return true;
+		}
+		if (eof) {
+			return false;
+		}
+
+		lineNumber++;
+		while (true) {
+			if (position == limit) {
+				limit = reader.read(buffer, 0, buffer.length);
+				position = 0;
+				if (limit <= 0) {
+					limit = 0;
+					eof = true;
+					crlf = false;
+					pending = line.length() > 0;
+					return pending;
+				}
+			}
+
+			int start = position;
+			while (position < limit && buffer[position] != '\n') {
+				position++;
+			}
+			line.append(buffer, start, position - start);
+
+			if (position < limit) {
+				position++;
+				crlf = line.length() > 0 && line.charAt(line.length() - 1) == '\r';
+				if (crlf) {
+					line.setLength(line.length() - 1);
+				}
+				pending = true;
+				return true;
+			}
+		}
+	}
+
+	private static String[] firstWords(CharSequence sql, int count) {
+		String[] words = new String[count];
+		int i = 0;
+
+		for (int w = 0; w < count; w++) {
+			while (i < sql.length() && !Character.isLetter(sql.charAt(i))) {
+				i++;
+			}
+			int start = i;
+			while (i < sql.length() && Character.isLetter(sql.charAt(i))) {
+				i++;
+			}
+			words[w] = sql.subSequence(start, i).toString().toUpperCase(Locale.ENGLISH);
+		}
+
+		return words;
+	}
+
+	/**
+	 * Carries an IOException out of the iterator.
+	 */
+	public static class ReadException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		private ReadException(IOException cause) {
+			super(cause);
+		}
+
+		@Override
+		public synchronized IOException getCause() {
+			return (IOException) super.getCause();
+		}
+	}
+}
@@ -3,18 +3,22 @@ package infradev.lumis.lumisportalinstaller.javaserver;
 import infradev.lumis.lumisportalinstaller.common.AbstractInstaller;
 import infradev.lumis.lumisportalinstaller.common.PathEnum;
 import infradev.lumis.lumisportalinstaller.common.inject.annotation.Logged;
+import infradev.lumis.lumisportalinstaller.common.tools.Log;
+import infradev.lumis.lumisportalinstaller.common.tools.PathFilter;
+import infradev.lumis.lumisportalinstaller.common.tools.ProcessRunner;
+import infradev.lumis.lumisportalinstaller.common.tools.TaskGraph;
+import infradev.lumis.lumisportalinstaller.common.tools.WarBuilder;
 import infradev.lumis.lumisportalinstaller.database.AbstractDatabase;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.concurrent.Future;
+import java.util.zip.ZipException;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 
-import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.io.Files;
 
@@ -47,6 +51,96 @@ public abstract class AbstractJavaServer extends AbstractInstaller {
 		configureFile_Permission();
 	}
 
+	@Override
+	public void schedule(TaskGraph taskGraph) {
+		taskGraph.add("extract javaserver", new TaskGraph.Task() {
+			@Override
+			public void run() throws IOException {
+				extract();
+			}
+		}).produces(JAVASERVER_EXTRACTED);
+		taskGraph.add("copy lumisportal files", new TaskGraph.Task() {
+			@Override
+			public void run() throws IOException {
+				copyLumisportal_Files();
+			}
+		}).consumes(getLumisportalFilesInputs()).produces(JAVASERVER_LIBS);
+
+		TaskGraph.Node configureJavaServer = taskGraph.add("configure javaserver", new TaskGraph.Task() {
+			@Override
+			public void run() throws IOException {
+				configureJavaServer();
+			}
+		}).consumes(JAVASERVER_EXTRACTED, JAVASERVER_LIBS).produces(JAVASERVER_CONFIGURED);
+		taskGraph.add("configure file permission", new TaskGraph.Task() {
+			@Override
+			public void run() throws IOException {
+				configureFile_Permission();
+			}
+		}).consumes(JAVASERVER_CONFIGURED);
+
+		if (deployAsWar) {
+			taskGraph.add("create lumisportal.war", new TaskGraph.Task() {
+				@Override
+				public void run() throws IOException {
+					createLumisportalWar();
+				}
+			}).consumes(JAVASERVER_LIBS, LUMISPORTAL_INITIALIZED).produces(LUMISPORTAL_WAR);
+			taskGraph.add("clean lumisportal installation", new TaskGraph.Task() {
+				@Override
+				public void run() throws IOException {
+					cleanLumisportal_Installation();
+				}
+			}).consumes(LUMISPORTAL_WAR, HTDOCS);
+			configureJavaServer.consumes(LUMISPORTAL_WAR);
+		}
+	}
+
+	/**
+	 * Get the resources needed to copy the Lumis Portal files to the JavaServer.
+	 *
+	 * @return Names of the resources.
+	 */
+	protected String[] getLumisportalFilesInputs() {
+		return new String[] { LUMISPORTAL_EXTRACTED, JAVASERVER_EXTRACTED };
+	}
+
+	/**
+	 * Get the command that links the Lumis Portal context root into the JavaServer.
+	 * 
+	 * @param contextRootFile
+	 *            The www directory or the lumisportal.war file.
+	 * @param link
+	 *            The link to be created.
+	 * @return The command and its arguments.
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	protected List<String> getLinkCommand(File contextRootFile, File link) throws IOException {
+		if (isWindows) {
+			return deployAsWar ? Lists.newArrayList("cmd", "/c", "mklink", link.getCanonicalPath(), contextRootFile.getCanonicalPath())
+					: Lists.newArrayList("cmd", "/c", "mklink", "/D", link.getCanonicalPath(), contextRootFile.getCanonicalPath());
+		}
+
+		return Lists.newArrayList("ln", "-s", contextRootFile.getCanonicalPath(), link.getCanonicalPath());
+	}
+
+	/**
+	 * Wait for a command of {@link #getLinkCommand(File, File)}.
+	 * 
+	 * @param future
+	 *            The future result of the command.
+	 * @throws IOException
+	 *             When the link is not created, with the last lines of the output of the command.
+	 */
+	protected void awaitLink(Future<ProcessRunner.Result> future) throws IOException {
+		ProcessRunner.Result result = injector.getInstance(ProcessRunner.class).get(future);
+
+		if (!result.isSuccessful()) {
+			throw new IOException(result.getReport());
+		}
+	}
+
 	/**
 	 * Copy Lumis Portal shared and embedded files to JavaServer.
 	 * 
@@ -64,7 +158,8 @@ public abstract class AbstractJavaServer extends AbstractInstaller {
 	protected abstract void configureJavaServer() throws IOException;
 
 	/**
-	 * Create lumisportal.war file.
+	 * Create lumisportal.war file. With repack the entries of the files left unchanged on the www directory are copied compressed from the
+	 * Lumis Portal installation file, and the files added, removed or changed by the installer are found by comparing the two.
 	 * 
 	 * @throws IOException
 	 *             Throws IOException.
@@ -72,18 +167,40 @@ public abstract class AbstractJavaServer extends AbstractInstaller {
 	@Logged
 	protected void createLumisportalWar() throws IOException {
 		File wwwDir = PathEnum.LUMISPORTAL_DIR_WWW.getFile();
-		List<File> fileList = Files.fileTreeTraverser().preOrderTraversal(wwwDir).toList();
-
-		try (ZipOutputStream zos = new ZipOutputStream(Files.asByteSink(PathEnum.LUMISPORTAL_FILE_WAR.getFile()).openBufferedStream())) {
-			for (File file : fileList) {
-				if (file.isFile()) {
-					String fileName = getPath(file).replace(getPath(wwwDir) + "/", "");
-					zos.putNextEntry(new ZipEntry(fileName));
-					Files.asByteSource(file).copyTo(zos);
-					zos.closeEntry();
-				}
+		File warFile = PathEnum.LUMISPORTAL_FILE_WAR.getFile();
+
+		WarBuilder warBuilder = injector.getInstance(WarBuilder.class);
+		warBuilder.setThreads(threads);
+		warBuilder.setLevel(compressionLevel);
+
+		if (repackWar) {
+			try {
+				warBuilder.repack(getLocalFile(lumisportalInstallFile), "www/", new PathFilter().exclude(getLumisportalIgnoreMatch()), wwwDir,
+						getChangedWwwPaths(), warFile);
+				return;
+			} catch (ZipException e) {
+				Log.warn(String.format("  |- Unable to repack %s, compressing %s: %s", lumisportalInstallFile, getPath(wwwDir), e.getLocalizedMessage()));
 			}
 		}
+
+		warBuilder.build(wwwDir, new PathFilter(), warFile);
+	}
+
+	/**
+	 * Get the paths of the www directory that the installer may change without changing their size.
+	 * 
+	 * @return Paths relative to the www directory.
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	protected List<String> getChangedWwwPaths() throws IOException {
+		List<String> paths = Lists.newArrayList();
+
+		for (PathEnum pathEnum : new PathEnum[] { PathEnum.LUMISPORTAL_FILE_WEBXML, PathEnum.LUMISPORTAL_FILE_JBOSSWEBXML }) {
+			paths.add(pathEnum.getPath().substring(PathEnum.LUMISPORTAL_DIR_WWW.getPath().length() + 1));
+		}
+
+		return paths;
 	}
 
 	/**
@@ -94,10 +211,10 @@ public abstract class AbstractJavaServer extends AbstractInstaller {
 	 */
 	@Logged
 	protected void cleanLumisportal_Installation() throws IOException {
-		List<String> mustExist = Lists.newArrayList("lumisdata", "lumisportal.war");
+		PathFilter pathFilter = new PathFilter().exclude("glob:lumisdata").exclude("glob:lumisportal.war");
 
 		for (File file : PathEnum.LUMISPORTAL_DIR.getFile().listFiles()) {
-			if (!Iterables.contains(mustExist, file.getName())) {
+			if (pathFilter.matches(file.getName())) {
 				if (file.isDirectory()) {
 					deleteDirectory(file);
 				} else {
@@ -115,7 +232,12 @@ public abstract class AbstractJavaServer extends AbstractInstaller {
 	 */
 	@Logged
 	protected void configureFile_Permission() throws IOException {
-		for (File file : PathEnum.JAVASERVER_BIN_DIR.getFile().listFiles()) {
+		File[] files = PathEnum.JAVASERVER_BIN_DIR.getFile().listFiles();
+		if (files == null) {
+			return;
+		}
+
+		for (File file : files) {
 			if (Files.getFileExtension(getPath(file)).equalsIgnoreCase("sh")) {
 				file.setExecutable(true, false);
 			}
@@ -1,5 +1,7 @@
 package infradev.lumis.lumisportalinstaller.javaserver;
 
+import infradev.lumis.lumisportalinstaller.common.tools.TaskGraph;
+
 import java.io.IOException;
 
 import javax.inject.Named;
@@ -20,6 +22,13 @@ public class NoJavaServerImpl extends AbstractJavaServer {
 	protected void configure() throws IOException {
 	}
 
+	/**
+	 * There is no JavaServer to install, so no task is added.
+	 */
+	@Override
+	public void schedule(TaskGraph taskGraph) {
+	}
+
 	@Override
 	protected void copyLumisportal_Files() throws IOException {
 	}
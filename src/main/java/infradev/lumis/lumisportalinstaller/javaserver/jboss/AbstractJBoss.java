@@ -3,13 +3,15 @@ package infradev.lumis.lumisportalinstaller.javaserver.jboss;
 import infradev.lumis.lumisportalinstaller.common.PathEnum;
 import infradev.lumis.lumisportalinstaller.common.ResourceEnum;
 import infradev.lumis.lumisportalinstaller.common.inject.annotation.Logged;
+import infradev.lumis.lumisportalinstaller.common.tools.ProcessRunner;
+import infradev.lumis.lumisportalinstaller.common.tools.XmlPatch;
 import infradev.lumis.lumisportalinstaller.javaserver.AbstractJavaServer;
 
 import java.io.File;
 import java.io.IOException;
-import java.net.URL;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
 
 import com.google.common.base.Ascii;
 import com.google.common.base.Charsets;
@@ -66,7 +68,7 @@ public abstract class AbstractJBoss extends AbstractJavaServer {
 	protected void configureMysql_Module() throws IOException {
 		File file = PathEnum.JBOSS_FILE_MYSQLDRIVERMODULEXML.getFile();
 
-		File mysqlDriverFile = (mysqldriverFile.startsWith("http") || mysqldriverFile.startsWith("ftp")) ? downloadFile(new URL(mysqldriverFile)) : new File(mysqldriverFile);
+		File mysqlDriverFile = getLocalFile(mysqldriverFile);
 		String mysqlDriverFileName = mysqlDriverFile.getName();
 
 		List<String> lines = Files.readLines(file, Charsets.UTF_8);
@@ -106,21 +108,7 @@ public abstract class AbstractJBoss extends AbstractJavaServer {
 
 		File warFile = new File(String.format(PathEnum.JBOSS_FILE_STANDALONEWAR.getPath(), getContextName()));
 
-		String format = "ln -s %1$s %2$s";
-		if (isWindows) {
-			if (deployAsWar) {
-				format = "cmd /c mklink %2$s %1$s";
-			} else {
-				format = "cmd /c mklink /D %2$s %1$s";
-			}
-		}
-
-		String command = String.format(format, contextRootFile.getCanonicalPath(), warFile.getCanonicalPath());
-
-		executeCommand(command);
-
-		File warDoDeployFile = new File(getPath(warFile) + ".dodeploy");
-		warDoDeployFile.createNewFile();
+		Future<ProcessRunner.Result> standaloneLink = submitCommand(getLinkCommand(contextRootFile, warFile));
 
 		if (deployAsWar) {
 			sha1 = Files.hash(contextRootFile, Hashing.sha1()).toString();
@@ -130,10 +118,13 @@ public abstract class AbstractJBoss extends AbstractJavaServer {
 			File contentFile = new File(String.format(PathEnum.JBOSS_FILE_DOMAINWAR.getPath(), firstPart, secondPart));
 			Files.createParentDirs(contentFile);
 
-			command = String.format(format, contextRootFile.getCanonicalPath(), contentFile.getCanonicalPath());
-
-			executeCommand(command);
+			awaitLink(submitCommand(getLinkCommand(contextRootFile, contentFile)));
 		}
+
+		awaitLink(standaloneLink);
+
+		File warDoDeployFile = new File(getPath(warFile) + ".dodeploy");
+		warDoDeployFile.createNewFile();
 	}
 
 	/**
@@ -177,42 +168,27 @@ public abstract class AbstractJBoss extends AbstractJavaServer {
 		for (String profile : profiles) {
 			File file = new File(String.format(PathEnum.JBOSS_FILE_PROFILEXML.getPath(), profile));
 
-			List<String> lines = Files.readLines(file, Charsets.UTF_8);
-
-			for (int i = 0; i < lines.size(); i++) {
-				String line = lines.get(i);
-
-				if (line.contains("jboss:domain:ee")) {
-					if (line.endsWith("/>")) {
-						lines.set(i, line.replace("/>", ">"));
-						lines.add(i + 1, "        </subsystem>");
-					}
-					lines.addAll(i + 1, ResourceEnum.JBOSS_JBOSSDOMAINEE_PART.getList());
-				} else if (line.contains("jboss:domain:deployment-scanner")) {
-					lines.set(i + 1, lines.get(i + 1).replace("/>", " deployment-timeout=\"300\"/>"));
-				} else if (line.contains("jboss:domain:jaxrs") || line.contains("org.jboss.as.jaxrs") || line.contains("org.jboss.as.webservices")) {
-					lines.remove(i);
-				} else if (line.contains("jboss:domain:webservices")) {
-					removeIndexUntilMatch(lines, i, "</subsystem>");
-				} else if (line.contains("jboss:domain:security")) {
-					lines.addAll(i + 2, ResourceEnum.JBOSS_JBOSSDOMAINSECURITY_PART.getList());
-				} else if (line.contains("enable-welcome-root=\"true\"")) {
-					lines.set(i, lines.get(i).replace("enable-welcome-root=\"true\"", "enable-welcome-root=\"false\""));
-				} else if (profile.equals("standalone") && line.contains("</extensions>")) {
-					lines.addAll(i + 1, ResourceEnum.JBOSS_SYSTEMPROPERTIES_PART.getList());
-				} else if (line.contains("<datasources>")) {
-					lines.addAll(i + 1, ResourceEnum.JBOSS_DATASOURCE_PART.getList());
-				} else if (line.contains("<drivers>")) {
-					lines.addAll(i + 1, ResourceEnum.JBOSS_DRIVER_PART.getList());
-				} else if (line.contains("</socket-binding-groups>")) {
-					lines.addAll(i + 1, ResourceEnum.JBOSS_DEPLOYMENT_PART.getList());
-				} else if (line.contains("<server-groups>")) {
-					removeIndexUntilMatch(lines, i, "</server-groups>");
-					lines.addAll(i, ResourceEnum.JBOSS_SERVERGROUPS_PART.getList());
-				}
+			XmlPatch xmlPatch = new XmlPatch();
+			xmlPatch.insertFirst("//subsystem[starts-with(@xmlns,'urn:jboss:domain:ee:')]",
+					applyTemplateModel(ResourceEnum.JBOSS_JBOSSDOMAINEE_PART, model));
+			xmlPatch.setAttribute("//subsystem[starts-with(@xmlns,'urn:jboss:domain:deployment-scanner:')]/deployment-scanner",
+					"deployment-timeout", "300");
+			xmlPatch.remove("//extension[@module='org.jboss.as.jaxrs']");
+			xmlPatch.remove("//extension[@module='org.jboss.as.webservices']");
+			xmlPatch.remove("//subsystem[starts-with(@xmlns,'urn:jboss:domain:jaxrs:')]");
+			xmlPatch.remove("//subsystem[starts-with(@xmlns,'urn:jboss:domain:webservices:')]");
+			xmlPatch.insertFirst("//subsystem[starts-with(@xmlns,'urn:jboss:domain:security:')]/security-domains",
+					applyTemplateModel(ResourceEnum.JBOSS_JBOSSDOMAINSECURITY_PART, model));
+			xmlPatch.setAttribute("//virtual-server[@enable-welcome-root='true']", "enable-welcome-root", "false");
+			if (profile.equals("standalone")) {
+				xmlPatch.insertAfter("/server/extensions", applyTemplateModel(ResourceEnum.JBOSS_SYSTEMPROPERTIES_PART, model));
 			}
-			String str = applyTemplateModel(Joiner.on((char) Ascii.LF).join(lines), model);
-			saveToFile(str, file);
+			xmlPatch.insertFirst("//datasources", applyTemplateModel(ResourceEnum.JBOSS_DATASOURCE_PART, model));
+			xmlPatch.insertFirst("//drivers", applyTemplateModel(ResourceEnum.JBOSS_DRIVER_PART, model));
+			xmlPatch.insertAfter("/domain/socket-binding-groups", applyTemplateModel(ResourceEnum.JBOSS_DEPLOYMENT_PART, model));
+			xmlPatch.replace("/domain/server-groups", applyTemplateModel(ResourceEnum.JBOSS_SERVERGROUPS_PART, model));
+
+			patchXmlFile(xmlPatch, file);
 		}
 	}
 
@@ -229,18 +205,10 @@ public abstract class AbstractJBoss extends AbstractJavaServer {
 		Map<String, Object> model = Maps.newHashMap();
 		model.put("lumisDataPath", PathEnum.LUMISPORTAL_DIR_LUMISDATA.getPath());
 
-		List<String> lines = Files.readLines(file, Charsets.UTF_8);
-		for (int i = 0; i < lines.size(); i++) {
-			String line = lines.get(i);
-
-			if (line.contains("<servers>")) {
-				removeIndexUntilMatch(lines, i, "</servers>");
-				lines.addAll(i, ResourceEnum.JBOSS_SERVERS_PART.getList());
-			}
-		}
+		XmlPatch xmlPatch = new XmlPatch();
+		xmlPatch.replace("/host/servers", applyTemplateModel(ResourceEnum.JBOSS_SERVERS_PART, model));
 
-		String str = applyTemplateModel(Joiner.on((char) Ascii.LF).join(lines), model);
-		saveToFile(str, file);
+		patchXmlFile(xmlPatch, file);
 	}
 
 	/**
@@ -289,7 +257,6 @@ public abstract class AbstractJBoss extends AbstractJavaServer {
 			lines.set(i, line);
 		}
 
-		String str = applyTemplateModel(Joiner.on((char) Ascii.LF).join(lines), model);
-		saveToFile(str, file);
+		applyTemplateModel(Joiner.on((char) Ascii.LF).join(lines), model, file);
 	}
 }
@@ -3,6 +3,7 @@ package infradev.lumis.lumisportalinstaller.javaserver.jboss;
 import infradev.lumis.lumisportalinstaller.common.PathEnum;
 import infradev.lumis.lumisportalinstaller.common.ResourceEnum;
 import infradev.lumis.lumisportalinstaller.common.inject.annotation.Logged;
+import infradev.lumis.lumisportalinstaller.common.tools.XmlPatch;
 import infradev.lumis.lumisportalinstaller.javaserver.tomcat.AbstractTomcat;
 
 import java.io.File;
@@ -16,6 +17,7 @@ import javax.inject.Named;
 import com.google.common.base.Ascii;
 import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.io.Files;
@@ -29,7 +31,7 @@ import com.google.common.io.Files;
 public class JBoss5Impl extends AbstractTomcat {
 
 	public JBoss5Impl() {
-		connectorConfig = "maxPostSize=\"2097152\" emptySessionPath=\"true\" URIEncoding=\"UTF-8\" redirectPort=";
+		connectorAttributes = ImmutableMap.of("maxPostSize", "2097152", "emptySessionPath", "true", "URIEncoding", "UTF-8");
 	}
 
 	@Override
@@ -59,6 +61,14 @@ public class JBoss5Impl extends AbstractTomcat {
 		}
 	}
 
+	/**
+	 * The jars moved and deleted from the context lib are on the classpath of initializeportal, so they are copied after it.
+	 */
+	@Override
+	protected String[] getLumisportalFilesInputs() {
+		return new String[] { LUMISPORTAL_EXTRACTED, LUMISPORTAL_INITIALIZED, JAVASERVER_EXTRACTED };
+	}
+
 	@Override
 	protected String getSharedDir() {
 		return "server/default/lib";
@@ -124,8 +134,7 @@ public class JBoss5Impl extends AbstractTomcat {
 			lines.set(i, line);
 		}
 
-		String str = applyTemplateModel(Joiner.on((char) Ascii.LF).join(lines), model);
-		saveToFile(str, file);
+		applyTemplateModel(Joiner.on((char) Ascii.LF).join(lines), model, file);
 	}
 
 	/**
@@ -138,21 +147,17 @@ public class JBoss5Impl extends AbstractTomcat {
 	protected void configureLoginconfigXml() throws IOException {
 		File file = new File(PathEnum.JAVASERVER_DIR.getFile(), "server/default/conf/login-config.xml");
 
-		List<String> lines = Files.readLines(file, Charsets.UTF_8);
-		for (int i = 0; i < lines.size(); i++) {
-			if (lines.get(i).equalsIgnoreCase("</policy>")) {
-				StringBuilder sb = new StringBuilder();
-				sb.append("  <application-policy name=\"LumisPortal\">\n");
-				sb.append("    <authentication>\n");
-				sb.append("      <login-module code=\"lumis.portal.authentication.LumisLoginModule\" flag=\"sufficient\"/>\n");
-				sb.append("    </authentication>\n");
-				sb.append("  </application-policy>\n");
-				sb.append("\n</policy>\n");
-				lines.set(i, sb.toString());
-			}
-		}
+		StringBuilder sb = new StringBuilder();
+		sb.append("  <application-policy name=\"LumisPortal\">\n");
+		sb.append("    <authentication>\n");
+		sb.append("      <login-module code=\"lumis.portal.authentication.LumisLoginModule\" flag=\"sufficient\"/>\n");
+		sb.append("    </authentication>\n");
+		sb.append("  </application-policy>\n");
 
-		saveToFile(lines, file);
+		XmlPatch xmlPatch = new XmlPatch();
+		xmlPatch.insertLast("/policy", sb.toString());
+
+		patchXmlFile(xmlPatch, file);
 	}
 
 	/**
@@ -186,17 +191,13 @@ public class JBoss5Impl extends AbstractTomcat {
 		String hostName = InetAddress.getLocalHost().getHostName();
 		int portOffSet = frameworkUrl.getPort() - 8080;
 
-		List<String> lines = Files.readLines(file, Charsets.UTF_8);
-		for (int i = 0; i < lines.size(); i++) {
-			lines.set(
-					i,
-					lines.get(i)
-							.replace("redirectPort=", connectorConfig)
-							.replace("defaultHost=\"localhost\">",
-									String.format("defaultHost=\"localhost\" jvmRoute=\"%s-%d\">", hostName, portOffSet)));
+		XmlPatch xmlPatch = new XmlPatch();
+		for (Map.Entry<String, String> attribute : connectorAttributes.entrySet()) {
+			xmlPatch.setAttribute("//Connector[@redirectPort]", attribute.getKey(), attribute.getValue());
 		}
+		xmlPatch.setAttribute("//Engine[@defaultHost='localhost']", "jvmRoute", String.format("%s-%d", hostName, portOffSet));
 
-		saveToFile(lines, file);
+		patchXmlFile(xmlPatch, file);
 	}
 
 	/**
@@ -218,18 +219,7 @@ public class JBoss5Impl extends AbstractTomcat {
 			}
 		}
 
-		String format = "ln -s %1$s %2$s";
-		if (isWindows) {
-			if (deployAsWar) {
-				format = "cmd /c mklink %2$s %1$s";
-			} else {
-				format = "cmd /c mklink /D %2$s %1$s";
-			}
-		}
-
-		String command = String.format(format, contextRootFile.getCanonicalPath(), warFile.getCanonicalPath());
-
-		executeCommand(command);
+		awaitLink(submitCommand(getLinkCommand(contextRootFile, warFile)));
 	}
 
 	/**
@@ -269,6 +259,6 @@ public class JBoss5Impl extends AbstractTomcat {
 		model.put("connectionValidator", connectionValidator);
 		model.put("databaseType", dbType);
 
-		saveToFile(applyTemplateModel(ResourceEnum.JBOSS5_LUMISPORTALDSXML.getText(), model), file);
+		applyTemplateModel(ResourceEnum.JBOSS5_LUMISPORTALDSXML, model, file);
 	}
 }
@@ -3,17 +3,16 @@ package infradev.lumis.lumisportalinstaller.javaserver.tomcat;
 import infradev.lumis.lumisportalinstaller.common.PathEnum;
 import infradev.lumis.lumisportalinstaller.common.ResourceEnum;
 import infradev.lumis.lumisportalinstaller.common.inject.annotation.Logged;
+import infradev.lumis.lumisportalinstaller.common.tools.XmlPatch;
 import infradev.lumis.lumisportalinstaller.javaserver.AbstractJavaServer;
 
 import java.io.File;
 import java.io.IOException;
 import java.net.InetAddress;
-import java.util.List;
 import java.util.Map;
 
-import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
-import com.google.common.io.Files;
 
 /**
  * Abstract class to Tomcat Java Servers.
@@ -22,7 +21,7 @@ import com.google.common.io.Files;
  */
 public abstract class AbstractTomcat extends AbstractJavaServer {
 
-	protected String connectorConfig = "maxPostSize=\"2097152\" URIEncoding=\"UTF-8\" redirectPort=";
+	protected Map<String, String> connectorAttributes = ImmutableMap.of("maxPostSize", "2097152", "URIEncoding", "UTF-8");
 
 	@Override
 	@Logged
@@ -77,7 +76,7 @@ public abstract class AbstractTomcat extends AbstractJavaServer {
 		model.put("databaseUsername", databaseUser);
 		model.put("databasePassword", databasePassword);
 
-		saveToFile(applyTemplateModel(ResourceEnum.TOMCAT_PORTALXML.getText(), model), contextFile);
+		applyTemplateModel(ResourceEnum.TOMCAT_PORTALXML, model, contextFile);
 	}
 
 	/**
@@ -95,19 +94,16 @@ public abstract class AbstractTomcat extends AbstractJavaServer {
 		int shutdownPort = 8005 - portOffSet;
 		int ajpPort = 8009 - portOffSet;
 
-		List<String> lines = Files.readLines(file, Charsets.UTF_8);
-		for (int i = 0; i < lines.size(); i++) {
-			lines.set(
-					i,
-					lines.get(i)
-							.replace("redirectPort=", connectorConfig)
-							.replace("defaultHost=\"localhost\">",
-									String.format("defaultHost=\"localhost\" jvmRoute=\"%s-%d\">", hostName, portOffSet))
-							.replace("8005", String.format("%d", shutdownPort)).replace("8080", String.format("%d", frameworkUrl.getPort()))
-							.replace("8009", String.format("%d", ajpPort)));
+		XmlPatch xmlPatch = new XmlPatch();
+		xmlPatch.setAttribute("/Server[@port='8005']", "port", String.valueOf(shutdownPort));
+		xmlPatch.setAttribute("//Connector[@port='8080']", "port", String.valueOf(frameworkUrl.getPort()));
+		xmlPatch.setAttribute("//Connector[@port='8009']", "port", String.valueOf(ajpPort));
+		for (Map.Entry<String, String> attribute : connectorAttributes.entrySet()) {
+			xmlPatch.setAttribute("//Connector[@redirectPort]", attribute.getKey(), attribute.getValue());
 		}
+		xmlPatch.setAttribute("//Engine[@defaultHost='localhost']", "jvmRoute", String.format("%s-%d", hostName, portOffSet));
 
-		saveToFile(lines, file);
+		patchXmlFile(xmlPatch, file);
 	}
 
 	/**
@@ -122,7 +118,7 @@ public abstract class AbstractTomcat extends AbstractJavaServer {
 		model.put("javaHome", getFormatedPath(System.getProperty("java.home")));
 		model.put("lumisDataPath", PathEnum.LUMISPORTAL_DIR_LUMISDATA.getPath());
 
-		saveToFile(applyTemplateModel(ResourceEnum.TOMCAT_SETENVBAT.getText(), model), PathEnum.TOMCAT_FILE_SETENVBAT.getFile());
-		saveToFile(applyTemplateModel(ResourceEnum.TOMCAT_SETENVSH.getText(), model), PathEnum.TOMCAT_FILE_SETENVSH.getFile());
+		applyTemplateModel(ResourceEnum.TOMCAT_SETENVBAT, model, PathEnum.TOMCAT_FILE_SETENVBAT.getFile());
+		applyTemplateModel(ResourceEnum.TOMCAT_SETENVSH, model, PathEnum.TOMCAT_FILE_SETENVSH.getFile());
 	}
 }
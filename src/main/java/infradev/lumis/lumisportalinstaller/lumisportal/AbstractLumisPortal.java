@@ -4,30 +4,35 @@ import infradev.lumis.lumisportalinstaller.common.AbstractInstaller;
 import infradev.lumis.lumisportalinstaller.common.PathEnum;
 import infradev.lumis.lumisportalinstaller.common.ResourceEnum;
 import infradev.lumis.lumisportalinstaller.common.inject.annotation.Logged;
+import infradev.lumis.lumisportalinstaller.common.tools.EntryTransformer;
 import infradev.lumis.lumisportalinstaller.common.tools.Log;
+import infradev.lumis.lumisportalinstaller.common.tools.PathFilter;
+import infradev.lumis.lumisportalinstaller.common.tools.ProcessRunner;
+import infradev.lumis.lumisportalinstaller.common.tools.TaskGraph;
+import infradev.lumis.lumisportalinstaller.common.tools.XmlPatch;
 import infradev.lumis.lumisportalinstaller.database.AbstractDatabase;
 
 import java.io.File;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.MalformedURLException;
-import java.net.URL;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 
+import com.google.common.base.Ascii;
 import com.google.common.base.Charsets;
-import com.google.common.base.Predicate;
-import com.google.common.base.Predicates;
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.io.Files;
-import com.google.common.io.PatternFilenameFilter;
 
 /**
  * Abstract class to Lumis Portal.
@@ -39,18 +44,64 @@ public class AbstractLumisPortal extends AbstractInstaller {
 	@Inject
 	@Named("${database.type:-MYSQL}")
 	protected AbstractDatabase database;
+	@Inject
+	@Named("${database.snapshot:-false}")
+	protected Boolean snapshot;
 
 	@Override
 	protected void extract() throws IOException {
-		unpackZipFile(lumisportalInstallFile, PathEnum.LUMISPORTAL_DIR.getFile(), extractDoc ? "" : "www/lumis/doc.*", false);
+		final String mysqlDriverFileName = getLocalFile(mysqldriverFile).getName();
+
+		transformOnExtract(getExtractPattern(PathEnum.LUMISPORTAL_FILE_WEBXML), new EntryTransformer() {
+			@Override
+			public void transform(File original, File file) throws IOException {
+				configureWebXml(original, file);
+			}
+		});
+		transformOnExtract(getExtractPattern(PathEnum.LUMISPORTAL_FILE_JBOSSWEBXML), new EntryTransformer() {
+			@Override
+			public void transform(File original, File file) throws IOException {
+				configureJbosswebXml(original, file);
+			}
+		});
+		transformOnExtract(getExtractPattern(PathEnum.LUMISPORTAL_FILE_LUMISPORTALCONFIGXML), new EntryTransformer() {
+			@Override
+			public void transform(File original, File file) throws IOException {
+				configureLumisportalconfigXml(original, file);
+			}
+		});
+		transformOnExtract(getExtractPattern(PathEnum.LUMISPORTAL_FILE_LUMISHIBERNATECFGXML), new EntryTransformer() {
+			@Override
+			public void transform(File original, File file) throws IOException {
+				configureLumishibernateCfgXml(original, file);
+			}
+		});
+		transformOnExtract(getExtractPattern(PathEnum.LUMISPORTAL_DIR_SETUP) + "/[^/]*\\.(sh|cmd|bat)", new EntryTransformer() {
+			@Override
+			public void transform(File original, File file) throws IOException {
+				configureSetup_File(original, file, mysqlDriverFileName);
+			}
+		});
+
+		unpackZipFile(lumisportalInstallFile, PathEnum.LUMISPORTAL_DIR.getFile(), getLumisportalIgnoreMatch(), false);
+	}
+
+	/**
+	 * Get the pattern of a path on the extraction of the Lumis Portal.
+	 *
+	 * @param pathEnum
+	 *            A path under the Lumis Portal directory.
+	 * @return Regex of the path, relative to the Lumis Portal directory.
+	 */
+	protected String getExtractPattern(PathEnum pathEnum) {
+		String path = PathEnum.LUMISPORTAL_DIR.getFile().toPath().relativize(pathEnum.getFile().toPath()).toString();
+
+		return Pattern.quote(path.replace(File.separatorChar, '/'));
 	}
 
 	@Override
 	protected void configure() throws IOException {
 		configureHtdocs();
-		configureWebXml();
-		configureJbosswebXml();
-		configureLumisportalconfigXml();
 		configureSetup_Files();
 
 		database.install();
@@ -59,6 +110,46 @@ public class AbstractLumisPortal extends AbstractInstaller {
 		initializePortal();
 	}
 
+	@Override
+	public void schedule(TaskGraph taskGraph) {
+		taskGraph.add("extract lumisportal", new TaskGraph.Task() {
+			@Override
+			public void run() throws IOException {
+				extract();
+			}
+		}).produces(LUMISPORTAL_EXTRACTED);
+		taskGraph.add("configure htdocs", new TaskGraph.Task() {
+			@Override
+			public void run() throws IOException {
+				configureHtdocs();
+			}
+		}).consumes(LUMISPORTAL_EXTRACTED).produces(HTDOCS);
+		taskGraph.add("configure setup files", new TaskGraph.Task() {
+			@Override
+			public void run() throws IOException {
+				configureSetup_Files();
+			}
+		}).consumes(LUMISPORTAL_EXTRACTED).produces(LUMISPORTAL_DRIVER);
+		taskGraph.add("install database", new TaskGraph.Task() {
+			@Override
+			public void run() throws IOException {
+				database.install();
+			}
+		}).produces(DATABASE);
+		taskGraph.add("configure lumishibernate.cfg.xml", new TaskGraph.Task() {
+			@Override
+			public void run() throws IOException {
+				configureLumishibernateCfgXml();
+			}
+		}).consumes(LUMISPORTAL_EXTRACTED).produces(LUMISPORTAL_HIBERNATE);
+		taskGraph.add("initialize portal", new TaskGraph.Task() {
+			@Override
+			public void run() throws IOException {
+				initializePortal();
+			}
+		}).consumes(DATABASE, LUMISPORTAL_DRIVER, LUMISPORTAL_HIBERNATE).produces(LUMISPORTAL_INITIALIZED);
+	}
+
 	/**
 	 * Configure htdocs directory.
 	 * 
@@ -67,155 +158,139 @@ public class AbstractLumisPortal extends AbstractInstaller {
 	 */
 	@Logged
 	protected void configureHtdocs() throws IOException {
-		File wwwLumisDir = PathEnum.LUMISPORTAL_DIR_STATICLUMIS.getFile();
-
-		Predicate<File> predicate = new Predicate<File>() {
-
-			@Override
-			public boolean apply(File input) {
-				boolean result = false;
-				try {
-					Predicate<CharSequence> ignorePatternPredicate = Predicates.containsPattern("www/lumis/doc.*");
-					Predicate<CharSequence> jspPredicate = Predicates.containsPattern(".jsp$");
-					Predicate<Object> isDirectoryPredicate = input.isDirectory() ? Predicates.alwaysFalse() : Predicates.alwaysTrue();
-					result = Predicates.and(Predicates.not(Predicates.or(ignorePatternPredicate, jspPredicate)), isDirectoryPredicate).apply(getPath(input));
-				} catch (IOException e) {
-				}
-				return result;
-			}
-		};
-		List<File> fileList = Files.fileTreeTraverser().preOrderTraversal(wwwLumisDir).filter(predicate).toList();
+		PathFilter pathFilter = new PathFilter().exclude("doc.*").exclude("glob:**.jsp");
 
-		for (File file : fileList) {
-			File newFile = new File(getPath(file).replace(PathEnum.LUMISPORTAL_DIR_STATICLUMIS.getPath(), PathEnum.HTDOCS_DIR_LUMIS.getPath()));
-			if (!newFile.getParentFile().exists()) {
-				Files.createParentDirs(newFile);
-			}
-			Files.copy(file, newFile);
-		}
+		copyDir(PathEnum.LUMISPORTAL_DIR_STATICLUMIS.getFile(), PathEnum.HTDOCS_DIR_LUMIS.getFile(), pathFilter);
 	}
 
 	/**
-	 * Configure web.xml file.
+	 * Configure web.xml file while it is extracted.
 	 * 
+	 * @param original
+	 *            web.xml file of the distribution.
+	 * @param file
+	 *            web.xml file to be written.
 	 * @throws IOException
 	 *             Throws IOException.
 	 */
-	@Logged
-	protected void configureWebXml() throws IOException {
-		File file = PathEnum.LUMISPORTAL_FILE_WEBXML.getFile();
-
-		List<String> lines = Files.readLines(file, Charsets.UTF_8);
+	protected void configureWebXml(File original, File file) throws IOException {
+		List<String> lines = Files.readLines(original, Charsets.UTF_8);
 		for (int i = 0; i < lines.size(); i++) {
 			if (lines.get(i).contains("lumisDataPath")) {
 				lines.set(i + 1, String.format("\t\t<param-value>%s</param-value>", PathEnum.LUMISPORTAL_DIR_LUMISDATA.getPath()));
 			}
 		}
 
-		saveToFile(lines, file);
+		Files.write(Joiner.on((char) Ascii.LF).join(lines), file, Charsets.UTF_8);
 	}
 
 	/**
-	 * Configure jboss-web.xml from Lumis Portal.
+	 * Configure jboss-web.xml from Lumis Portal while it is extracted.
 	 * 
+	 * @param original
+	 *            jboss-web.xml file of the distribution.
+	 * @param file
+	 *            jboss-web.xml file to be written.
 	 * @throws IOException
 	 *             Throws IOException.
 	 */
-	@Logged
-	protected void configureJbosswebXml() throws IOException {
-		File file = PathEnum.LUMISPORTAL_FILE_JBOSSWEBXML.getFile();
-		if (!file.exists()) {
-			return;
-		}
-
-		List<String> lines = Files.readLines(file, Charsets.UTF_8);
+	protected void configureJbosswebXml(File original, File file) throws IOException {
+		List<String> lines = Files.readLines(original, Charsets.UTF_8);
 		for (int i = 0; i < lines.size(); i++) {
 			lines.set(i, lines.get(i).replace("myapp", getContextName()));
 		}
 
-		saveToFile(lines, file);
+		Files.write(Joiner.on((char) Ascii.LF).join(lines), file, Charsets.UTF_8);
+	}
+
+	/**
+	 * Configure lumisportalconfig.xml file while it is extracted.
+	 * 
+	 * @param original
+	 *            lumisportalconfig.xml file of the distribution.
+	 * @param file
+	 *            lumisportalconfig.xml file to be written.
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	protected void configureLumisportalconfigXml(File original, File file) throws IOException {
+		XmlPatch xmlPatch = new XmlPatch();
+		xmlPatch.setText("//serverId", String.format("%s-%d", InetAddress.getLocalHost().getHostName(), frameworkUrl.getPort() - 8080));
+		xmlPatch.setText("//frameworkUrl", frameworkUrl.toString());
+		xmlPatch.uncomment("//webRootPath");
+		xmlPatch.setText("//webRootPath", PathEnum.HTDOCS_DIR.getPath());
+		xmlPatch.uncomment("//pollIntervalSecs");
+		xmlPatch.setText("//pollIntervalSecs", "300");
+		xmlPatch.uncomment("//htmlGeneration");
+
+		xmlPatch.apply(original, file);
 	}
 
 	/**
-	 * Configure lumisportalconfig.xml file.
+	 * Configure setup directory files. The scripts are configured while they are extracted.
 	 * 
 	 * @throws IOException
 	 *             Throws IOException.
 	 */
 	@Logged
-	protected void configureLumisportalconfigXml() throws IOException {
-		File file = PathEnum.LUMISPORTAL_FILE_LUMISPORTALCONFIGXML.getFile();
+	protected void configureSetup_Files() throws IOException {
+		File mysqlDriverFile = getLocalFile(mysqldriverFile);
+
+		Files.copy(mysqlDriverFile, new File(PathEnum.LUMISPORTAL_DIR_CONTEXTLIB.getPath(), mysqlDriverFile.getName()));
+	}
+
+	/**
+	 * Configure a script of the setup directory while it is extracted.
+	 * 
+	 * @param original
+	 *            Script of the distribution.
+	 * @param file
+	 *            Script to be written.
+	 * @param mysqlDriverFileName
+	 *            Name of the MySQL driver file.
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	protected void configureSetup_File(File original, File file, String mysqlDriverFileName) throws IOException {
+		List<String> lines = Files.readLines(original, Charsets.UTF_8);
 
-		List<String> lines = Files.readLines(file, Charsets.UTF_8);
 		for (int i = 0; i < lines.size(); i++) {
 			String line = lines.get(i);
 
-			if (line.contains("<serverId>")) {
-				lines.set(i, String.format("\t<serverId>%s-%d</serverId>", InetAddress.getLocalHost().getHostName(), frameworkUrl.getPort() - 8080));
-			} else if (line.contains("<frameworkUrl>")) {
-				lines.set(i, String.format("\t\t<frameworkUrl>%s</frameworkUrl>", frameworkUrl.toString()));
-			} else if (line.contains("<webRootPath>")) {
-				if (!lines.get(i - 1).endsWith("-->")) {
-					lines.set(i - 1, String.format("%s -->", lines.get(i - 1)));
-				}
-				lines.set(i, String.format("\t<webRootPath>%s</webRootPath>", PathEnum.HTDOCS_DIR.getPath()));
-				lines.set(i + 1, "");
-			} else if (line.contains("</layoutFile>")) {
-				lines.set(i - 2, "\t\t-->");
-				lines.set(i - 1, "\t\t<pollIntervalSecs>300</pollIntervalSecs>");
+			if (line.contains("JAVA_HOME=")) {
+				lines.set(i, line.replace("JAVA_HOME=", String.format("JAVA_HOME=%s", getFormatedPath(System.getProperty("java.home")))));
 			}
-
-			if (line.contains("<htmlGeneration>")) {
-				if (!lines.get(i - 1).endsWith("-->")) {
-					lines.set(i - 1, String.format("%s -->", lines.get(i - 1)));
-				}
-			} else if (line.contains("</htmlGeneration>")) {
-				lines.set(i + 1, "");
+			if (line.contains(". setclasspath.sh")) {
+				lines.set(i, line.replace(". setclasspath.sh", ". ./setclasspath.sh"));
+			}
+			if (line.contains("mysql-connector-java")) {
+				lines.set(i, line.replace(line.substring(line.indexOf("mysql-connector-java")), mysqlDriverFileName));
 			}
 		}
 
-		saveToFile(lines, file);
+		Files.write(Joiner.on((char) Ascii.LF).join(lines), file, Charsets.UTF_8);
+
+		file.setExecutable(true);
 	}
 
 	/**
-	 * Configure setup directory files.
+	 * Configure lumishibernate.cfg.xml file while it is extracted, with the connection of the database.
 	 * 
+	 * @param original
+	 *            lumishibernate.cfg.xml file of the distribution.
+	 * @param file
+	 *            lumishibernate.cfg.xml file to be written.
 	 * @throws IOException
 	 *             Throws IOException.
 	 */
-	@Logged
-	protected void configureSetup_Files() throws IOException {
-		File setupDir = PathEnum.LUMISPORTAL_DIR_SETUP.getFile();
-		File mysqlDriverFile = (mysqldriverFile.startsWith("http") || mysqldriverFile.startsWith("ftp")) ? downloadFile(new URL(mysqldriverFile)) : new File(mysqldriverFile);
-
-		String mysqlDriverFileName = mysqlDriverFile.getName();
-		Files.copy(mysqlDriverFile, new File(PathEnum.LUMISPORTAL_DIR_CONTEXTLIB.getPath(), mysqlDriverFileName));
-
-		for (File file : setupDir.listFiles(new PatternFilenameFilter(".*\\.(sh|cmd|bat)"))) {
-			List<String> lines = Files.readLines(file, Charsets.UTF_8);
-
-			for (int i = 0; i < lines.size(); i++) {
-				String line = lines.get(i);
-
-				if (line.contains("JAVA_HOME=")) {
-					lines.set(i, line.replace("JAVA_HOME=", String.format("JAVA_HOME=%s", getFormatedPath(System.getProperty("java.home")))));
-				}
-				if (line.contains(". setclasspath.sh")) {
-					lines.set(i, line.replace(". setclasspath.sh", ". ./setclasspath.sh"));
-				}
-				if (line.contains("mysql-connector-java")) {
-					lines.set(i, line.replace(line.substring(line.indexOf("mysql-connector-java")), mysqlDriverFileName));
-				}
-			}
-
-			saveToFile(lines, file);
+	protected void configureLumishibernateCfgXml(File original, File file) throws IOException {
+		List<String> lumishibernateCfgXmlLines = database.configureLumishibernateCfgXml(original);
 
-			file.setExecutable(true);
-		}
+		Files.write(Joiner.on((char) Ascii.LF).join(lumishibernateCfgXmlLines), file, Charsets.UTF_8);
 	}
 
 	/**
-	 * Configure lumishibernate.cfg.xml file.
+	 * Configure the .connection and .datasource variants of lumishibernate.cfg.xml file.
 	 * 
 	 * @throws IOException
 	 *             Throws IOException.
@@ -226,32 +301,113 @@ public class AbstractLumisPortal extends AbstractInstaller {
 		File lumishibernatecfgxmlConnectionFile = new File(PathEnum.LUMISPORTAL_FILE_LUMISHIBERNATECFGXML.getPath() + ".connection");
 		File lumishibernatecfgxmlDatasourceFile = new File(PathEnum.LUMISPORTAL_FILE_LUMISHIBERNATECFGXML.getPath() + ".datasource");
 
-		List<String> lumishibernateCfgXmlLines = database.configureLumishibernateCfgXml(lumishibernatecfgxmlFile);
-		saveToFile(lumishibernateCfgXmlLines, lumishibernatecfgxmlConnectionFile);
+		backupFile(lumishibernatecfgxmlConnectionFile);
+		Files.copy(lumishibernatecfgxmlFile, lumishibernatecfgxmlConnectionFile);
 
 		Map<String, Object> model = Maps.newHashMap();
 		model.put("datasourceName", datasourceName);
-		saveToFile(applyTemplateModel(ResourceEnum.LUMISPORTAL_LUMISHIBERNATECFGXML.getText(), model), lumishibernatecfgxmlDatasourceFile);
-
-		Files.copy(lumishibernatecfgxmlConnectionFile, lumishibernatecfgxmlFile);
+		applyTemplateModel(ResourceEnum.LUMISPORTAL_LUMISHIBERNATECFGXML, model, lumishibernatecfgxmlDatasourceFile);
 	}
 
 	/**
-	 * Execute initializeportal script.
+	 * Execute initializeportal script. With database.snapshot, an empty schema is restored from the snapshot of the same portal and
+	 * database type, when there is one, instead of running generatesql and initializeportal; otherwise the snapshot is exported after
+	 * initializeportal.
 	 * 
 	 * @throws IOException
 	 *             Throws IOException.
 	 */
 	protected void initializePortal() throws IOException {
 		File setupDir = PathEnum.LUMISPORTAL_DIR_SETUP.getFile();
-		File scriptDBFile = new File(setupDir, String.format("db_%s.sql", databaseType.toLowerCase()));
+		File scriptDBFile = new File(setupDir, String.format("db_%s.sql", database.getScriptType().toLowerCase()));
+		File snapshotFile = snapshot ? getSnapshotFile() : null;
+		boolean restore = snapshotFile != null && snapshotFile.isFile();
+		File scriptFile = restore ? snapshotFile : scriptDBFile;
+
+		int result = -1;
+		boolean resume = database.hasCheckpoint(scriptFile);
+		boolean createSchema = resume;
+
+		if (!resume) {
+			try {
+				result = countUsers();
+			} catch (SQLException e) {
+				createSchema = true;
+			}
+		}
+
+		if (createSchema) {
+			if (!restore && (!resume || !scriptDBFile.exists())) {
+				executeSetupScript("generatesql", setupDir, scriptDBFile);
+			}
+			int scriptResult = database.executeScript(scriptFile);
+			if (scriptResult > 0 && !database.hasCheckpoint(scriptFile) && !restore) {
+				result = 0;
+			}
+		}
+
+		if (result == 0) {
+			executeSetupScript("initializeportal", setupDir, null);
 
-		String generatesqlCommand = (isWindows) ? "cmd /c generatesql.cmd" : "./generatesql.sh";
-		String initializeportalCommand = (isWindows) ? "cmd /c initializeportal.cmd" : "./initializeportal.sh";
+			try {
+				if (snapshotFile != null && scriptDBFile.exists() && countUsers() > 0) {
+					database.exportSnapshot(scriptDBFile, snapshotFile);
+				}
+			} catch (SQLException e) {
+				Log.error(e.getLocalizedMessage());
+			}
+		}
+	}
+
+	/**
+	 * Execute a setup script of the portal. A script that fails is not run again, because it may have already changed the database.
+	 * 
+	 * @param name
+	 *            Name of the script, without extension.
+	 * @param setupDir
+	 *            The setup directory.
+	 * @param output
+	 *            A file the script must create, or null.
+	 * @throws IOException
+	 *             When the script fails.
+	 */
+	protected void executeSetupScript(String name, File setupDir, File output) throws IOException {
+		File script = new File(setupDir, name + (isWindows ? ".cmd" : ".sh"));
+
+		ProcessRunner.Result result = executeCommand(
+				isWindows ? Lists.newArrayList("cmd", "/c", script.getName()) : Lists.newArrayList("./" + script.getName()), setupDir);
+
+		if (!result.isSuccessful()) {
+			throw new IOException(String.format("%s failed: %s", script.getName(), result.getReport()));
+		}
+		if (output != null && !output.exists()) {
+			throw new IOException(String.format("%s did not create %s", script.getName(), getPath(output)));
+		}
+	}
+
+	/**
+	 * Get the snapshot of the initialized schema, keyed by the digest of the Lumis Portal installation file and the database type.
+	 * 
+	 * @return The snapshot file on the cache directory.
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	protected File getSnapshotFile() throws IOException {
+		String digest = getLocalFileDigest(lumisportalInstallFile);
+
+		return new File(new File(cacheDir, "snapshots"), String.format("%s-%s.sql.gz", digest, databaseType.toLowerCase()));
+	}
 
+	/**
+	 * Count the users of the portal.
+	 * 
+	 * @return The count of users, or -1 when there is no connection.
+	 * @throws SQLException
+	 *             When the schema was not created.
+	 */
+	private int countUsers() throws SQLException {
 		Connection connection = null;
 		Statement statement = null;
-
 		int result = -1;
 
 		try {
@@ -265,20 +421,12 @@ public class AbstractLumisPortal extends AbstractInstaller {
 			while (resultSet.next()) {
 				result = resultSet.getInt(1);
 			}
-		} catch (SQLException e) {
-			executeCommand(generatesqlCommand, setupDir);
-			int scriptResult = database.executeScript(scriptDBFile);
-			if (scriptResult > 0) {
-				result = 0;
-			}
 		} catch (MalformedURLException | InstantiationException | IllegalAccessException | ClassNotFoundException e) {
 			Log.error(e.getLocalizedMessage());
 		} finally {
 			database.closeConnection(connection, statement);
 		}
 
-		if (result == 0) {
-			executeCommand(initializeportalCommand, setupDir);
-		}
+		return result;
 	}
 }
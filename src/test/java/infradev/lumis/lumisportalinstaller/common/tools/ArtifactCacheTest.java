@@ -0,0 +1,137 @@
+package infradev.lumis.lumisportalinstaller.common.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+/**
+ *
+ * @author Alexandre Ribeiro de Souza
+ */
+public class ArtifactCacheTest {
+
+	private File tempDir;
+
+	@Before
+	public void setUp() {
+		tempDir = Files.createTempDir();
+	}
+
+	@After
+	public void tearDown() {
+		delete(tempDir);
+	}
+
+	/**
+	 * Test of put and get methods, of class ArtifactCache.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	@Test
+	public void testPutAndGet() throws IOException {
+		ArtifactCache artifactCache = new ArtifactCache(tempDir, 1024);
+		URL url = new URL("http://localhost/driver.jar");
+
+		Assert.assertNull(artifactCache.get(url));
+
+		File cachedFile = artifactCache.put(url, download(artifactCache, "driver.jar", "driver"));
+		Assert.assertEquals("driver.jar", cachedFile.getName());
+		Assert.assertEquals(cachedFile, artifactCache.get(url));
+
+		Files.write("corrupted", cachedFile, Charsets.UTF_8);
+		Assert.assertNull(artifactCache.get(url));
+		Assert.assertFalse(cachedFile.exists());
+	}
+
+	/**
+	 * Test of get method verifying only changed artifacts, of class ArtifactCache.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	@Test
+	public void testGetVerify() throws IOException {
+		ArtifactCache artifactCache = new ArtifactCache(tempDir, 1024);
+		URL url = new URL("http://localhost/driver.jar");
+		File cachedFile = artifactCache.put(url, download(artifactCache, "driver.jar", "driver"));
+		long modified = cachedFile.lastModified();
+
+		Files.write("DRIVER", cachedFile, Charsets.UTF_8);
+		cachedFile.setLastModified(modified);
+		Assert.assertEquals(cachedFile, artifactCache.get(url));
+
+		cachedFile.setLastModified(modified - 10000);
+		Assert.assertNull(artifactCache.get(url));
+		Assert.assertFalse(cachedFile.exists());
+	}
+
+	/**
+	 * Test of getDigest method, of class ArtifactCache.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	@Test
+	public void testGetDigest() throws IOException {
+		ArtifactCache artifactCache = new ArtifactCache(tempDir, 1024);
+		File cachedFile = artifactCache.put(new URL("http://localhost/driver.jar"), download(artifactCache, "driver.jar", "driver"));
+
+		Assert.assertEquals(Files.hash(cachedFile, Hashing.sha256()).toString(), artifactCache.getDigest(cachedFile));
+		Assert.assertNull(artifactCache.getDigest(new File(tempDir, "driver.jar")));
+	}
+
+	/**
+	 * Test of eviction of the least recently used artifacts, of class ArtifactCache.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 * @throws InterruptedException
+	 *             Throws InterruptedException.
+	 */
+	@Test
+	public void testEvict() throws IOException, InterruptedException {
+		ArtifactCache artifactCache = new ArtifactCache(tempDir, 250);
+		URL first = new URL("http://localhost/first.zip");
+		URL second = new URL("http://localhost/second.zip");
+		URL third = new URL("http://localhost/third.zip");
+
+		artifactCache.put(first, download(artifactCache, "first.zip", Strings.repeat("1", 100)));
+		Thread.sleep(5);
+		artifactCache.put(second, download(artifactCache, "second.zip", Strings.repeat("2", 100)));
+		Thread.sleep(5);
+		Assert.assertNotNull(artifactCache.get(first));
+		Thread.sleep(5);
+		artifactCache.put(third, download(artifactCache, "third.zip", Strings.repeat("3", 100)));
+
+		Assert.assertNotNull(artifactCache.get(first));
+		Assert.assertNull(artifactCache.get(second));
+		Assert.assertNotNull(artifactCache.get(third));
+	}
+
+	private File download(ArtifactCache artifactCache, String fileName, String content) throws IOException {
+		File file = artifactCache.createDownloadFile(new URL("http://localhost/" + fileName), fileName);
+		Files.write(content, file, Charsets.UTF_8);
+
+		return file;
+	}
+
+	private void delete(File file) {
+		if (file.isDirectory()) {
+			for (File child : file.listFiles()) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
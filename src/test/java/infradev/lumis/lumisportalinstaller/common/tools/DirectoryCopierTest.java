@@ -0,0 +1,107 @@
+package infradev.lumis.lumisportalinstaller.common.tools;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ *
+ * @author Alexandre Ribeiro de Souza
+ */
+public class DirectoryCopierTest {
+
+	private File tempDir;
+	private File from;
+
+	@Before
+	public void setUp() throws IOException {
+		tempDir = Files.createTempDir();
+		from = new File(tempDir, "from");
+
+		for (String path : new String[] { "index.html", "index.jsp", "doc/api/index.html", "images/logo.gif", "lib/shared/a.jar" }) {
+			File file = new File(from, path);
+			Files.createParentDirs(file);
+			Files.write(path, file, Charsets.UTF_8);
+		}
+	}
+
+	@After
+	public void tearDown() {
+		for (File file : Files.fileTreeTraverser().postOrderTraversal(tempDir)) {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Test of copy method, of class DirectoryCopier.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	@Test
+	public void testCopy() throws IOException {
+		File to = new File(tempDir, "to");
+
+		int count = new DirectoryCopier().copy(from, to, new PathFilter().exclude("doc.*").exclude("glob:**.jsp"));
+
+		Assert.assertEquals(3, count);
+		Assert.assertEquals("images/logo.gif", Files.toString(new File(to, "images/logo.gif"), Charsets.UTF_8));
+		Assert.assertEquals("lib/shared/a.jar", Files.toString(new File(to, "lib/shared/a.jar"), Charsets.UTF_8));
+		Assert.assertFalse(new File(to, "index.jsp").exists());
+		Assert.assertFalse(new File(to, "doc").exists());
+	}
+
+	/**
+	 * Test of copy method with hard links, of class DirectoryCopier.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	@Test
+	public void testCopyHardlink() throws IOException {
+		File to = new File(tempDir, "to");
+		DirectoryCopier directoryCopier = new DirectoryCopier();
+		directoryCopier.setMode(DirectoryCopier.Mode.HARDLINK);
+
+		Assert.assertEquals(5, directoryCopier.copy(from, to, new PathFilter()));
+		Assert.assertTrue(java.nio.file.Files.isSameFile(new File(from, "lib/shared/a.jar").toPath(), new File(to, "lib/shared/a.jar").toPath()));
+		Assert.assertFalse(java.nio.file.Files.isSameFile(new File(from, "index.html").toPath(), new File(to, "index.html").toPath()));
+
+		Files.write("rewritten", new File(to, "index.html"), Charsets.UTF_8);
+		Assert.assertEquals("index.html", Files.toString(new File(from, "index.html"), Charsets.UTF_8));
+
+		directoryCopier.setMode(DirectoryCopier.Mode.COPY);
+		Files.write("changed", new File(from, "index.html"), Charsets.UTF_8);
+		directoryCopier.copy(from, to, new PathFilter());
+
+		Assert.assertFalse(java.nio.file.Files.isSameFile(new File(from, "lib/shared/a.jar").toPath(), new File(to, "lib/shared/a.jar").toPath()));
+		Assert.assertEquals("lib/shared/a.jar", Files.toString(new File(from, "lib/shared/a.jar"), Charsets.UTF_8));
+		Assert.assertEquals("changed", Files.toString(new File(to, "index.html"), Charsets.UTF_8));
+	}
+
+	/**
+	 * Test of copy method with reflinks, of class DirectoryCopier.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	@Test
+	public void testCopyReflink() throws IOException {
+		File to = new File(tempDir, "to");
+		DirectoryCopier directoryCopier = new DirectoryCopier();
+		directoryCopier.setMode(DirectoryCopier.Mode.REFLINK);
+
+		Assert.assertEquals(5, directoryCopier.copy(from, to, new PathFilter()));
+		Files.write("rewritten", new File(to, "index.html"), Charsets.UTF_8);
+
+		Assert.assertEquals("index.html", Files.toString(new File(from, "index.html"), Charsets.UTF_8));
+		Assert.assertEquals("lib/shared/a.jar", Files.toString(new File(to, "lib/shared/a.jar"), Charsets.UTF_8));
+	}
+}
@@ -0,0 +1,86 @@
+package infradev.lumis.lumisportalinstaller.common.tools;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ *
+ * @author Alexandre Ribeiro de Souza
+ */
+public class DirectoryDeleterTest {
+
+	private File tempDir;
+
+	@Before
+	public void setUp() {
+		tempDir = Files.createTempDir();
+	}
+
+	@After
+	public void tearDown() {
+		for (File file : Files.fileTreeTraverser().postOrderTraversal(tempDir)) {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Test of delete method, of class DirectoryDeleter.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	@Test
+	public void testDelete() throws IOException {
+		File dir = createTree(new File(tempDir, "lib"));
+		File leftover = createTree(new File(tempDir, ".www.1" + DirectoryDeleter.TRASH_SUFFIX));
+		DirectoryDeleter directoryDeleter = new DirectoryDeleter();
+
+		directoryDeleter.delete(dir);
+		Assert.assertFalse(dir.exists());
+
+		directoryDeleter.awaitCompletion();
+		Assert.assertFalse(leftover.exists());
+		Assert.assertEquals(0, tempDir.list().length);
+	}
+
+	/**
+	 * Test of delete method with a symbolic link, of class DirectoryDeleter.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	@Test
+	public void testDeleteLink() throws IOException {
+		File target = createTree(new File(tempDir, "www"));
+		File link = new File(tempDir, "lumis.war");
+		java.nio.file.Files.createSymbolicLink(link.toPath(), target.toPath());
+		DirectoryDeleter directoryDeleter = new DirectoryDeleter();
+
+		directoryDeleter.delete(link);
+		directoryDeleter.awaitCompletion();
+
+		Assert.assertFalse(link.exists());
+		Assert.assertTrue(new File(target, "a/b/c.txt").isFile());
+	}
+
+	private File createTree(File dir) throws IOException {
+		for (int i = 0; i < 20; i++) {
+			File file = new File(dir, String.format("a/b%d/c.txt", i));
+			Files.createParentDirs(file);
+			Files.write("c", file, Charsets.UTF_8);
+		}
+		File file = new File(dir, "a/b/c.txt");
+		Files.createParentDirs(file);
+		Files.write("c", file, Charsets.UTF_8);
+
+		return dir;
+	}
+}
@@ -0,0 +1,121 @@
+package infradev.lumis.lumisportalinstaller.common.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
+import com.google.common.io.Files;
+
+/**
+ *
+ * @author Alexandre Ribeiro de Souza
+ */
+public class PathFilterTest {
+
+	/**
+	 * Test of matches method, of class PathFilter.
+	 */
+	@Test
+	public void testMatches() {
+		PathFilter pathFilter = new PathFilter().exclude("www/lumis/doc.*").exclude(".*\\.jsp").exclude("glob:**.bak").exclude("glob:lumisportal.war")
+				.exclude("glob:www/*/tmp/*.log").exclude("regex:.*/(cache|temp)/.*");
+
+		Assert.assertTrue(pathFilter.matches("www/lumis/portal/index.html"));
+		Assert.assertFalse(pathFilter.matches("www/lumis/doc"));
+		Assert.assertFalse(pathFilter.matches("www/lumis/doc/index.html"));
+		Assert.assertFalse(pathFilter.matches("www/lumis/index.jsp"));
+		Assert.assertTrue(pathFilter.matches("www/lumis/index.jspx"));
+		Assert.assertFalse(pathFilter.matches("lib/file.bak"));
+		Assert.assertFalse(pathFilter.matches("lumisportal.war"));
+		Assert.assertTrue(pathFilter.matches("lumisportal.war.original"));
+		Assert.assertFalse(pathFilter.matches("www/lumis/tmp/server.log"));
+		Assert.assertTrue(pathFilter.matches("www/lumis/tmp/logs/server.log"));
+		Assert.assertFalse(pathFilter.matches("www/lumis/cache/file.gif"));
+
+		Assert.assertTrue(pathFilter.prunes("www/lumis/doc"));
+		Assert.assertFalse(pathFilter.prunes("www/lumis"));
+
+		Assert.assertFalse(new PathFilter().exclude("").matches(""));
+		Assert.assertTrue(new PathFilter().exclude("").matches("tomcat/bin/catalina.sh"));
+		Assert.assertTrue(new PathFilter().include("glob:lib/**").matches("lib/shared/a.jar"));
+		Assert.assertFalse(new PathFilter().include("glob:lib/**").matches("www/a.jar"));
+	}
+
+	/**
+	 * Test of list method, of class PathFilter.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	@Test
+	public void testList() throws IOException {
+		File tempDir = Files.createTempDir();
+		try {
+			for (String path : new String[] { "index.html", "index.jsp", "doc/api/index.html", "images/logo.gif" }) {
+				File file = new File(tempDir, path);
+				Files.createParentDirs(file);
+				Files.touch(file);
+			}
+
+			List<String> paths = new PathFilter().exclude("doc.*").exclude("glob:**.jsp").list(tempDir);
+
+			Assert.assertEquals(Lists.newArrayList("images/logo.gif", "index.html"), Ordering.natural().sortedCopy(paths));
+		} finally {
+			for (File file : Files.fileTreeTraverser().postOrderTraversal(tempDir)) {
+				file.delete();
+			}
+		}
+	}
+
+	/**
+	 * Compare the filter with the per entry regex matching it replaces, on a synthetic tree of 50k paths. It is a benchmark, run on demand.
+	 */
+	@Test
+	@Ignore
+	public void testBenchmark() {
+		List<String> paths = Lists.newArrayList();
+		for (int i = 0; i < 50000; i++) {
+			paths.add(String.format("www/lumis/%s/module%d/folder%d/file%d.%s", i % 10 == 0 ? "doc" : "portal", i % 50, i % 500, i, i % 3 == 0 ? "jsp"
+					: "gif"));
+		}
+
+		PathFilter pathFilter = new PathFilter().exclude("www/lumis/doc.*").exclude(".*\\.jsp");
+		String ignoreMatch = "www/lumis/doc.*|.*\\.jsp";
+
+		int regexMatches = 0;
+		int filterMatches = 0;
+		long regexTime = Long.MAX_VALUE;
+		long filterTime = Long.MAX_VALUE;
+
+		for (int round = 0; round < 5; round++) {
+			long start = System.nanoTime();
+			regexMatches = 0;
+			for (String path : paths) {
+				if (!path.matches(ignoreMatch)) {
+					regexMatches++;
+				}
+			}
+			regexTime = Math.min(regexTime, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			filterMatches = 0;
+			for (String path : paths) {
+				if (pathFilter.matches(path)) {
+					filterMatches++;
+				}
+			}
+			filterTime = Math.min(filterTime, System.nanoTime() - start);
+		}
+
+		Log.info(String.format("50000 paths: String.matches %d ms, PathFilter %d ms", TimeUnit.NANOSECONDS.toMillis(regexTime),
+				TimeUnit.NANOSECONDS.toMillis(filterTime)));
+		Assert.assertEquals(regexMatches, filterMatches);
+	}
+}
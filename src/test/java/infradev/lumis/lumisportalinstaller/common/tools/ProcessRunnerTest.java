@@ -0,0 +1,122 @@
+package infradev.lumis.lumisportalinstaller.common.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.Lists;
+
+/**
+ *
+ * @author Alexandre Ribeiro de Souza
+ */
+public class ProcessRunnerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Before
+	public void setUp() {
+		Assume.assumeTrue(new File("/bin/sh").canExecute());
+	}
+
+	/**
+	 * Test of run method, of class ProcessRunner.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	@Test
+	public void testRun() throws IOException {
+		ProcessRunner processRunner = new ProcessRunner();
+		processRunner.setOutputLines(3);
+
+		ProcessRunner.Result result = processRunner.run(
+				Lists.newArrayList("sh", "-c", "for i in 1 2 3; do echo out $i; done; echo \"$1\" 1>&2; exit 3", "sh", "a b"), folder.getRoot(),
+				10, TimeUnit.SECONDS);
+
+		Assert.assertEquals(3, result.getExitCode());
+		Assert.assertFalse(result.isTimedOut());
+		Assert.assertFalse(result.isSuccessful());
+		Assert.assertEquals(Lists.newArrayList("out 2", "out 3", "a b"), result.getOutput());
+		Assert.assertTrue(result.getReport().contains("exited with 3"));
+
+		result = processRunner.run(Lists.newArrayList("sh", "-c", "pwd"), folder.getRoot(), 0, TimeUnit.SECONDS);
+		Assert.assertTrue(result.isSuccessful());
+		Assert.assertEquals(new File(result.getOutput().get(0)).getCanonicalFile(), folder.getRoot().getCanonicalFile());
+	}
+
+	/**
+	 * Test of run method with a timeout, of class ProcessRunner.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	@Test
+	public void testRunTimeout() throws IOException {
+		ProcessRunner processRunner = new ProcessRunner();
+
+		ProcessRunner.Result result = processRunner.run(Lists.newArrayList("sh", "-c", "echo started; exec sleep 30"), folder.getRoot(), 200,
+				TimeUnit.MILLISECONDS);
+
+		Assert.assertTrue(result.isTimedOut());
+		Assert.assertFalse(result.isSuccessful());
+		Assert.assertTrue(result.getElapsedMillis() < 20000);
+		Assert.assertEquals(Lists.newArrayList("started"), result.getOutput());
+		Assert.assertTrue(result.getReport().contains("timed out"));
+	}
+
+	/**
+	 * Test of run method with a timeout on a command with a child holding its output, of class ProcessRunner.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	@Test
+	public void testRunTimeoutChild() throws IOException {
+		ProcessRunner processRunner = new ProcessRunner();
+
+		ProcessRunner.Result result = processRunner.run(Lists.newArrayList("sh", "-c", "echo started; sleep 30 & exec sleep 30"), folder.getRoot(),
+				200, TimeUnit.MILLISECONDS);
+
+		Assert.assertTrue(result.isTimedOut());
+		Assert.assertTrue(result.getElapsedMillis() < 20000);
+		Assert.assertEquals("started", result.getOutput().get(0));
+		Assert.assertTrue(result.getReport().contains("a child process may still be running"));
+	}
+
+	/**
+	 * Test of submit method, of class ProcessRunner.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	@Test
+	public void testSubmit() throws IOException {
+		ProcessRunner processRunner = new ProcessRunner();
+
+		Future<ProcessRunner.Result> waiting = processRunner.submit(
+				Lists.newArrayList("sh", "-c", "while [ ! -f ready ]; do sleep 0.05; done; echo done"), folder.getRoot(), 10, TimeUnit.SECONDS);
+		Future<ProcessRunner.Result> creating = processRunner.submit(Lists.newArrayList("touch", "ready"), folder.getRoot(), 10,
+				TimeUnit.SECONDS);
+
+		Assert.assertTrue(processRunner.get(creating).isSuccessful());
+		ProcessRunner.Result result = processRunner.get(waiting);
+		Assert.assertTrue(result.isSuccessful());
+		Assert.assertEquals(Lists.newArrayList("done"), result.getOutput());
+
+		try {
+			processRunner.run(Lists.newArrayList(new File(folder.getRoot(), "missing").getPath()), folder.getRoot(), 10, TimeUnit.SECONDS);
+			Assert.fail();
+		} catch (IOException e) {
+		}
+	}
+}
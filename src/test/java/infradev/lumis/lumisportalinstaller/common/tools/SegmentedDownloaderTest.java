@@ -0,0 +1,229 @@
+package infradev.lumis.lumisportalinstaller.common.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Files;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ *
+ * @author Alexandre Ribeiro de Souza
+ */
+public class SegmentedDownloaderTest {
+
+	private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+
+	private File tempDir;
+	private byte[] content;
+	private HttpServer server;
+	private boolean acceptRanges;
+	private long bytesPerSecond;
+	private List<String> ranges;
+
+	@Before
+	public void setUp() throws IOException {
+		tempDir = Files.createTempDir();
+		content = new byte[1024 * 1024];
+		new Random(42).nextBytes(content);
+		acceptRanges = true;
+		bytesPerSecond = 0;
+		ranges = new CopyOnWriteArrayList<>();
+
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.createContext("/file.zip", new HttpHandler() {
+
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				int start = 0;
+				int end = content.length - 1;
+				int status = 200;
+
+				if (acceptRanges) {
+					exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+					String range = exchange.getRequestHeaders().getFirst("Range");
+					if (range != null) {
+						Matcher matcher = RANGE.matcher(range);
+						Assert.assertTrue(matcher.matches());
+						start = Integer.parseInt(matcher.group(1));
+						end = Integer.parseInt(matcher.group(2));
+						status = 206;
+						ranges.add(range);
+						exchange.getResponseHeaders().add("Content-Range", String.format("bytes %d-%d/%d", start, end, content.length));
+					}
+				}
+
+				if (exchange.getRequestMethod().equals("HEAD")) {
+					exchange.getResponseHeaders().add("Content-Length", String.valueOf(content.length));
+					exchange.sendResponseHeaders(status, -1);
+					exchange.close();
+					return;
+				}
+
+				exchange.sendResponseHeaders(status, end - start + 1);
+				try (OutputStream os = exchange.getResponseBody()) {
+					for (int offset = start; offset <= end; offset += 16 * 1024) {
+						int length = Math.min(16 * 1024, end - offset + 1);
+						os.write(content, offset, length);
+						if (bytesPerSecond > 0) {
+							sleep(TimeUnit.SECONDS.toMillis(length) / bytesPerSecond);
+						}
+					}
+				}
+			}
+		});
+		server.start();
+	}
+
+	@After
+	public void tearDown() {
+		server.stop(0);
+		for (File file : tempDir.listFiles()) {
+			file.delete();
+		}
+		tempDir.delete();
+	}
+
+	/**
+	 * Test of download method, of class SegmentedDownloader.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	@Test
+	public void testDownload() throws IOException {
+		File file = new File(tempDir, "file.zip");
+
+		Assert.assertTrue(createDownloader().download(getUrl(), file));
+
+		Assert.assertArrayEquals(content, Files.toByteArray(file));
+		Assert.assertEquals(4, ranges.size());
+		Assert.assertFalse(new File(tempDir, "file.zip.segments").exists());
+	}
+
+	/**
+	 * Test of download method without range support, of class SegmentedDownloader.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	@Test
+	public void testDownloadWithoutRanges() throws IOException {
+		acceptRanges = false;
+
+		Assert.assertFalse(createDownloader().download(getUrl(), new File(tempDir, "file.zip")));
+	}
+
+	/**
+	 * Test of download method resuming from a journal, of class SegmentedDownloader.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	@Test
+	public void testResume() throws IOException {
+		File file = new File(tempDir, "file.zip");
+		byte[] partial = Arrays.copyOf(content, content.length);
+		Arrays.fill(partial, content.length / 4, content.length, (byte) 0);
+		Files.write(partial, file);
+		Files.write("length=1048576\nsegments=4\nvalidator=\ncompleted=0\n", new File(tempDir, "file.zip.segments"), Charsets.ISO_8859_1);
+
+		Assert.assertTrue(createDownloader().download(getUrl(), file));
+
+		Assert.assertArrayEquals(content, Files.toByteArray(file));
+		Assert.assertEquals(3, ranges.size());
+		Assert.assertFalse(ranges.contains("bytes=0-262143"));
+	}
+
+	/**
+	 * Test of download method with the number of segments bounded by their minimum size, of class SegmentedDownloader.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	@Test
+	public void testSegments() throws IOException {
+		SegmentedDownloader segmentedDownloader = createDownloader();
+		segmentedDownloader.setSegments(8);
+		segmentedDownloader.setMinSegmentSize(512 * 1024);
+		File file = new File(tempDir, "file.zip");
+
+		Assert.assertTrue(segmentedDownloader.download(getUrl(), file));
+
+		Assert.assertArrayEquals(content, Files.toByteArray(file));
+		Assert.assertEquals(ImmutableSet.of("bytes=0-524287", "bytes=524288-1048575"), ImmutableSet.copyOf(ranges));
+		Assert.assertEquals(2, ranges.size());
+	}
+
+	/**
+	 * Compare the time of a single stream with the time of parallel segments, with a server limited by connection. It is a benchmark, run on
+	 * demand.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	@Test
+	@Ignore
+	public void testBenchmark() throws IOException {
+		bytesPerSecond = 4 * 1024 * 1024;
+		SegmentedDownloader segmentedDownloader = createDownloader();
+
+		long start = System.nanoTime();
+		segmentedDownloader.setSegments(1);
+		Assert.assertTrue(segmentedDownloader.download(getUrl(), new File(tempDir, "single.zip")));
+		long single = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		segmentedDownloader.setSegments(4);
+		Assert.assertTrue(segmentedDownloader.download(getUrl(), new File(tempDir, "segmented.zip")));
+		long segmented = System.nanoTime() - start;
+
+		Log.info(String.format("SegmentedDownloader: %d bytes at %d bytes/s by connection, single stream %d ms, 4 segments %d ms",
+				content.length, bytesPerSecond, TimeUnit.NANOSECONDS.toMillis(single), TimeUnit.NANOSECONDS.toMillis(segmented)));
+
+		Assert.assertArrayEquals(content, Files.toByteArray(new File(tempDir, "segmented.zip")));
+	}
+
+	private SegmentedDownloader createDownloader() {
+		SegmentedDownloader segmentedDownloader = new SegmentedDownloader(new ProgressMeter());
+		segmentedDownloader.setSegments(4);
+		segmentedDownloader.setMinSegmentSize(64 * 1024);
+
+		return segmentedDownloader;
+	}
+
+	private URL getUrl() throws IOException {
+		return new URL(String.format("http://localhost:%d/file.zip", server.getAddress().getPort()));
+	}
+
+	private void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
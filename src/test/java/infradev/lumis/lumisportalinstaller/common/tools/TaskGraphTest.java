@@ -0,0 +1,207 @@
+package infradev.lumis.lumisportalinstaller.common.tools;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+/**
+ *
+ * @author Alexandre Ribeiro de Souza
+ */
+public class TaskGraphTest {
+
+	/**
+	 * Test of execute method, of class TaskGraph.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	@Test
+	public void testExecute() throws IOException {
+		final List<String> executed = Lists.newArrayList();
+		final CountDownLatch bothExtracting = new CountDownLatch(2);
+
+		TaskGraph taskGraph = new TaskGraph();
+		taskGraph.setThreads(4);
+		taskGraph.add("configure server", new RecordTask(executed, "configure server", 0)).consumes("server", "libs");
+		taskGraph.add("extract portal", new TaskGraph.Task() {
+			@Override
+			public void run() throws IOException {
+				await(bothExtracting);
+				record(executed, "extract portal", 0);
+			}
+		}).produces("portal");
+		taskGraph.add("extract server", new TaskGraph.Task() {
+			@Override
+			public void run() throws IOException {
+				await(bothExtracting);
+				record(executed, "extract server", 0);
+			}
+		}).produces("server");
+		taskGraph.add("initialize portal", new RecordTask(executed, "initialize portal", 100)).consumes("portal");
+		taskGraph.add("copy libs", new RecordTask(executed, "copy libs", 0)).consumes("portal", "server").produces("libs");
+
+		taskGraph.execute();
+
+		Assert.assertEquals(5, executed.size());
+		Assert.assertTrue(executed.indexOf("copy libs") > executed.indexOf("extract portal"));
+		Assert.assertTrue(executed.indexOf("copy libs") > executed.indexOf("extract server"));
+		Assert.assertTrue(executed.indexOf("configure server") > executed.indexOf("copy libs"));
+		Assert.assertEquals("initialize portal", executed.get(4));
+		Assert.assertEquals(Arrays.asList("extract portal", "initialize portal"), taskGraph.getCriticalPath());
+	}
+
+	/**
+	 * Test of execute method with one thread, of class TaskGraph.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	@Test
+	public void testExecuteSequential() throws IOException {
+		List<String> executed = Lists.newArrayList();
+
+		TaskGraph taskGraph = new TaskGraph();
+		taskGraph.setThreads(1);
+		taskGraph.add("c", new RecordTask(executed, "c", 0)).consumes("b");
+		taskGraph.add("a", new RecordTask(executed, "a", 0)).produces("a");
+		taskGraph.add("b", new RecordTask(executed, "b", 0)).consumes("a").produces("b");
+		taskGraph.add("d", new RecordTask(executed, "d", 0));
+
+		taskGraph.execute();
+
+		Assert.assertEquals(Arrays.asList("a", "d", "b", "c"), executed);
+	}
+
+	/**
+	 * Test of execute method when a task fails, of class TaskGraph.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	@Test
+	public void testExecuteFailure() throws IOException {
+		final AtomicBoolean dependentExecuted = new AtomicBoolean();
+		final AtomicBoolean independentFinished = new AtomicBoolean();
+
+		TaskGraph taskGraph = new TaskGraph();
+		taskGraph.setThreads(2);
+		taskGraph.add("fail", new TaskGraph.Task() {
+			@Override
+			public void run() throws IOException {
+				throw new IOException("failed");
+			}
+		}).produces("a");
+		taskGraph.add("dependent", new TaskGraph.Task() {
+			@Override
+			public void run() throws IOException {
+				dependentExecuted.set(true);
+			}
+		}).consumes("a");
+		taskGraph.add("independent", new TaskGraph.Task() {
+			@Override
+			public void run() throws IOException {
+				sleep(100);
+				independentFinished.set(true);
+			}
+		});
+
+		try {
+			taskGraph.execute();
+			Assert.fail();
+		} catch (IOException e) {
+			Assert.assertEquals("failed", e.getMessage());
+		}
+		Assert.assertFalse(dependentExecuted.get());
+		Assert.assertTrue(independentFinished.get());
+	}
+
+	/**
+	 * Test of execute method with invalid graphs, of class TaskGraph.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	@Test
+	public void testExecuteInvalid() throws IOException {
+		List<String> executed = Lists.newArrayList();
+
+		TaskGraph missing = new TaskGraph();
+		missing.add("a", new RecordTask(executed, "a", 0)).consumes("b");
+		assertInvalid(missing, "a consumes b, which is not produced by any task");
+
+		TaskGraph duplicated = new TaskGraph();
+		duplicated.add("a", new RecordTask(executed, "a", 0)).produces("c");
+		duplicated.add("b", new RecordTask(executed, "b", 0)).produces("c");
+		assertInvalid(duplicated, "c is produced by a and b");
+
+		TaskGraph cycle = new TaskGraph();
+		cycle.add("a", new RecordTask(executed, "a", 0)).consumes("b").produces("a");
+		cycle.add("b", new RecordTask(executed, "b", 0)).consumes("a").produces("b");
+		cycle.add("c", new RecordTask(executed, "c", 0));
+		assertInvalid(cycle, "The tasks depend on each other: a, b");
+
+		Assert.assertTrue(executed.isEmpty());
+	}
+
+	private void assertInvalid(TaskGraph taskGraph, String message) throws IOException {
+		try {
+			taskGraph.execute();
+			Assert.fail();
+		} catch (IllegalStateException e) {
+			Assert.assertEquals(message, e.getMessage());
+		}
+	}
+
+	private static void record(List<String> executed, String name, long millis) throws IOException {
+		sleep(millis);
+		synchronized (executed) {
+			executed.add(name);
+		}
+	}
+
+	private static void await(CountDownLatch latch) throws IOException {
+		latch.countDown();
+		try {
+			if (!latch.await(10, TimeUnit.SECONDS)) {
+				throw new IOException("The tasks did not run at the same time");
+			}
+		} catch (InterruptedException e) {
+			throw new IOException(e);
+		}
+	}
+
+	private static void sleep(long millis) throws IOException {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			throw new IOException(e);
+		}
+	}
+
+	private static class RecordTask implements TaskGraph.Task {
+
+		private final List<String> executed;
+		private final String name;
+		private final long millis;
+
+		RecordTask(List<String> executed, String name, long millis) {
+			this.executed = executed;
+			this.name = name;
+			this.millis = millis;
+		}
+
+		@Override
+		public void run() throws IOException {
+			record(executed, name, millis);
+		}
+	}
+}
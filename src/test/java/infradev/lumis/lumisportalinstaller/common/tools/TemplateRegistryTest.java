@@ -0,0 +1,84 @@
+package infradev.lumis.lumisportalinstaller.common.tools;
+
+import infradev.lumis.lumisportalinstaller.common.ResourceEnum;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.mustachejava.DefaultMustacheFactory;
+import com.github.mustachejava.Mustache;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+
+/**
+ *
+ * @author Alexandre Ribeiro de Souza
+ */
+public class TemplateRegistryTest {
+
+	private static final String[] KEYS = { "lumisDataPath", "datasourceName", "databaseURL", "databaseType", "databaseClassname",
+			"databaseUsername", "databasePassword", "contextName", "contextSha1", "contextRoot", "driverClass", "connectionValidator", "Xms",
+			"Xmx", "MaxPermSize", "javaOpts", "javaHome" };
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Test of get method, of class TemplateRegistry.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	@Test
+	public void testGet() throws IOException {
+		TemplateRegistry templateRegistry = new TemplateRegistry();
+
+		Mustache mustache = templateRegistry.get(ResourceEnum.TOMCAT_PORTALXML.getResource());
+		Assert.assertSame(mustache, templateRegistry.get(ResourceEnum.TOMCAT_PORTALXML.getResource()));
+		Assert.assertNotSame(mustache, templateRegistry.get(ResourceEnum.TOMCAT_SETENVSH.getResource()));
+	}
+
+	/**
+	 * Test of render method, of class TemplateRegistry.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	@Test
+	public void testRender() throws IOException {
+		Map<String, Object> model = Maps.newHashMap();
+		for (String key : KEYS) {
+			model.put(key, String.format("%s <&\"'> \u00e7\u00e3o \ud800 C:\\lumis\\%s", key, key));
+		}
+
+		TemplateRegistry templateRegistry = new TemplateRegistry();
+		for (ResourceEnum resource : ResourceEnum.values()) {
+			String template = resource.getText();
+
+			File expected = new File(folder.getRoot(), resource.name() + ".expected");
+			Writer writer = new StringWriter();
+			new DefaultMustacheFactory().compile(new StringReader(template), "").execute(writer, model).flush();
+			Files.write(writer.toString(), expected, Charsets.UTF_8);
+
+			File actual = new File(folder.getRoot(), resource.name());
+			Files.write("a longer content that must be truncated by the render " + template, actual, Charsets.UTF_8);
+			templateRegistry.render(templateRegistry.get(resource.getResource()), model, actual);
+			Assert.assertArrayEquals(resource.name(), Files.toByteArray(expected), Files.toByteArray(actual));
+
+			File compiled = new File(folder.getRoot(), resource.name() + ".compiled");
+			templateRegistry.render(templateRegistry.compile(template, compiled.getName()), model, compiled);
+			Assert.assertArrayEquals(resource.name(), Files.toByteArray(expected), Files.toByteArray(compiled));
+			Assert.assertEquals(writer.toString(), templateRegistry.render(templateRegistry.get(resource.getResource()), model));
+		}
+	}
+}
@@ -0,0 +1,205 @@
+package infradev.lumis.lumisportalinstaller.common.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+
+/**
+ *
+ * @author Alexandre Ribeiro de Souza
+ */
+public class WarBuilderTest {
+
+	private File tempDir;
+	private File www;
+
+	@Before
+	public void setUp() throws IOException {
+		tempDir = Files.createTempDir();
+		www = createWww(new File(tempDir, "www"), 50, 6, 1);
+	}
+
+	/**
+	 * Create a www directory with pages, jars and files larger than the ones compressed in memory.
+	 */
+	private File createWww(File dir, int pages, int jars, int largeFiles) throws IOException {
+		Random random = new Random(42);
+
+		for (int i = 0; i < pages; i++) {
+			File page = new File(dir, String.format("lumis/portal/page%d.jsp", i));
+			Files.createParentDirs(page);
+			Files.write(Strings.repeat(String.format("<div id=\"%d\">Lumis Portal</div>\n", i), 100), page, Charsets.UTF_8);
+		}
+
+		for (int i = 0; i < jars; i++) {
+			byte[] content = new byte[(i < largeFiles ? 1536 : 16) * 1024];
+			random.nextBytes(content);
+			File jar = new File(dir, String.format("WEB-INF/lib/lib%d.jar", i));
+			Files.createParentDirs(jar);
+			Files.write(content, jar);
+		}
+
+		for (int i = 0; i < largeFiles; i++) {
+			byte[] content = new byte[1536 * 1024];
+			random.nextBytes(content);
+			Files.write(content, new File(dir, String.format("WEB-INF/random%d.dat", i)));
+			Files.write(Strings.repeat("<p>Lumis Portal</p>\n", 80000), new File(dir, String.format("lumis/large%d.html", i)), Charsets.UTF_8);
+		}
+
+		Files.write(new byte[0], new File(dir, "WEB-INF/empty.txt"));
+
+		return dir;
+	}
+
+	@After
+	public void tearDown() {
+		for (File file : Files.fileTreeTraverser().postOrderTraversal(tempDir)) {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Test of build method, of class WarBuilder.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	@Test
+	public void testBuild() throws IOException {
+		File war = new File(tempDir, "lumisportal.war");
+		WarBuilder warBuilder = new WarBuilder(new ProgressMeter());
+		warBuilder.setThreads(4);
+
+		Assert.assertEquals(59, warBuilder.build(www, new PathFilter(), war));
+
+		try (ZipFile zipFile = new ZipFile(war)) {
+			Assert.assertEquals(59, zipFile.size());
+
+			ZipEntry page = zipFile.getEntry("lumis/portal/page7.jsp");
+			Assert.assertEquals(ZipEntry.DEFLATED, page.getMethod());
+			Assert.assertTrue(page.getCompressedSize() < page.getSize());
+			Assert.assertEquals(ZipEntry.STORED, zipFile.getEntry("WEB-INF/lib/lib0.jar").getMethod());
+			Assert.assertEquals(ZipEntry.STORED, zipFile.getEntry("WEB-INF/empty.txt").getMethod());
+
+			ZipEntry large = zipFile.getEntry("lumis/large0.html");
+			Assert.assertEquals(ZipEntry.DEFLATED, large.getMethod());
+			Assert.assertTrue(large.getCompressedSize() < large.getSize());
+			Assert.assertEquals(ZipEntry.STORED, zipFile.getEntry("WEB-INF/random0.dat").getMethod());
+		}
+
+		int entries = 0;
+		try (ZipInputStream zis = new ZipInputStream(Files.asByteSource(war).openStream())) {
+			ZipEntry entry;
+			while ((entry = zis.getNextEntry()) != null) {
+				Assert.assertArrayEquals(entry.getName(), Files.toByteArray(new File(www, entry.getName())), ByteStreams.toByteArray(zis));
+				entries++;
+			}
+		}
+		Assert.assertEquals(59, entries);
+	}
+
+	/**
+	 * Test of repack method, of class WarBuilder.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	@Test
+	public void testRepack() throws IOException {
+		File archive = new File(tempDir, "lumisportal.zip");
+		try (ZipOutputStream zos = new ZipOutputStream(Files.asByteSink(archive).openBufferedStream())) {
+			zos.putNextEntry(new ZipEntry("www/"));
+			for (String path : new PathFilter().list(www)) {
+				zos.putNextEntry(new ZipEntry("www/" + path));
+				Files.asByteSource(new File(www, path)).copyTo(zos);
+				zos.closeEntry();
+			}
+			zos.putNextEntry(new ZipEntry("www/lumis/doc/index.html"));
+			zos.write("doc".getBytes(Charsets.UTF_8));
+			zos.putNextEntry(new ZipEntry("www/WEB-INF/jboss-web.xml"));
+			zos.write("<jboss-web/>".getBytes(Charsets.UTF_8));
+			zos.putNextEntry(new ZipEntry("setup/generatesql.sh"));
+			zos.write("java".getBytes(Charsets.UTF_8));
+		}
+
+		Files.write("<web-app/>", new File(www, "lumis/portal/page3.jsp"), Charsets.UTF_8);
+		File page5 = new File(www, "lumis/portal/page5.jsp");
+		Files.write(Files.toString(page5, Charsets.UTF_8).replace("Lumis", "LUMIS"), page5, Charsets.UTF_8);
+		Files.write("driver", new File(www, "WEB-INF/lib/driver.jar"), Charsets.UTF_8);
+		Assert.assertTrue(new File(www, "WEB-INF/lib/lib1.jar").delete());
+
+		File war = new File(tempDir, "lumisportal.war");
+		int totalFiles = new WarBuilder(new ProgressMeter()).repack(archive, "www/", new PathFilter().exclude("www/lumis/doc.*"), www,
+				Lists.newArrayList("lumis/portal/page5.jsp", "WEB-INF/jboss-web.xml"), war);
+
+		Assert.assertEquals(59, totalFiles);
+		try (ZipFile zipFile = new ZipFile(war); ZipFile sourceFile = new ZipFile(archive)) {
+			Assert.assertEquals(59, zipFile.size());
+			Assert.assertNull(zipFile.getEntry("lumis/doc/index.html"));
+			Assert.assertNull(zipFile.getEntry("WEB-INF/jboss-web.xml"));
+			Assert.assertNull(zipFile.getEntry("WEB-INF/lib/lib1.jar"));
+			Assert.assertNull(zipFile.getEntry("setup/generatesql.sh"));
+
+			for (String path : new PathFilter().list(www)) {
+				ZipEntry entry = zipFile.getEntry(path);
+				Assert.assertArrayEquals(path, Files.toByteArray(new File(www, path)), ByteStreams.toByteArray(zipFile.getInputStream(entry)));
+			}
+
+			Assert.assertEquals(sourceFile.getEntry("www/lumis/portal/page7.jsp").getCompressedSize(), zipFile.getEntry("lumis/portal/page7.jsp")
+					.getCompressedSize());
+		}
+	}
+
+	/**
+	 * Compare the build time with the single ZipOutputStream it replaces. It is a benchmark, run on demand.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	@Test
+	@Ignore
+	public void testBenchmark() throws IOException {
+		File benchmarkWww = createWww(new File(tempDir, "benchmark"), 200, 20, 10);
+		File zipWar = new File(tempDir, "zip.war");
+		File builtWar = new File(tempDir, "built.war");
+		WarBuilder warBuilder = new WarBuilder(new ProgressMeter());
+		long zipTime = Long.MAX_VALUE;
+		long builtTime = Long.MAX_VALUE;
+
+		for (int round = 0; round < 3; round++) {
+			long start = System.nanoTime();
+			try (ZipOutputStream zos = new ZipOutputStream(Files.asByteSink(zipWar).openBufferedStream())) {
+				for (String path : new PathFilter().list(benchmarkWww)) {
+					zos.putNextEntry(new ZipEntry(path));
+					Files.asByteSource(new File(benchmarkWww, path)).copyTo(zos);
+					zos.closeEntry();
+				}
+			}
+			zipTime = Math.min(zipTime, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			warBuilder.build(benchmarkWww, new PathFilter(), builtWar);
+			builtTime = Math.min(builtTime, System.nanoTime() - start);
+		}
+
+		Log.info(String.format("%d threads: ZipOutputStream %d ms (%d bytes), WarBuilder %d ms (%d bytes)", warBuilder.getThreads(),
+				TimeUnit.NANOSECONDS.toMillis(zipTime), zipWar.length(), TimeUnit.NANOSECONDS.toMillis(builtTime), builtWar.length()));
+	}
+}
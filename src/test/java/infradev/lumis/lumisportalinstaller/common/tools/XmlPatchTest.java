@@ -0,0 +1,166 @@
+package infradev.lumis.lumisportalinstaller.common.tools;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.io.Files;
+
+/**
+ *
+ * @author Alexandre Ribeiro de Souza
+ */
+public class XmlPatchTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Test of apply method, of class XmlPatch.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	@Test
+	public void testApply() throws IOException {
+		String source = Joiner.on('\n').join(
+				"<?xml version='1.0' encoding='UTF-8'?>",
+				"<!-- profile -->",
+				"<server xmlns=\"urn:jboss:domain:1.7\">",
+				"    <extensions>",
+				"        <extension module=\"org.jboss.as.jaxrs\"/>",
+				"        <extension module=\"org.jboss.as.naming\"/>",
+				"    </extensions>",
+				"    <profile>",
+				"        <subsystem xmlns=\"urn:jboss:domain:ee:1.2\"/>",
+				"        <subsystem xmlns=\"urn:jboss:domain:datasources:1.2\">",
+				"            <datasources>",
+				"                <datasource jndi-name=\"java:jboss/datasources/ExampleDS\"",
+				"                        enabled=\"true\">",
+				"                    <connection-url>jdbc:h2:mem:test;DB_CLOSE_DELAY=-1&amp;a=&lt;b&gt;</connection-url>",
+				"                </datasource>",
+				"            </datasources>",
+				"        </subsystem>",
+				"        <subsystem xmlns=\"urn:jboss:domain:webservices:1.2\">",
+				"            <modify-wsdl-address>true</modify-wsdl-address>",
+				"        </subsystem>",
+				"        <virtual-server name=\"default-host\" enable-welcome-root=\"true\">",
+				"            <alias name=\"localhost\"/>",
+				"        </virtual-server>",
+				"    </profile>",
+				"    <server-groups>",
+				"        <server-group name=\"main-server-group\"/>",
+				"    </server-groups>",
+				"</server>");
+		String expected = Joiner.on('\n').join(
+				"<?xml version=\"1.0\" encoding=\"UTF-8\"?>",
+				"<!-- profile -->",
+				"<server xmlns=\"urn:jboss:domain:1.7\">",
+				"    <extensions>",
+				"        <extension module=\"org.jboss.as.naming\"/>",
+				"    </extensions>",
+				"    <system-properties>",
+				"    </system-properties>",
+				"    <profile>",
+				"        <subsystem xmlns=\"urn:jboss:domain:ee:1.2\">",
+				"            <spec-descriptor-property-replacement>false</spec-descriptor-property-replacement>",
+				"        </subsystem>",
+				"        <subsystem xmlns=\"urn:jboss:domain:datasources:1.2\">",
+				"            <datasources>",
+				"                <datasource jndi-name=\"java:/PortalDS\">",
+				"                </datasource>",
+				"                <datasource jndi-name=\"java:jboss/datasources/ExampleDS\" enabled=\"true\">",
+				"                    <connection-url>jdbc:h2:mem:test;DB_CLOSE_DELAY=-1&amp;a=&lt;b></connection-url>",
+				"                </datasource>",
+				"            </datasources>",
+				"        </subsystem>",
+				"        <virtual-server name=\"default-host\" enable-welcome-root=\"false\">",
+				"            <alias name=\"localhost\"/>",
+				"        </virtual-server>",
+				"    </profile>",
+				"    <server-groups>",
+				"        <server-group name=\"lumis\"/>",
+				"    </server-groups>",
+				"</server>");
+
+		XmlPatch xmlPatch = new XmlPatch();
+		xmlPatch.remove("/server/extensions/extension[@module='org.jboss.as.jaxrs']");
+		xmlPatch.insertAfter("/server/extensions", "    <system-properties>\n    </system-properties>\n");
+		xmlPatch.insertFirst("//subsystem[starts-with(@xmlns,'urn:jboss:domain:ee:')]",
+				"            <spec-descriptor-property-replacement>false</spec-descriptor-property-replacement>");
+		xmlPatch.insertFirst("//datasources", "                <datasource jndi-name=\"java:/PortalDS\">\n                </datasource>");
+		xmlPatch.remove("//subsystem[starts-with(@xmlns,'urn:jboss:domain:webservices:')]");
+		xmlPatch.setAttribute("//virtual-server[@enable-welcome-root='true']", "enable-welcome-root", "false");
+		xmlPatch.replace("/server/server-groups", "    <server-groups>\n        <server-group name=\"lumis\"/>\n    </server-groups>");
+
+		Assert.assertEquals(expected, apply(xmlPatch, source));
+	}
+
+	/**
+	 * Test of apply method with text and uncomment edits, of class XmlPatch.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	@Test
+	public void testApplyUncomment() throws IOException {
+		String source = Joiner.on('\n').join(
+				"<!DOCTYPE lumisPortalConfig PUBLIC \"-//Lumis//DTD Portal Config//EN\" \"http://localhost:1/lumisportalconfig.dtd\">",
+				"<lumisPortalConfig>",
+				"\t<serverId>localhost</serverId>",
+				"\t<!-- The web root path",
+				"\t<webRootPath>/var/www</webRootPath>",
+				"\t-->",
+				"\t<!--",
+				"\t<htmlGeneration>",
+				"\t\t<enabled>true</enabled>",
+				"\t</htmlGeneration>",
+				"\t-->",
+				"\t<policy>",
+				"\t\t<entry/>",
+				"\t</policy>",
+				"</lumisPortalConfig>");
+		String expected = Joiner.on('\n').join(
+				"<!DOCTYPE lumisPortalConfig PUBLIC \"-//Lumis//DTD Portal Config//EN\" \"http://localhost:1/lumisportalconfig.dtd\">",
+				"<lumisPortalConfig>",
+				"\t<serverId>host-0</serverId>",
+				"\t<!-- The web root path -->",
+				"\t<webRootPath>/opt/htdocs</webRootPath>",
+				"\t",
+				"\t",
+				"\t<htmlGeneration>",
+				"\t\t<enabled>true</enabled>",
+				"\t</htmlGeneration>",
+				"\t",
+				"\t<policy>",
+				"\t\t<entry/>",
+				"\t\t<application-policy name=\"LumisPortal\"/>",
+				"\t</policy>",
+				"</lumisPortalConfig>");
+
+		XmlPatch xmlPatch = new XmlPatch();
+		xmlPatch.setText("/lumisPortalConfig/serverId", "host-0");
+		xmlPatch.uncomment("/lumisPortalConfig/webRootPath");
+		xmlPatch.setText("/lumisPortalConfig/webRootPath", "/opt/htdocs");
+		xmlPatch.uncomment("//htmlGeneration");
+		xmlPatch.insertLast("/lumisPortalConfig/policy", "\t\t<application-policy name=\"LumisPortal\"/>");
+
+		Assert.assertEquals(expected, apply(xmlPatch, source));
+	}
+
+	private String apply(XmlPatch xmlPatch, String source) throws IOException {
+		File sourceFile = folder.newFile();
+		File targetFile = folder.newFile();
+		Files.write(source, sourceFile, Charsets.UTF_8);
+
+		xmlPatch.apply(sourceFile, targetFile);
+
+		return Files.toString(targetFile, Charsets.UTF_8);
+	}
+}
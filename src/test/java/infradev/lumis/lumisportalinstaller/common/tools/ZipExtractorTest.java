@@ -0,0 +1,221 @@
+package infradev.lumis.lumisportalinstaller.common.tools;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ *
+ * @author Alexandre Ribeiro de Souza
+ */
+public class ZipExtractorTest {
+
+	private File tempDir;
+	private File archive;
+
+	@Before
+	public void setUp() throws IOException {
+		tempDir = Files.createTempDir();
+		archive = new File(tempDir, "archive.zip");
+
+		try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(archive))) {
+			zos.putNextEntry(new ZipEntry("root/"));
+			zos.closeEntry();
+			zos.putNextEntry(new ZipEntry("root/empty/"));
+			zos.closeEntry();
+			for (int i = 0; i < 500; i++) {
+				zos.putNextEntry(new ZipEntry(String.format("root/dir%d/sub/file%d.txt", i % 7, i)));
+				zos.write(String.format("content of file %d", i).getBytes(Charsets.UTF_8));
+				zos.closeEntry();
+			}
+			zos.putNextEntry(new ZipEntry("root/doc/ignored.txt"));
+			zos.write("ignored".getBytes(Charsets.UTF_8));
+			zos.closeEntry();
+		}
+	}
+
+	@After
+	public void tearDown() {
+		delete(tempDir);
+	}
+
+	/**
+	 * Test of extract method, of class ZipExtractor.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	@Test
+	public void testExtract() throws IOException {
+		for (int threads : new int[] { 1, 4 }) {
+			File target = new File(tempDir, "target" + threads);
+			ZipExtractor zipExtractor = new ZipExtractor(new ProgressMeter());
+			zipExtractor.setThreads(threads);
+
+			int totalFiles = zipExtractor.extract(archive, target, new PathFilter().exclude("root/doc.*"), true);
+
+			Assert.assertEquals(503, totalFiles);
+			Assert.assertTrue(new File(target, "empty").isDirectory());
+			Assert.assertFalse(new File(target, "doc").exists());
+			for (int i = 0; i < 500; i++) {
+				File file = new File(target, String.format("dir%d/sub/file%d.txt", i % 7, i));
+				Assert.assertEquals(String.format("content of file %d", i), Files.toString(file, Charsets.UTF_8));
+			}
+		}
+	}
+
+	/**
+	 * Test of extract method on a directory already extracted, of class ZipExtractor.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 * @throws InterruptedException
+	 *             Throws InterruptedException.
+	 */
+	@Test
+	public void testExtractIncremental() throws IOException, InterruptedException {
+		File target = new File(tempDir, "target");
+		File unchanged = new File(target, "dir1/sub/file1.txt");
+		File changed = new File(target, "dir2/sub/file2.txt");
+		File deleted = new File(target, "dir3/sub/file3.txt");
+		ZipExtractor zipExtractor = new ZipExtractor(new ProgressMeter());
+
+		zipExtractor.extract(archive, target, new PathFilter().exclude("root/doc.*"), true);
+		Assert.assertTrue(new File(tempDir, "target.manifest").isFile());
+
+		long lastModified = unchanged.lastModified();
+		Thread.sleep(50);
+		Files.write("changed", changed, Charsets.UTF_8);
+		deleted.delete();
+
+		Assert.assertEquals(503, zipExtractor.extract(archive, target, new PathFilter().exclude("root/doc.*"), true));
+		Assert.assertEquals(lastModified, unchanged.lastModified());
+		Assert.assertEquals("content of file 2", Files.toString(changed, Charsets.UTF_8));
+		Assert.assertEquals("content of file 3", Files.toString(deleted, Charsets.UTF_8));
+	}
+
+	/**
+	 * Test of extract method with a transformer, of class ZipExtractor.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	@Test
+	public void testExtractTransformer() throws IOException {
+		EntryTransformer transformer = new EntryTransformer() {
+
+			@Override
+			public void transform(File original, File file) throws IOException {
+				Files.write(Files.toString(original, Charsets.UTF_8).toUpperCase(), file, Charsets.UTF_8);
+			}
+		};
+
+		for (int threads : new int[] { 1, 4 }) {
+			File target = new File(tempDir, "target" + threads);
+			ZipExtractor zipExtractor = new ZipExtractor(new ProgressMeter());
+			zipExtractor.setThreads(threads);
+			zipExtractor.addTransformer("dir1/sub/[^/]*\\.txt", transformer);
+
+			for (int run = 0; run < 2; run++) {
+				if (run == 0) {
+					zipExtractor.extract(archive, target, new PathFilter().exclude("root/doc.*"), true);
+				} else {
+					try (InputStream is = new FileInputStream(archive)) {
+						zipExtractor.extract(is, target, new PathFilter().exclude("root/doc.*"), true);
+					}
+				}
+
+				for (int i = 0; i < 500; i++) {
+					File file = new File(target, String.format("dir%d/sub/file%d.txt", i % 7, i));
+					File original = new File(file.getPath() + ".original");
+					String content = String.format("content of file %d", i);
+					if (i % 7 == 1) {
+						Assert.assertEquals(content.toUpperCase(), Files.toString(file, Charsets.UTF_8));
+						Assert.assertEquals(content, Files.toString(original, Charsets.UTF_8));
+					} else {
+						Assert.assertEquals(content, Files.toString(file, Charsets.UTF_8));
+						Assert.assertFalse(original.exists());
+					}
+				}
+			}
+
+			File file = new File(target, "dir1/sub/file1.txt");
+			Files.write("changed", file, Charsets.UTF_8);
+			zipExtractor.extract(archive, target, new PathFilter().exclude("root/doc.*"), true);
+			Assert.assertEquals("CONTENT OF FILE 1", Files.toString(file, Charsets.UTF_8));
+		}
+	}
+
+	/**
+	 * Test of extract method while downloading, of class ZipExtractor.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	@Test
+	public void testExtractStream() throws IOException {
+		HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/archive.zip", new HttpHandler() {
+
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				exchange.sendResponseHeaders(200, archive.length());
+				try (OutputStream os = exchange.getResponseBody()) {
+					Files.copy(archive, os);
+				}
+			}
+		});
+		server.start();
+
+		try {
+			URL url = new URL(String.format("http://localhost:%d/archive.zip", server.getAddress().getPort()));
+			File target = new File(tempDir, "target");
+			File copy = new File(tempDir, "copy.zip");
+			ZipExtractor zipExtractor = new ZipExtractor(new ProgressMeter());
+
+			int totalFiles;
+			try (InputStream is = url.openStream(); OutputStream os = new FileOutputStream(copy)) {
+				totalFiles = zipExtractor.extract(is, os, target, new PathFilter().exclude("root/doc.*"), true);
+			}
+
+			Assert.assertEquals(503, totalFiles);
+			Assert.assertTrue(Files.equal(archive, copy));
+			Assert.assertTrue(new File(target, "empty").isDirectory());
+			Assert.assertFalse(new File(target, "doc").exists());
+			for (int i = 0; i < 500; i++) {
+				File file = new File(target, String.format("dir%d/sub/file%d.txt", i % 7, i));
+				Assert.assertEquals(String.format("content of file %d", i), Files.toString(file, Charsets.UTF_8));
+			}
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	private void delete(File file) {
+		if (file.isDirectory()) {
+			for (File child : file.listFiles()) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
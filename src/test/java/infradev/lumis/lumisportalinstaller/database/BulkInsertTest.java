@@ -0,0 +1,63 @@
+package infradev.lumis.lumisportalinstaller.database;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+/**
+ *
+ * @author Alexandre Ribeiro de Souza
+ */
+public class BulkInsertTest {
+
+	/**
+	 * Test of parse method, of class BulkInsert.
+	 */
+	@Test
+	public void testParse() {
+		BulkInsert.Row row = BulkInsert.parse("INSERT INTO lum_a (id, name, created, parent) VALUES (-1, 'it''s, (a) \\'b\\'\\n', NOW(), NULL);",
+				"MYSQL");
+		Assert.assertEquals("INSERT INTO lum_a (id, name, created, parent) VALUES (?, ?, NOW(), NULL)", row.toSql(1));
+		Assert.assertEquals(Lists.<Object> newArrayList(new BigDecimal("-1"), "it's, (a) 'b'\n"), row.getParameters());
+
+		row = BulkInsert.parse("insert into [lum_a] values (N'ação', to_date('2014-01-01', 'yyyy-mm-dd'), 1.50)", "SQLSERVER");
+		Assert.assertEquals("insert into [lum_a] values (?, to_date('2014-01-01', 'yyyy-mm-dd'), ?), (?, to_date('2014-01-01', 'yyyy-mm-dd'), ?)",
+				row.toSql(2));
+		Assert.assertEquals(Lists.<Object> newArrayList("ação", new BigDecimal("1.50")), row.getParameters());
+
+		Assert.assertEquals(Lists.<Object> newArrayList("a\\b"), BulkInsert.parse("INSERT INTO lum_a VALUES ('a\\b')", "ORACLE").getParameters());
+
+		row = BulkInsert.parse("INSERT INTO lum_a VALUES (1, TIMESTAMP '2014-01-01 10:20:30.5')", "ORACLE");
+		Assert.assertEquals("INSERT INTO lum_a VALUES (?, ?)", row.toSql(1));
+		Assert.assertEquals(Timestamp.valueOf("2014-01-01 10:20:30.5"), row.getParameters().get(1));
+
+		row = BulkInsert.parse("INSERT INTO lum_a VALUES (X'00ff', 0x0A, HEXTORAW('7f'), x'')", "H2");
+		Assert.assertEquals("INSERT INTO lum_a VALUES (?, ?, ?, ?)", row.toSql(1));
+		Assert.assertArrayEquals(new byte[] { 0, -1 }, (byte[]) row.getParameters().get(0));
+		Assert.assertArrayEquals(new byte[] { 10 }, (byte[]) row.getParameters().get(1));
+		Assert.assertArrayEquals(new byte[] { 127 }, (byte[]) row.getParameters().get(2));
+		Assert.assertArrayEquals(new byte[0], (byte[]) row.getParameters().get(3));
+
+		Assert.assertNull(BulkInsert.parse("INSERT INTO lum_a VALUES (1), (2)", "MYSQL"));
+		Assert.assertNull(BulkInsert.parse("INSERT INTO lum_a VALUES (1) ON DUPLICATE KEY UPDATE id = 1", "MYSQL"));
+		Assert.assertNull(BulkInsert.parse("INSERT INTO lum_a SELECT * FROM lum_b", "MYSQL"));
+		Assert.assertNull(BulkInsert.parse("INSERT INTO lum_a VALUES (NULL)", "MYSQL"));
+	}
+
+	/**
+	 * Test of accepts method, of class BulkInsert.
+	 */
+	@Test
+	public void testAccepts() {
+		BulkInsert bulkInsert = new BulkInsert("MYSQL");
+		bulkInsert.add(BulkInsert.parse("INSERT INTO lum_a (id, name) VALUES (1, 'a')", "MYSQL"));
+
+		Assert.assertTrue(bulkInsert.accepts(BulkInsert.parse("INSERT INTO lum_a (id, name) VALUES (2, 'b')", "MYSQL")));
+		Assert.assertFalse(bulkInsert.accepts(BulkInsert.parse("INSERT INTO lum_a (id, name) VALUES (2, NULL)", "MYSQL")));
+		Assert.assertFalse(bulkInsert.accepts(BulkInsert.parse("INSERT INTO lum_b (id, name) VALUES (2, 'b')", "MYSQL")));
+	}
+}
@@ -0,0 +1,115 @@
+package infradev.lumis.lumisportalinstaller.database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Alexandre Ribeiro de Souza
+ */
+public class ConnectionPoolTest {
+
+	private static final String URL = "jdbc:h2:mem:connectionpool;DB_CLOSE_DELAY=-1";
+
+	private ConnectionPool pool;
+
+	@Before
+	public void setUp() {
+		pool = new ConnectionPool(URL, "sa", "", 2, 60000);
+		pool.setBorrowTimeout(100);
+	}
+
+	@After
+	public void tearDown() {
+		pool.close();
+	}
+
+	/**
+	 * Test of borrow and release methods, of class ConnectionPool.
+	 *
+	 * @throws SQLException
+	 *             Throws SQLException.
+	 */
+	@Test
+	public void testBorrow() throws SQLException {
+		Connection first = pool.borrow();
+		first.setAutoCommit(false);
+		pool.release(first);
+
+		Connection second = pool.borrow();
+		Assert.assertSame(first, second);
+		Assert.assertTrue(second.getAutoCommit());
+
+		Connection third = pool.borrow();
+		Assert.assertNotSame(second, third);
+
+		try {
+			pool.borrow();
+			Assert.fail();
+		} catch (SQLException e) {
+			// the pool has 2 connections
+		}
+
+		third.close();
+		pool.release(third);
+		pool.release(second);
+
+		Assert.assertSame(second, pool.borrow());
+		Assert.assertFalse(pool.borrow().isClosed());
+	}
+
+	/**
+	 * Test of borrow method with an expired idle connection, of class ConnectionPool.
+	 *
+	 * @throws SQLException
+	 *             Throws SQLException.
+	 * @throws InterruptedException
+	 *             Throws InterruptedException.
+	 */
+	@Test
+	public void testIdleTimeout() throws SQLException, InterruptedException {
+		ConnectionPool shortPool = new ConnectionPool(URL, "sa", "", 2, 10);
+
+		Connection first = shortPool.borrow();
+		shortPool.release(first);
+		Thread.sleep(50);
+
+		Connection second = shortPool.borrow();
+		Assert.assertNotSame(first, second);
+		Assert.assertTrue(first.isClosed());
+
+		shortPool.release(second);
+		shortPool.close();
+		Assert.assertTrue(second.isClosed());
+	}
+
+	/**
+	 * Test of close method with a borrowed connection, of class ConnectionPool.
+	 *
+	 * @throws SQLException
+	 *             Throws SQLException.
+	 */
+	@Test
+	public void testCloseBorrowed() throws SQLException {
+		Connection idle = pool.borrow();
+		Connection borrowed = pool.borrow();
+		pool.release(idle);
+
+		pool.close();
+		Assert.assertTrue(idle.isClosed());
+		Assert.assertTrue(borrowed.isClosed());
+
+		pool.release(borrowed);
+		try {
+			pool.borrow();
+			Assert.fail();
+		} catch (SQLException e) {
+			// the pool is closed
+		}
+	}
+}
@@ -0,0 +1,196 @@
+package infradev.lumis.lumisportalinstaller.database;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ *
+ * @author Alexandre Ribeiro de Souza
+ */
+public class DeferredDdlTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private List<Connection> connections;
+
+	@Before
+	public void setUp() throws SQLException {
+		connections = Lists.newArrayList();
+		for (int i = 0; i < 2; i++) {
+			connections.add(DriverManager.getConnection("jdbc:h2:mem:deferredddl;MODE=MySQL", "sa", ""));
+		}
+	}
+
+	@After
+	public void tearDown() throws SQLException {
+		try (Statement statement = connections.get(0).createStatement()) {
+			statement.execute("DROP ALL OBJECTS");
+		}
+		for (Connection connection : connections) {
+			connection.close();
+		}
+	}
+
+	/**
+	 * Test of isDeferrable method, of class DeferredDdl.
+	 */
+	@Test
+	public void testIsDeferrable() {
+		Assert.assertTrue(DeferredDdl.isDeferrable("CREATE UNIQUE INDEX ix_lum_a ON lum_a (name)"));
+		Assert.assertTrue(DeferredDdl.isDeferrable("create nonclustered index ix_lum_a on [lum_a] (name)"));
+		Assert.assertTrue(DeferredDdl.isDeferrable("ALTER TABLE lum_b ADD CONSTRAINT fk_lum_b FOREIGN KEY (a_id) REFERENCES lum_a (id)"));
+		Assert.assertTrue(DeferredDdl.isDeferrable("alter table lum_b add (constraint pk_lum_b primary key (id))"));
+		Assert.assertTrue(DeferredDdl.isDeferrable("ALTER TABLE `lum_b` ADD INDEX ix_lum_b (a_id)"));
+		Assert.assertFalse(DeferredDdl.isDeferrable("ALTER TABLE lum_b ADD a_id INT"));
+		Assert.assertFalse(DeferredDdl.isDeferrable("ALTER TABLE lum_b DROP CONSTRAINT fk_lum_b"));
+		Assert.assertFalse(DeferredDdl.isDeferrable("CREATE TABLE lum_index (id INT)"));
+	}
+
+	/**
+	 * Test of execute method, of class DeferredDdl.
+	 *
+	 * @throws SQLException
+	 *             Throws SQLException.
+	 */
+	@Test
+	public void testExecute() throws SQLException {
+		List<String> statements = Lists.newArrayList();
+		statements.add("CREATE TABLE lum_a (id INT PRIMARY KEY, name VARCHAR(50))");
+		statements.add("CREATE TABLE lum_b (id INT NOT NULL, a_id INT)");
+		statements.add("ALTER TABLE lum_b ADD CONSTRAINT pk_lum_b PRIMARY KEY (id)");
+		statements.add("ALTER TABLE lum_b ADD CONSTRAINT fk_lum_b FOREIGN KEY (a_id) REFERENCES lum_a (id)");
+		statements.add("CREATE INDEX ix_lum_a ON lum_a (name)");
+		for (int i = 0; i < 100; i++) {
+			statements.add(String.format("INSERT INTO lum_b (id, a_id) VALUES (%d, %d)", i, i));
+		}
+		for (int i = 0; i < 100; i++) {
+			statements.add(String.format("INSERT INTO lum_a (id, name) VALUES (%d, 'a%d')", i, i));
+		}
+
+		DeferredDdl deferredDdl = new DeferredDdl(new H2Impl(), null);
+		Assert.assertEquals(statements.size(), createExecutor(deferredDdl).execute(connections.get(0), statements));
+		Assert.assertEquals(3, deferredDdl.size());
+
+		deferredDdl.execute(connections);
+		Assert.assertEquals(0, deferredDdl.size());
+
+		try (Statement statement = connections.get(0).createStatement()) {
+			try (ResultSet resultSet = statement.executeQuery("SELECT count(*) FROM INFORMATION_SCHEMA.INDEXES WHERE INDEX_NAME = 'IX_LUM_A'")) {
+				resultSet.next();
+				Assert.assertEquals(1, resultSet.getInt(1));
+			}
+
+			try {
+				statement.execute("INSERT INTO lum_b (id, a_id) VALUES (100, 999)");
+				Assert.fail();
+			} catch (SQLException e) {
+				// the foreign key was created after the data
+			}
+		}
+	}
+
+	/**
+	 * Test of execute method with a failing statement, of class DeferredDdl.
+	 *
+	 * @throws SQLException
+	 *             Throws SQLException.
+	 */
+	@Test
+	public void testExecuteFailure() throws SQLException {
+		List<String> statements = Lists.newArrayList();
+		statements.add("CREATE TABLE lum_a (id INT PRIMARY KEY, name VARCHAR(50))");
+		statements.add("CREATE INDEX ix_lum_a_id ON lum_a (id, name)");
+		statements.add("CREATE UNIQUE INDEX ix_lum_a ON lum_a (name)");
+		for (int i = 0; i < 100; i++) {
+			statements.add(String.format("INSERT INTO lum_a (id, name) VALUES (%d, 'a%d')", i, i % 50));
+		}
+
+		DeferredDdl deferredDdl = new DeferredDdl(new H2Impl(), null);
+		createExecutor(deferredDdl).execute(connections.get(0), statements);
+
+		try {
+			deferredDdl.execute(connections);
+			Assert.fail();
+		} catch (ScriptException e) {
+			Assert.assertEquals(3, e.getLine());
+		}
+	}
+
+	/**
+	 * Test of execute method with a failure out of the statements, of class DeferredDdl.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 * @throws SQLException
+	 *             Throws SQLException.
+	 */
+	@Test
+	public void testExecuteJournalFailure() throws IOException, SQLException {
+		List<String> statements = Lists.newArrayList();
+		statements.add("CREATE TABLE lum_a (id INT PRIMARY KEY, name VARCHAR(50))");
+		statements.add("CREATE TABLE lum_b (id INT PRIMARY KEY, name VARCHAR(50))");
+		statements.add("CREATE INDEX ix_lum_a ON lum_a (name)");
+		statements.add("CREATE INDEX ix_lum_b ON lum_b (name)");
+		File script = folder.newFile("db_mysql.sql");
+		Files.write(Joiner.on(";\n").join(statements), script, Charsets.UTF_8);
+
+		final CountDownLatch slowStarted = new CountDownLatch(1);
+		final AtomicBoolean slowCommitted = new AtomicBoolean();
+		DeferredDdl deferredDdl = new DeferredDdl(new H2Impl(), null);
+		deferredDdl.setJournal(new ScriptJournal(new File(folder.getRoot(), "db_mysql.sql.journal"), script) {
+			@Override
+			public void committed(int first, int last) throws IOException {
+				if (first == 3) {
+					Uninterruptibles.awaitUninterruptibly(slowStarted);
+					throw new IOException("disk full");
+				}
+				slowStarted.countDown();
+				Uninterruptibles.sleepUninterruptibly(500, TimeUnit.MILLISECONDS);
+				slowCommitted.set(true);
+			}
+		});
+		createExecutor(deferredDdl).execute(connections.get(0), statements);
+
+		try {
+			deferredDdl.execute(connections);
+			Assert.fail();
+		} catch (SQLException e) {
+			Assert.assertFalse(e instanceof ScriptException);
+			Assert.assertTrue(e.getCause() instanceof IOException);
+		}
+		Assert.assertTrue(slowCommitted.get());
+	}
+
+	private ScriptExecutor createExecutor(DeferredDdl deferredDdl) {
+		ScriptExecutor scriptExecutor = new ScriptExecutor(new H2Impl(), null);
+		scriptExecutor.setBatchSize(50);
+		scriptExecutor.setCommitSize(120);
+		scriptExecutor.setBulkLoad(true);
+		scriptExecutor.setDeferredDdl(deferredDdl);
+
+		return scriptExecutor;
+	}
+}
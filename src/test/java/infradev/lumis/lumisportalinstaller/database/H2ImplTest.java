@@ -0,0 +1,107 @@
+package infradev.lumis.lumisportalinstaller.database;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+/**
+ *
+ * @author Alexandre Ribeiro de Souza
+ */
+public class H2ImplTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Test of configureLumishibernateCfgXml method, of class H2Impl.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	@Test
+	public void testConfigureLumishibernateCfgXml() throws IOException {
+		File file = folder.newFile("lumishibernate.cfg.xml");
+		List<String> lines = Lists.newArrayList("<hibernate-configuration>", "\t<session-factory>");
+		for (String database : new String[] { "MySQL", "Oracle" }) {
+			lines.add("\t\t<!-- " + database + " -->");
+			lines.add("\t\t<!--");
+			lines.add("\t\t<property name=\"dialect\">org.hibernate.dialect." + database + "Dialect</property>");
+			lines.add("\t\t<property name=\"connection.driver_class\">" + database + "Driver</property>");
+			lines.add("\t\t<property name=\"connection.username\"></property>");
+			lines.add("\t\t<property name=\"connection.password\"></property>");
+			lines.add("\t\t<property name=\"connection.url\"></property>");
+			lines.add("\t\t-->");
+		}
+		lines.add("\t</session-factory>");
+		lines.add("</hibernate-configuration>");
+		Files.write(Joiner.on('\n').join(lines), file, Charsets.UTF_8);
+
+		H2Impl database = new H2Impl() {
+			{
+				databaseUser = "sa";
+				databasePassword = "";
+				databaseUrl = "jdbc:h2:./lumisdata/h2/lumisportal;MODE=MySQL";
+			}
+		};
+		lines = database.configureLumishibernateCfgXml(file);
+
+		Assert.assertEquals("\t\t<!-- -->", lines.get(3));
+		Assert.assertEquals("\t\t<property name=\"dialect\">org.hibernate.dialect.MySQLDialect</property>", lines.get(4));
+		Assert.assertEquals("\t\t<property name=\"connection.driver_class\">org.h2.Driver</property>", lines.get(5));
+		Assert.assertEquals("\t\t<property name=\"connection.url\">jdbc:h2:./lumisdata/h2/lumisportal;MODE=MySQL</property>", lines.get(8));
+		Assert.assertEquals("\t\t<property name=\"connection.driver_class\">OracleDriver</property>", lines.get(13));
+	}
+
+	/**
+	 * Test of the MySQL script of the portal executed on H2, of class H2Impl.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 * @throws SQLException
+	 *             Throws SQLException.
+	 */
+	@Test
+	public void testExecuteScript() throws IOException, SQLException {
+		StringBuilder script = new StringBuilder("CREATE TABLE `lum_a` (id INT PRIMARY KEY, name VARCHAR(50));\n# rows\n");
+		for (int i = 0; i < 250; i++) {
+			script.append(String.format("INSERT INTO `lum_a` (id, name) VALUES (%d, 'a''%d;');\n", i, i));
+		}
+
+		H2Impl database = new H2Impl();
+		Assert.assertEquals("MYSQL", database.getScriptType());
+
+		try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:h2impl;MODE=MySQL", "sa", "");
+				SqlScriptReader reader = new SqlScriptReader(new StringReader(script.toString()), database.getDialect())) {
+			ScriptExecutor scriptExecutor = new ScriptExecutor(database, null);
+			scriptExecutor.setBatchSize(50);
+			scriptExecutor.setCommitSize(120);
+			scriptExecutor.setBulkLoad(true);
+
+			Assert.assertEquals(251, scriptExecutor.execute(connection, reader));
+
+			try (Statement statement = connection.createStatement();
+					ResultSet resultSet = statement.executeQuery("select count(*), max(case when id = 99 then name end) from lum_a")) {
+				resultSet.next();
+				Assert.assertEquals(250, resultSet.getInt(1));
+				Assert.assertEquals("a'99;", resultSet.getString(2));
+			}
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package infradev.lumis.lumisportalinstaller.database;
+
+import infradev.lumis.lumisportalinstaller.common.tools.ProgressMeter;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+/**
+ *
+ * @author Alexandre Ribeiro de Souza
+ */
+public class ParallelScriptExecutorTest {
+
+	private static final String URL = "jdbc:h2:mem:parallelscriptexecutor;MODE=MySQL;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000";
+
+	private List<Connection> connections;
+
+	@Before
+	public void setUp() throws SQLException {
+		connections = Lists.newArrayList();
+		for (int i = 0; i < 4; i++) {
+			connections.add(DriverManager.getConnection(URL, "sa", ""));
+		}
+	}
+
+	@After
+	public void tearDown() throws SQLException {
+		try (Statement statement = connections.get(0).createStatement()) {
+			statement.execute("DROP ALL OBJECTS");
+		}
+		for (Connection connection : connections) {
+			connection.close();
+		}
+	}
+
+	/**
+	 * Test of tableOf method, of class ParallelScriptExecutor.
+	 */
+	@Test
+	public void testTableOf() {
+		ParallelScriptExecutor.Table table = ParallelScriptExecutor.tableOf("CREATE TABLE `lum_b` (id INT, a_id INT REFERENCES lum_a (id))");
+		Assert.assertEquals("lum_b", table.getName());
+		Assert.assertEquals(ImmutableSet.of("lum_a"), table.getForeignKeys());
+
+		table = ParallelScriptExecutor.tableOf("INSERT INTO lum_c (id) SELECT id FROM lum_a a JOIN lum_b b ON a.id = b.a_id");
+		Assert.assertEquals("lum_c", table.getName());
+		Assert.assertEquals(ImmutableSet.of("lum_a", "lum_b"), table.getRead());
+
+		Assert.assertEquals("lum_a", ParallelScriptExecutor.tableOf("delete from [lum_a] where id = 1").getName());
+		Assert.assertEquals("lum_b", ParallelScriptExecutor.tableOf("CREATE UNIQUE INDEX ix ON lum_b (a_id)").getName());
+		Assert.assertNull(ParallelScriptExecutor.tableOf("CREATE VIEW v AS SELECT * FROM lum_a"));
+	}
+
+	/**
+	 * Test of execute method, of class ParallelScriptExecutor.
+	 *
+	 * @throws SQLException
+	 *             Throws SQLException.
+	 */
+	@Test
+	public void testExecute() throws SQLException {
+		List<String> statements = createScript(300);
+
+		Assert.assertEquals(statements.size(), createExecutor(null).execute(connections, statements.iterator()));
+
+		Assert.assertEquals(300, count("lum_a"));
+		Assert.assertEquals(300, count("lum_b"));
+		Assert.assertEquals(300, count("lum_c"));
+		Assert.assertEquals(300, count("lum_v"));
+		for (Connection connection : connections) {
+			Assert.assertTrue(connection.getAutoCommit());
+		}
+	}
+
+	/**
+	 * Test of execute method with a failing statement, of class ParallelScriptExecutor.
+	 *
+	 * @throws SQLException
+	 *             Throws SQLException.
+	 */
+	@Test
+	public void testExecuteFailure() throws SQLException {
+		List<String> statements = createScript(300);
+		int position = statements.indexOf("INSERT INTO lum_b (id, a_id) VALUES (150, 150)");
+		statements.add(position, "INSERT INTO lum_b (id, a_id) VALUES (1000, 1000)");
+
+		try {
+			createExecutor(new ProgressMeter()).execute(connections, statements.iterator());
+			Assert.fail();
+		} catch (ScriptException e) {
+			Assert.assertEquals(position + 1, e.getLine());
+		}
+
+		Assert.assertEquals(150, count("lum_b"));
+	}
+
+	private ParallelScriptExecutor createExecutor(ProgressMeter progressMeter) {
+		ParallelScriptExecutor parallelScriptExecutor = new ParallelScriptExecutor(new MySQLImpl(), progressMeter);
+		parallelScriptExecutor.setBatchSize(50);
+		parallelScriptExecutor.setCommitSize(100);
+
+		return parallelScriptExecutor;
+	}
+
+	private List<String> createScript(int rows) {
+		List<String> statements = Lists.newArrayList();
+
+		statements.add("CREATE TABLE lum_a (id INT PRIMARY KEY, name VARCHAR(50))");
+		statements.add("CREATE TABLE lum_b (id INT PRIMARY KEY, a_id INT, FOREIGN KEY (a_id) REFERENCES lum_a (id))");
+		statements.add("CREATE TABLE lum_c (id INT PRIMARY KEY, name VARCHAR(50))");
+		for (int i = 0; i < rows; i++) {
+			statements.add(String.format("INSERT INTO lum_a (id, name) VALUES (%d, 'a%d')", i, i));
+			statements.add(String.format("INSERT INTO lum_b (id, a_id) VALUES (%d, %d)", i, i));
+			statements.add(String.format("INSERT INTO lum_c (id, name) VALUES (%d, 'c%d')", i, i));
+		}
+		statements.add("CREATE VIEW lum_v AS SELECT a.id FROM lum_a a JOIN lum_b b ON a.id = b.a_id");
+		statements.add("CREATE INDEX ix_lum_c ON lum_c (name)");
+
+		return statements;
+	}
+
+	private int count(String table) throws SQLException {
+		try (Statement statement = connections.get(0).createStatement();
+				ResultSet resultSet = statement.executeQuery("select count(*) from " + table)) {
+			resultSet.next();
+
+			return resultSet.getInt(1);
+		}
+	}
+}
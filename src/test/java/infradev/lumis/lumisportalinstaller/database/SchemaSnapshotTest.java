@@ -0,0 +1,158 @@
+package infradev.lumis.lumisportalinstaller.database;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+/**
+ *
+ * @author Alexandre Ribeiro de Souza
+ */
+public class SchemaSnapshotTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Test of export method, of class SchemaSnapshot.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 * @throws SQLException
+	 *             Throws SQLException.
+	 */
+	@Test
+	public void testExport() throws IOException, SQLException {
+		List<String> statements = Lists.newArrayList();
+		statements.add("CREATE TABLE lum_User (id INT PRIMARY KEY, name VARCHAR(50), created TIMESTAMP, active BOOLEAN, photo BLOB, notes CLOB)");
+		statements.add("CREATE TABLE lum_Group (id INT PRIMARY KEY, user_id INT)");
+		statements.add("INSERT INTO lum_User (id, name) VALUES (0, 'generated')");
+		statements.add("ALTER TABLE lum_Group ADD CONSTRAINT fk_lum_Group FOREIGN KEY (user_id) REFERENCES lum_User (id)");
+		statements.add("CREATE INDEX ix_lum_User ON lum_User (name)");
+		statements.add("CREATE SEQUENCE lum_UserSequence START WITH 1");
+		File script = folder.newFile("db_mysql.sql");
+		Files.write(Joiner.on(";\n").join(statements) + ";\n", script, Charsets.UTF_8);
+
+		File snapshot = new File(folder.getRoot(), "snapshots/digest-h2.sql.gz");
+		H2Impl database = new H2Impl();
+
+		try (Connection source = DriverManager.getConnection("jdbc:h2:mem:snapshotsource;MODE=MySQL", "sa", "")) {
+			new ScriptExecutor(database, null).execute(source, statements);
+			try (Statement statement = source.createStatement()) {
+				for (int i = 1; i <= 150; i++) {
+					String photo = i == 149 ? "X'" + Strings.repeat("0aFF", 1500) + "'" : i % 3 == 0 ? "X'00ff'" : "NULL";
+					String notes = i == 150 ? "'" + Strings.repeat("0123456789", 500) + "'" : i % 7 == 0 ? "'line 1\r\nline 2\n\r\nline 4\r'" : "NULL";
+					statement.execute(String.format("INSERT INTO lum_User VALUES (%d, %s, TIMESTAMP '2014-01-%02d 10:20:30.5', %s, %s, %s)", i,
+							i % 10 == 0 ? "NULL" : i % 10 == 5 ? "'C:\\lumis\\'" : "'it''s \\ user " + i + ";'", i % 28 + 1, i % 2 == 0, photo, notes));
+				}
+				statement.execute("INSERT INTO lum_Group VALUES (1, 1)");
+				for (int i = 0; i < 3; i++) {
+					statement.execute("SELECT NEXT VALUE FOR lum_UserSequence");
+				}
+			}
+
+			SchemaSnapshot schemaSnapshot = new SchemaSnapshot(database.getDialect());
+			schemaSnapshot.export(source, script, snapshot);
+			Assert.assertEquals(2, schemaSnapshot.getTableCount());
+			Assert.assertEquals(152, schemaSnapshot.getRowCount());
+
+			for (boolean bulkLoad : new boolean[] { true, false }) {
+				try (Connection target = DriverManager.getConnection("jdbc:h2:mem:snapshottarget" + bulkLoad + ";MODE=MySQL", "sa", "")) {
+					ScriptExecutor scriptExecutor = new ScriptExecutor(database, null);
+					scriptExecutor.setBatchSize(50);
+					scriptExecutor.setCommitSize(100);
+					scriptExecutor.setBulkLoad(bulkLoad);
+					try (SqlScriptReader reader = SqlScriptReader.open(snapshot, database.getDialect())) {
+						Assert.assertEquals(157, scriptExecutor.execute(target, reader));
+					}
+
+					Assert.assertEquals(rows(source, "lum_User"), rows(target, "lum_User"));
+					Assert.assertEquals(rows(source, "lum_Group"), rows(target, "lum_Group"));
+
+					try (Statement statement = target.createStatement()) {
+						statement.execute("INSERT INTO lum_Group VALUES (2, 999)");
+						Assert.fail();
+					} catch (SQLException e) {
+						// the foreign key was created after the data
+					}
+
+					try (Statement statement = target.createStatement();
+							ResultSet resultSet = statement.executeQuery("SELECT NEXT VALUE FOR lum_UserSequence")) {
+						resultSet.next();
+						Assert.assertEquals(4, resultSet.getLong(1));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Test of export method, of class SchemaSnapshot, on a table with an IDENTITY column of SQL Server.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 * @throws SQLException
+	 *             Throws SQLException.
+	 */
+	@Test
+	public void testExportIdentity() throws IOException, SQLException {
+		File script = folder.newFile("db_sqlserver.sql");
+		Files.write("CREATE TABLE lum_Log (id INT IDENTITY PRIMARY KEY, message VARCHAR(50))\nGO\n", script, Charsets.UTF_8);
+		File snapshot = new File(folder.getRoot(), "snapshots/digest-sqlserver.sql.gz");
+
+		try (Connection source = DriverManager.getConnection("jdbc:h2:mem:snapshotidentity;MODE=MSSQLServer", "sa", "");
+				Statement statement = source.createStatement()) {
+			statement.execute("CREATE TABLE lum_Log (id INT IDENTITY PRIMARY KEY, message VARCHAR(50))");
+			for (int i = 1; i <= 150; i++) {
+				statement.execute("INSERT INTO lum_Log (message) VALUES ('message " + i + "')");
+			}
+
+			SchemaSnapshot schemaSnapshot = new SchemaSnapshot("SQLSERVER");
+			schemaSnapshot.export(source, script, snapshot);
+			Assert.assertEquals(150, schemaSnapshot.getRowCount());
+		}
+
+		try (SqlScriptReader reader = SqlScriptReader.open(snapshot, "SQLSERVER")) {
+			Assert.assertTrue(reader.readStatement().startsWith("CREATE TABLE lum_Log"));
+			for (int first : new int[] { 1, 101 }) {
+				List<String> lines = Lists.newArrayList(reader.readStatement().split("\n"));
+				Assert.assertEquals("SET IDENTITY_INSERT lum_Log ON", lines.get(0));
+				Assert.assertEquals("INSERT INTO lum_Log (ID, MESSAGE) VALUES (" + first + ", N'message " + first + "')", lines.get(1));
+				Assert.assertEquals("SET IDENTITY_INSERT lum_Log OFF", lines.get(lines.size() - 1));
+				Assert.assertEquals(first == 1 ? 102 : 52, lines.size());
+			}
+			Assert.assertNull(reader.readStatement());
+		}
+	}
+
+	private String rows(Connection connection, String table) throws SQLException {
+		StringBuilder rows = new StringBuilder();
+
+		try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery("select * from " + table + " order by 1")) {
+			while (resultSet.next()) {
+				for (int i = 1; i <= resultSet.getMetaData().getColumnCount(); i++) {
+					rows.append(resultSet.getString(i)).append('|');
+				}
+				rows.append('\n');
+			}
+		}
+
+		return rows.toString();
+	}
+}
@@ -0,0 +1,198 @@
+package infradev.lumis.lumisportalinstaller.database;
+
+import infradev.lumis.lumisportalinstaller.common.tools.ProgressMeter;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+/**
+ *
+ * @author Alexandre Ribeiro de Souza
+ */
+public class ScriptExecutorTest {
+
+	private Connection connection;
+
+	@Before
+	public void setUp() throws SQLException {
+		connection = DriverManager.getConnection("jdbc:h2:mem:scriptexecutor;MODE=MySQL", "sa", "");
+	}
+
+	@After
+	public void tearDown() throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("DROP ALL OBJECTS");
+		}
+		connection.close();
+	}
+
+	/**
+	 * Test of execute method, of class ScriptExecutor.
+	 *
+	 * @throws SQLException
+	 *             Throws SQLException.
+	 */
+	@Test
+	public void testExecute() throws SQLException {
+		List<String> statements = createScript(250);
+
+		Assert.assertEquals(statements.size(), createExecutor(50, 120).execute(connection, statements));
+
+		Assert.assertEquals(250, count("lum_a"));
+		Assert.assertEquals(250, count("lum_b"));
+		Assert.assertTrue(connection.getAutoCommit());
+	}
+
+	/**
+	 * Test of execute method with a failing statement in a batch, of class ScriptExecutor.
+	 *
+	 * @throws SQLException
+	 *             Throws SQLException.
+	 */
+	@Test
+	public void testExecuteFailure() throws SQLException {
+		List<String> statements = createScript(250);
+		statements.add(100, "INSERT INTO lum_a (id, name) VALUES (1, 'duplicated');");
+
+		try {
+			createExecutor(50, 120).execute(connection, statements);
+			Assert.fail();
+		} catch (ScriptException e) {
+			Assert.assertEquals(101, e.getLine());
+		}
+
+		Assert.assertEquals(99, count("lum_a"));
+	}
+
+	/**
+	 * Test of execute method in autocommit, of class ScriptExecutor.
+	 *
+	 * @throws SQLException
+	 *             Throws SQLException.
+	 */
+	@Test
+	public void testExecuteSequential() throws SQLException {
+		List<String> statements = createScript(250);
+		statements.add(100, "INSERT INTO lum_a (id, name) VALUES (1, 'duplicated');");
+
+		try {
+			createExecutor(1, 1).execute(connection, statements);
+			Assert.fail();
+		} catch (ScriptException e) {
+			Assert.assertEquals(101, e.getLine());
+		}
+
+		Assert.assertEquals(99, count("lum_a"));
+	}
+
+	/**
+	 * Test of execute method with bulk load, of class ScriptExecutor.
+	 *
+	 * @throws SQLException
+	 *             Throws SQLException.
+	 */
+	@Test
+	public void testExecuteBulkLoad() throws SQLException {
+		List<String> statements = Lists.newArrayList();
+		statements.add("CREATE TABLE lum_c (id INT PRIMARY KEY, name VARCHAR(50), amount DECIMAL(10, 2), created TIMESTAMP)");
+		for (int i = 0; i < 250; i++) {
+			String name = i % 7 == 0 ? "NULL" : String.format("'c''%d, (x)'", i);
+			statements.add(String.format("INSERT INTO lum_c (id, name, amount, created) VALUES (%d, %s, %d.25, TIMESTAMP '2014-01-01 00:00:00')", i,
+					name, i));
+		}
+
+		ScriptExecutor scriptExecutor = createExecutor(50, 120);
+		scriptExecutor.setBulkLoad(true);
+		Assert.assertEquals(statements.size(), scriptExecutor.execute(connection, statements));
+		String bulkRows = rows("lum_c");
+
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("DROP TABLE lum_c");
+		}
+		Assert.assertEquals(statements.size(), createExecutor(1, 1).execute(connection, statements));
+
+		Assert.assertEquals(rows("lum_c"), bulkRows);
+		Assert.assertEquals(250, count("lum_c"));
+	}
+
+	/**
+	 * Test of execute method with bulk load and a failing row, of class ScriptExecutor.
+	 *
+	 * @throws SQLException
+	 *             Throws SQLException.
+	 */
+	@Test
+	public void testExecuteBulkLoadFailure() throws SQLException {
+		List<String> statements = createScript(250);
+		statements.add(100, "INSERT INTO lum_a (id, name) VALUES (1, 'duplicated');");
+
+		ScriptExecutor scriptExecutor = createExecutor(50, 120);
+		scriptExecutor.setBulkLoad(true);
+		try {
+			scriptExecutor.execute(connection, statements);
+			Assert.fail();
+		} catch (ScriptException e) {
+			Assert.assertEquals(101, e.getLine());
+		}
+
+		Assert.assertEquals(99, count("lum_a"));
+	}
+
+	private ScriptExecutor createExecutor(int batchSize, int commitSize) {
+		ScriptExecutor scriptExecutor = new ScriptExecutor(new MySQLImpl(), new ProgressMeter());
+		scriptExecutor.setBatchSize(batchSize);
+		scriptExecutor.setCommitSize(commitSize);
+
+		return scriptExecutor;
+	}
+
+	private List<String> createScript(int rows) {
+		List<String> statements = Lists.newArrayList();
+
+		statements.add("CREATE TABLE lum_a (id INT PRIMARY KEY, name VARCHAR(50));");
+		for (int i = 0; i < rows; i++) {
+			statements.add(String.format("INSERT INTO lum_a (id, name) VALUES (%d, 'a%d');", i, i));
+		}
+		statements.add("CREATE TABLE lum_b (id INT PRIMARY KEY, a_id INT);");
+		for (int i = 0; i < rows; i++) {
+			statements.add(String.format("INSERT INTO lum_b (id, a_id) VALUES (%d, %d);", i, i));
+		}
+		statements.add("CREATE INDEX ix_lum_b ON lum_b (a_id);");
+
+		return statements;
+	}
+
+	private String rows(String table) throws SQLException {
+		StringBuilder rows = new StringBuilder();
+
+		try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery("select * from " + table + " order by 1")) {
+			while (resultSet.next()) {
+				for (int i = 1; i <= resultSet.getMetaData().getColumnCount(); i++) {
+					rows.append(resultSet.getString(i)).append('|');
+				}
+				rows.append('\n');
+			}
+		}
+
+		return rows.toString();
+	}
+
+	private int count(String table) throws SQLException {
+		try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery("select count(*) from " + table)) {
+			resultSet.next();
+
+			return resultSet.getInt(1);
+		}
+	}
+}
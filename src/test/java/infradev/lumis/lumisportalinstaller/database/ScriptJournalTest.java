@@ -0,0 +1,179 @@
+package infradev.lumis.lumisportalinstaller.database;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+/**
+ *
+ * @author Alexandre Ribeiro de Souza
+ */
+public class ScriptJournalTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Test of committed and flush methods, of class ScriptJournal.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	@Test
+	public void testFlush() throws IOException {
+		File script = folder.newFile("db_mysql.sql");
+		Files.write("INSERT INTO lum_a VALUES (1);", script, Charsets.UTF_8);
+		File file = new File(folder.getRoot(), "lumisdata/db_mysql.sql.journal");
+
+		ScriptJournal journal = new ScriptJournal(file, script);
+		journal.committed(1, 10);
+		journal.committed(21, 30);
+		journal.committed(11, 15);
+		journal.flush();
+
+		journal = new ScriptJournal(file, script);
+		Assert.assertFalse(journal.isEmpty());
+		Assert.assertEquals(15, journal.getCommitted());
+		Assert.assertTrue(journal.isCommitted(25));
+		Assert.assertFalse(journal.isCommitted(16));
+
+		Files.append("\nINSERT INTO lum_a VALUES (2);", script, Charsets.UTF_8);
+		Assert.assertEquals(0, new ScriptJournal(file, script).getCommitted());
+		Assert.assertTrue(new ScriptJournal(file, script).isEmpty());
+
+		journal.delete();
+		Assert.assertFalse(file.exists());
+	}
+
+	/**
+	 * Test of execute method resuming a failed execution, of class ScriptExecutor.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 * @throws SQLException
+	 *             Throws SQLException.
+	 */
+	@Test
+	public void testResume() throws IOException, SQLException {
+		List<String> statements = Lists.newArrayList();
+		statements.add("CREATE TABLE lum_a (id INT PRIMARY KEY, name VARCHAR(50))");
+		for (int i = 0; i < 250; i++) {
+			statements.add(String.format("INSERT INTO lum_a (id, name) VALUES (%d, 'a%d')", i, i));
+		}
+		statements.add(100, "INSERT INTO lum_a (id, name) VALUES (1, 'duplicated')");
+
+		File script = folder.newFile("db_mysql.sql");
+		Files.write(Joiner.on(";\n").join(statements), script, Charsets.UTF_8);
+		File file = new File(folder.getRoot(), "db_mysql.sql.journal");
+
+		try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:scriptjournal;MODE=MySQL", "sa", "")) {
+			ScriptJournal journal = new ScriptJournal(file, script);
+			try {
+				createExecutor(journal).execute(connection, statements);
+				Assert.fail();
+			} catch (ScriptException e) {
+				Assert.assertEquals(101, e.getLine());
+			}
+			journal.flush();
+
+			try (Statement statement = connection.createStatement()) {
+				statement.execute("DELETE FROM lum_a WHERE id = 1");
+			}
+
+			journal = new ScriptJournal(file, script);
+			Assert.assertEquals(100, journal.getCommitted());
+			Assert.assertEquals(statements.size(), createExecutor(journal).execute(connection, statements));
+
+			try (Statement statement = connection.createStatement();
+					ResultSet resultSet = statement.executeQuery("select count(*), max(name) from lum_a where id <= 1")) {
+				resultSet.next();
+				Assert.assertEquals(2, resultSet.getInt(1));
+				Assert.assertEquals("duplicated", resultSet.getString(2));
+			}
+		}
+	}
+
+	/**
+	 * Test of execute method resuming an execution killed right after a commit, of class ScriptExecutor.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 * @throws SQLException
+	 *             Throws SQLException.
+	 */
+	@Test
+	public void testResumeAfterKill() throws IOException, SQLException {
+		List<String> statements = Lists.newArrayList();
+		statements.add("CREATE TABLE lum_a (id INT PRIMARY KEY, name VARCHAR(50))");
+		for (int i = 0; i < 250; i++) {
+			statements.add(String.format("INSERT INTO lum_a (id, name) VALUES (%d, 'a%d')", i, i));
+		}
+
+		File script = folder.newFile("db_mysql.sql");
+		Files.write(Joiner.on(";\n").join(statements), script, Charsets.UTF_8);
+		final File file = new File(folder.getRoot(), "db_mysql.sql.journal");
+
+		try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:scriptjournalkill;MODE=MySQL", "sa", "")) {
+			ScriptJournal journal = new ScriptJournal(file, script) {
+				private int commits;
+
+				@Override
+				public synchronized void committed(int first, int last) throws IOException {
+					super.committed(first, last);
+					if (++commits == 3) {
+						throw new KilledError();
+					}
+				}
+			};
+			try {
+				createExecutor(journal).execute(connection, statements);
+				Assert.fail();
+			} catch (KilledError e) {
+				// the run stops without flushing the journal
+			}
+			connection.rollback();
+
+			journal = new ScriptJournal(file, script);
+			Assert.assertEquals(121, journal.getCommitted());
+			Assert.assertEquals(statements.size(), createExecutor(journal).execute(connection, statements));
+
+			try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery("select count(*) from lum_a")) {
+				resultSet.next();
+				Assert.assertEquals(250, resultSet.getInt(1));
+			}
+		}
+	}
+
+	/**
+	 * Simulates the installer being killed.
+	 */
+	private static class KilledError extends Error {
+
+		private static final long serialVersionUID = 1L;
+	}
+
+	private ScriptExecutor createExecutor(ScriptJournal journal) {
+		ScriptExecutor scriptExecutor = new ScriptExecutor(new MySQLImpl(), null);
+		scriptExecutor.setBatchSize(50);
+		scriptExecutor.setCommitSize(120);
+		scriptExecutor.setBulkLoad(true);
+		scriptExecutor.setJournal(journal);
+
+		return scriptExecutor;
+	}
+}
@@ -0,0 +1,215 @@
+package infradev.lumis.lumisportalinstaller.database;
+
+import infradev.lumis.lumisportalinstaller.common.tools.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+/**
+ *
+ * @author Alexandre Ribeiro de Souza
+ */
+public class SqlScriptReaderTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Test of readStatement method on a MySQL script, of class SqlScriptReader.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	@Test
+	public void testReadMySql() throws IOException {
+		String script = "# dump\n" + "/*!40101 SET NAMES utf8 */;\n" + "CREATE TABLE lum_a (\n" + "\tid INT, -- the key\n" + "\tname VARCHAR(50)\n"
+				+ ");\n" + "INSERT INTO lum_a VALUES (1, 'a;b -- c'), (2, 'it''s'), (3, 'back\\'slash');INSERT INTO `lum;a` VALUES (4, \"d\");\n"
+				+ "DELIMITER $$\n" + "CREATE PROCEDURE p() BEGIN SELECT 1; END$$\n" + "DELIMITER ;\n" + "DELETE FROM lum_a";
+
+		Assert.assertEquals(Lists.newArrayList("CREATE TABLE lum_a (\n\tid INT, \n\tname VARCHAR(50)\n)",
+				"INSERT INTO lum_a VALUES (1, 'a;b -- c'), (2, 'it''s'), (3, 'back\\'slash')", "INSERT INTO `lum;a` VALUES (4, \"d\")",
+				"CREATE PROCEDURE p() BEGIN SELECT 1; END", "DELETE FROM lum_a"), read(script, "MYSQL"));
+	}
+
+	/**
+	 * Test of readStatement method on a H2 script, of class SqlScriptReader.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	@Test
+	public void testReadH2() throws IOException {
+		String script = "INSERT INTO lum_a VALUES (1, 'C:\\lumis\\'), (2, 'it''s');\n" + "INSERT INTO `lum_a` VALUES (3, 'a\\b');\n";
+
+		Assert.assertEquals(Lists.newArrayList("INSERT INTO lum_a VALUES (1, 'C:\\lumis\\'), (2, 'it''s')", "INSERT INTO `lum_a` VALUES (3, 'a\\b')"),
+				read(script, "H2"));
+	}
+
+	/**
+	 * Test of readStatement method on a SQL Server script, of class SqlScriptReader.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	@Test
+	public void testReadSqlServer() throws IOException {
+		String script = "PRINT 'creating'\r\n" + "CREATE TABLE lum_a (id INT)\r\n" + "GO\r\n" + "CREATE PROCEDURE p AS\r\n" + "BEGIN\r\n"
+				+ "  SELECT 1;\r\n" + "  SELECT 2;\r\n" + "END\r\n" + "go\r\n" + "INSERT INTO lum_a VALUES (1);\r\n";
+
+		Assert.assertEquals(Lists.newArrayList("CREATE TABLE lum_a (id INT)", "CREATE PROCEDURE p AS\nBEGIN\n  SELECT 1;\n  SELECT 2;\nEND",
+				"INSERT INTO lum_a VALUES (1)"), read(script, "SQLSERVER"));
+	}
+
+	/**
+	 * Test of readStatement method on an Oracle script, of class SqlScriptReader.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	@Test
+	public void testReadOracle() throws IOException {
+		String script = "CREATE TABLE lum_a (id NUMBER);\n" + "CREATE OR REPLACE TRIGGER t BEFORE INSERT ON lum_a\n" + "BEGIN\n"
+				+ "  NULL; /* nothing */\n" + "END;\n" + "/\n" + "INSERT INTO lum_a VALUES (1);\n";
+
+		List<String> statements = read(script, "ORACLE");
+
+		Assert.assertEquals(Lists.newArrayList("CREATE TABLE lum_a (id NUMBER)", "CREATE OR REPLACE TRIGGER t BEFORE INSERT ON lum_a\nBEGIN\n  NULL;  \nEND;",
+				"INSERT INTO lum_a VALUES (1)"), statements);
+		Assert.assertTrue(SqlScriptReader.isPlsqlBlock(statements.get(1)));
+		Assert.assertFalse(SqlScriptReader.isPlsqlBlock(statements.get(2)));
+	}
+
+	/**
+	 * Test of readStatement method on a script with line ends inside quoted literals, of class SqlScriptReader.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	@Test
+	public void testReadLineEnds() throws IOException {
+		String script = "INSERT INTO lum_a VALUES (1,\r\n'a\r\nb\nc\rd\r\n\r\n');\r\n" + "INSERT INTO lum_a VALUES (2)\r\n;\r\n";
+
+		Assert.assertEquals(Lists.newArrayList("INSERT INTO lum_a VALUES (1,\n'a\r\nb\nc\rd\r\n\r\n')", "INSERT INTO lum_a VALUES (2)"),
+				read(script, "MYSQL"));
+	}
+
+	/**
+	 * Test of open method with a compressed script, of class SqlScriptReader.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	@Test
+	public void testOpenGzip() throws IOException {
+		File file = folder.newFile("script.sql.gz");
+		try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(file)), Charsets.UTF_8)) {
+			writer.write("INSERT INTO lum_a VALUES ('ação');\nINSERT INTO lum_a VALUES (2);\n");
+		}
+
+		List<String> statements = Lists.newArrayList();
+		try (SqlScriptReader reader = SqlScriptReader.open(file, "MYSQL")) {
+			while (reader.hasNext()) {
+				statements.add(reader.next());
+			}
+		}
+
+		Assert.assertEquals(Lists.newArrayList("INSERT INTO lum_a VALUES ('ação')", "INSERT INTO lum_a VALUES (2)"), statements);
+	}
+
+	/**
+	 * Compare the time of the reader with the former line parser, that kept the whole script in memory. It is a benchmark, run on demand.
+	 *
+	 * @throws IOException
+	 *             Throws IOException.
+	 */
+	@Test
+	@Ignore
+	public void testBenchmark() throws IOException {
+		File file = folder.newFile("benchmark.sql");
+		try (Writer writer = Files.newWriter(file, Charsets.UTF_8)) {
+			writer.write("CREATE TABLE lum_a (\n\tid INT, \n\tname VARCHAR(255)\n);\n");
+			for (int i = 0; i < 200000; i++) {
+				writer.write(String.format("INSERT INTO lum_a (id, name)\n\tVALUES (%d, 'name of the row %d with some text');\n", i, i));
+			}
+		}
+
+		long start = System.currentTimeMillis();
+		int legacyCount = convertSql(file).size();
+		long legacyTime = System.currentTimeMillis() - start;
+
+		start = System.currentTimeMillis();
+		int count = 0;
+		try (SqlScriptReader reader = SqlScriptReader.open(file, "MYSQL")) {
+			while (reader.readStatement() != null) {
+				count++;
+			}
+		}
+		long time = System.currentTimeMillis() - start;
+
+		Log.info(String.format("SqlScriptReader: %d statements of %d bytes, line parser %d ms, reader %d ms", count, file.length(),
+				legacyTime, time));
+
+		Assert.assertEquals(legacyCount, count);
+	}
+
+	private List<String> read(String script, String dialect) throws IOException {
+		List<String> statements = Lists.newArrayList();
+
+		try (SqlScriptReader reader = new SqlScriptReader(new StringReader(script), dialect)) {
+			for (String statement = reader.readStatement(); statement != null; statement = reader.readStatement()) {
+				statements.add(statement);
+			}
+		}
+
+		return statements;
+	}
+
+	/**
+	 * The line parser replaced by SqlScriptReader.
+	 */
+	private List<String> convertSql(File file) throws IOException {
+		List<String> lines = Files.readLines(file, Charsets.UTF_8);
+
+		List<String> result = Lists.newArrayList();
+		StringBuilder query = new StringBuilder();
+
+		for (String line : lines) {
+			line = line.trim();
+			boolean match = false;
+			if (!line.isEmpty() && !(line.startsWith("PRINT") || line.startsWith("--") || line.startsWith("#"))) {
+				if (line.startsWith("GO")) {
+					if (!query.toString().trim().isEmpty()) {
+						match = true;
+					}
+				} else {
+					query.append(line.replace("\t", "")).append(" ");
+					if (query.toString().trim().endsWith(";")) {
+						match = true;
+					}
+				}
+			}
+			if (match) {
+				result.add(query.toString().trim());
+				query = new StringBuilder();
+			}
+		}
+
+		return result;
+	}
+}